@@ -0,0 +1,22 @@
+package org.jooq;
+
+/**
+ * A cached configuration that can serve the query results in the cache without acquiring a connection.<br/>
+ * A {@link CachedConfiguration} can implement this interface to choose how the autocommit of the connections is handled,
+ * see {@link org.jooq.cache.impl.DefaultCachedConfiguration#setAutoCommitIgnored(boolean)}.
+ * @author Aurélien Manteaux
+ *
+ */
+public interface AutoCommitCachedConfiguration extends CachedConfiguration {
+	
+	/**
+	 * [#8] By default, a query result is read from the cache only when the connection is set to autocommit:
+	 * a connection is then acquired to serve a query result from the cache.<br/>
+	 * When the DAOs are never used in a transaction, or when the stale reads in a transaction are acceptable, the autocommit can be ignored:
+	 * a query result in the cache is then served without acquiring a connection.
+	 * The query results read with a connection that is not set to autocommit are still never cached.
+	 * @return true if the query results in the cache are served whatever the autocommit of the connection, false by default
+	 */
+	boolean isAutoCommitIgnored();
+
+}
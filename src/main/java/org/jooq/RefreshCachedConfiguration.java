@@ -0,0 +1,21 @@
+package org.jooq;
+
+/**
+ * A cached configuration that refreshes the stale query results in the background.<br/>
+ * A {@link CachedConfiguration} can implement this interface to provide the connections of the refreshes,
+ * see {@link org.jooq.cache.impl.DefaultCachedConfiguration#setRefreshDataSource(javax.sql.DataSource)}.
+ * @author Aurélien Manteaux
+ *
+ */
+public interface RefreshCachedConfiguration extends CachedConfiguration {
+	
+	/**
+	 * The stale query results are refreshed in the background, see {@link org.jooq.cache.RefreshPolicy}:
+	 * the connections used by the refreshes must not be bound to a thread nor to a transaction,
+	 * so they are not acquired from the connection provider of the DAOs.
+	 * @return The provider of the connections dedicated to the refreshes, or null if the query results are never refreshed in the background:
+	 * a stale query result is then served until its hard TTL
+	 */
+	ConnectionProvider refreshConnectionProvider();
+
+}
@@ -0,0 +1,20 @@
+package org.jooq.cache;
+
+/**
+ * Decide whether a query result missed in the cache is worth caching, see {@link CacheManager#setAdmissionPolicy(AdmissionPolicy)}.<br/>
+ * The policy is called once the query has been executed and before its result is read:
+ * a query result that is not admitted is streamed from the database without being copied nor cached.
+ * @author Aurélien Manteaux
+ *
+ */
+public interface AdmissionPolicy {
+
+	/**
+	 * @param template the query template, see {@link CacheManager#template(String)}
+	 * @param parameters the parameters of the query
+	 * @param executionNanos the time spent to execute the query, in nanoseconds
+	 * @return true if the query result must be cached
+	 */
+	boolean admit(QueryTemplate template, ParametersKey parameters, long executionNanos);
+
+}
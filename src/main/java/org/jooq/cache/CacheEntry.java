@@ -0,0 +1,128 @@
+package org.jooq.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.jooq.cache.jdbc.CachedData;
+
+/**
+ * A query result stored in a query cache, with the version of the tables referenced by the query when it has been read.<br/>
+ * The entry is stale as soon as one of the tables has been cleared, it is then dropped by the {@link CacheManager} when it is looked up.<br/>
+ * If the query result contains the primary keys of a single table, the entry keeps the stripes of its rows instead,
+ * so it is stale only if the whole table or one of its rows has been cleared, see {@link TableVersion}.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class CacheEntry implements Serializable {
+
+	private static final long serialVersionUID = -2911307853574245512L;
+
+	private static final AtomicIntegerFieldUpdater<CacheEntry> HITS = AtomicIntegerFieldUpdater.newUpdater(CacheEntry.class, "hits");
+
+	private final CachedData cachedData;
+	private final long tablesVersion;
+	private final int[] rowStripes;
+	private final long rowsVersion;
+	private final long cachedAt;
+	// the records materialized from the query result, they are not serialized
+	private transient volatile Records records;
+	// the number of reads counted for the refresh-ahead, see RefreshPolicy
+	private transient volatile int hits;
+
+	CacheEntry(CachedData cachedData, long tablesVersion) {
+		this(cachedData, tablesVersion, null, 0);
+	}
+
+	/**
+	 * @param tablesVersion the version of the referenced tables, see {@link TableVersion#tableVersion()} for an entry with row stripes
+	 * @param rowStripes the stripes of the rows, null if the rows are not identified by their primary keys
+	 * @param rowsVersion the version of the stripes
+	 */
+	CacheEntry(CachedData cachedData, long tablesVersion, int[] rowStripes, long rowsVersion) {
+		this(cachedData, tablesVersion, rowStripes, rowsVersion, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param cachedAt the time the query result has been cached, for an entry read from a store, see {@link CacheEntryCodec}
+	 */
+	CacheEntry(CachedData cachedData, long tablesVersion, int[] rowStripes, long rowsVersion, long cachedAt) {
+		this.cachedData = cachedData;
+		this.tablesVersion = tablesVersion;
+		this.rowStripes = rowStripes;
+		this.rowsVersion = rowsVersion;
+		this.cachedAt = cachedAt;
+	}
+
+	/**
+	 * @return The query result
+	 */
+	public CachedData getCachedData() {
+		return cachedData;
+	}
+
+	/**
+	 * @param recordType the type of the records expected
+	 * @return The records materialized from the query result with the record type, or null if there is none
+	 */
+	Object getRecords(Class<?> recordType) {
+		Records current = records;
+		return current != null && current.recordType == recordType ? current.records : null;
+	}
+
+	void setRecords(Class<?> recordType, Object records) {
+		this.records = new Records(recordType, records);
+	}
+
+	/**
+	 * @return The time the query result has been cached, in milliseconds, see {@link RefreshPolicy}
+	 */
+	long getCachedAt() {
+		return cachedAt;
+	}
+
+	/**
+	 * Count a read of the query result
+	 * @return The number of reads counted
+	 */
+	int hit() {
+		return HITS.incrementAndGet(this);
+	}
+
+	long getTablesVersion() {
+		return tablesVersion;
+	}
+
+	int[] getRowStripes() {
+		return rowStripes;
+	}
+
+	long getRowsVersion() {
+		return rowsVersion;
+	}
+
+	/**
+	 * @param tables the version counters of the tables referenced by the query
+	 * @return true if neither the tables nor the rows of the entry have been cleared since the query has been read
+	 */
+	boolean isValid(TableVersion[] tables) {
+		if(rowStripes == null) {
+			return TableVersions.version(tables) == tablesVersion;
+		}
+		return tables.length == 1
+				&& tables[0].tableVersion() == tablesVersion
+				&& tables[0].rowsVersion(rowStripes) == rowsVersion;
+	}
+
+	private static final class Records {
+
+		private final Class<?> recordType;
+		private final Object records;
+
+		Records(Class<?> recordType, Object records) {
+			this.recordType = recordType;
+			this.records = records;
+		}
+
+	}
+
+}
@@ -0,0 +1,165 @@
+package org.jooq.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import org.jooq.cache.jdbc.CachedDataCodec;
+
+/**
+ * Encode the values of the query caches for the stores outside of the heap.<br/>
+ * A {@link CacheEntry} is written with its versions and its query result in the {@link CachedDataCodec} format,
+ * any other value is written with Java serialization.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class CacheEntryCodec {
+
+	/**
+	 * The version of the format, a value written with another version cannot be read
+	 */
+	public static final int VERSION = 1;
+
+	// the kind of value encoded
+	private static final int SERIALIZED = 0;
+	private static final int ENTRY = 1;
+
+	private CacheEntryCodec() {
+		// static methods only
+	}
+
+	// API
+
+	public static byte[] encode(Serializable value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeByte(VERSION);
+		if (value instanceof CacheEntry) {
+			output.writeByte(ENTRY);
+			write((CacheEntry) value, output);
+		} else {
+			output.writeByte(SERIALIZED);
+			ObjectOutputStream objectOutput = new ObjectOutputStream(output);
+			objectOutput.writeObject(value);
+			objectOutput.flush();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @throws IOException if the value is corrupted or if it has been written with another version of the format
+	 */
+	public static Serializable decode(byte[] bytes) throws IOException {
+		return decode(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * The value is read directly from the buffer, for example a buffer mapped to a file, without copying the bytes first
+	 * @param buffer the bytes of the value, between the position and the limit of the buffer; the position of the buffer is moved
+	 * @throws IOException if the value is corrupted or if it has been written with another version of the format
+	 */
+	public static Serializable decode(ByteBuffer buffer) throws IOException {
+		return decode(new ByteBufferInputStream(buffer));
+	}
+
+	private static Serializable decode(InputStream bytes) throws IOException {
+		DataInputStream input = new DataInputStream(bytes);
+		int version = input.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported cache entry version " + version + ", expected " + VERSION);
+		}
+		int kind = input.readUnsignedByte();
+		if (kind == ENTRY) {
+			return read(input);
+		}
+		if (kind != SERIALIZED) {
+			throw new IOException("Unknown cache value kind " + kind);
+		}
+		ObjectInputStream objectInput = new ObjectInputStream(input);
+		try {
+			return (Serializable) objectInput.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("A cached value cannot be deserialized", e);
+		} finally {
+			objectInput.close();
+		}
+	}
+
+	public static void write(CacheEntry entry, DataOutput output) throws IOException {
+		CachedDataCodec.writeZigZag(output, entry.getCachedAt());
+		CachedDataCodec.writeVarLong(output, entry.getTablesVersion());
+		int[] rowStripes = entry.getRowStripes();
+		if (rowStripes == null) {
+			CachedDataCodec.writeVarInt(output, 0);
+		} else {
+			CachedDataCodec.writeVarInt(output, rowStripes.length + 1);
+			for (int stripe : rowStripes) {
+				CachedDataCodec.writeVarInt(output, stripe);
+			}
+			CachedDataCodec.writeVarLong(output, entry.getRowsVersion());
+		}
+		CachedDataCodec.write(entry.getCachedData(), output);
+	}
+
+	public static CacheEntry read(DataInput input) throws IOException {
+		long cachedAt = CachedDataCodec.readZigZag(input);
+		long tablesVersion = CachedDataCodec.readVarLong(input);
+		int[] rowStripes = null;
+		long rowsVersion = 0;
+		int stripes = CachedDataCodec.readVarInt(input);
+		if (stripes != 0) {
+			rowStripes = new int[CachedDataCodec.checkLength(input, stripes - 1, 1)];
+			for (int i = 0; i < rowStripes.length; i++) {
+				rowStripes[i] = CachedDataCodec.readVarInt(input);
+			}
+			rowsVersion = CachedDataCodec.readVarLong(input);
+		}
+		return new CacheEntry(CachedDataCodec.read(input), tablesVersion, rowStripes, rowsVersion, cachedAt);
+	}
+
+	/**
+	 * Read the bytes of a buffer
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int read = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, read);
+			return read;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+	}
+
+}
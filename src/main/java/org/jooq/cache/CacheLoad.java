@@ -0,0 +1,72 @@
+package org.jooq.cache;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.jooq.cache.jdbc.CachedData;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * The load of a query result after a cache miss, see {@link CacheManager#load(QueryTemplate, java.util.List)}.<br/>
+ * When many threads miss the same query result at the same time, only one of them owns the load and executes the query:
+ * the other threads wait for the owner and share the query result it has read.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class CacheLoad {
+
+	private final ConcurrentMap<Object, SettableFuture<CachedData>> loads;
+	private final Object key;
+	private final SettableFuture<CachedData> future;
+	private final CachedData cachedData;
+
+	private CacheLoad(ConcurrentMap<Object, SettableFuture<CachedData>> loads, Object key, SettableFuture<CachedData> future, CachedData cachedData) {
+		this.loads = loads;
+		this.key = key;
+		this.future = future;
+		this.cachedData = cachedData;
+	}
+
+	static CacheLoad owned(ConcurrentMap<Object, SettableFuture<CachedData>> loads, Object key, SettableFuture<CachedData> future) {
+		return new CacheLoad(loads, key, future, null);
+	}
+
+	static CacheLoad shared(CachedData cachedData) {
+		return new CacheLoad(null, null, null, cachedData);
+	}
+
+	/**
+	 * @return true if the query must be executed by the current thread: it has to call {@link #release(CachedData)} or {@link #abort()} once the query result is read
+	 */
+	public boolean isOwner() {
+		return future != null;
+	}
+
+	/**
+	 * @return The query result read by another thread, or null if the query must be executed by the current thread:
+	 * either the current thread owns the load, or the owner did not release a result in time
+	 */
+	public CachedData getCachedData() {
+		return cachedData;
+	}
+
+	/**
+	 * Share the query result with the waiting threads, it should be called once the result is in the cache
+	 * @param cachedData the query result
+	 */
+	public void release(CachedData cachedData) {
+		if(future != null) {
+			loads.remove(key, future);
+			future.set(cachedData);
+		}
+	}
+
+	/**
+	 * Release the waiting threads without a query result, they will execute the query themselves.<br/>
+	 * It does nothing if the load has already been released.
+	 */
+	public void abort() {
+		release(null);
+	}
+
+}
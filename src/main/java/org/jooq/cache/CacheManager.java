@@ -1,16 +1,31 @@
 package org.jooq.cache;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
 import java.sql.ResultSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jooq.cache.jdbc.CachedData;
+import org.jooq.tools.JooqLogger;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Handle cache instances
@@ -19,32 +34,328 @@ import com.google.common.cache.LoadingCache;
  */
 public final class CacheManager {
 	
+	private static final JooqLogger log = JooqLogger.getLogger(CacheManager.class);
 	
-	private final LoadingCache<String, Cache> queriesCache;
-	private final Cache tableIndex;
+	private final CacheProvider cacheProvider;
+	private final QueryTemplateRegistry templates;
+	private final TableVersions tableVersions;
+	private final ConcurrentMap<Object, SettableFuture<CachedData>> loads;
+	private final long loadTimeoutNanos;
+	private final ConcurrentMap<String, RefreshPolicy> tableRefreshPolicies;
+	private final ConcurrentMap<Object, Boolean> refreshes;
+	private final Executor refreshExecutor;
+	private final AtomicInteger runningRefreshes;
+	private volatile int maxConcurrentRefreshes;
+	private volatile AdmissionPolicy admissionPolicy;
+	private volatile CaptureLimits captureLimits;
+	private final CacheStatistics statistics;
+	// null if the identical query results are not shared
+	private volatile ResultDeduplicator deduplicator;
 	
 	public CacheManager(final CacheProvider cacheProvider) {
-		this.queriesCache = CacheBuilder
-				.newBuilder()
-				.build(new CacheLoader<String, Cache>() {
-					@Override
-					public Cache load(String key) throws Exception {
-						return cacheProvider.fetchByQuery(key);
-					}
-				});
-		this.tableIndex = cacheProvider.tableIndex();
+		this(cacheProvider, 10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param cacheProvider the provider of the caches
+	 * @param loadTimeout the maximum time a thread waits for the result of a query that is being executed by another thread, see {@link #load(QueryTemplate, List)};
+	 * 0 to never wait
+	 * @param unit the unit of the timeout
+	 */
+	public CacheManager(final CacheProvider cacheProvider, long loadTimeout, TimeUnit unit) {
+		this(cacheProvider, loadTimeout, unit, defaultRefreshExecutor());
+	}
+
+	/**
+	 * @param cacheProvider the provider of the caches
+	 * @param loadTimeout the maximum time a thread waits for the result of a query that is being executed by another thread, see {@link #load(QueryTemplate, List)};
+	 * 0 to never wait
+	 * @param unit the unit of the timeout
+	 * @param refreshExecutor the executor of the background refreshes, see {@link RefreshPolicy}; it should be bounded so the refreshes cannot overload the database
+	 */
+	public CacheManager(final CacheProvider cacheProvider, long loadTimeout, TimeUnit unit, Executor refreshExecutor) {
+		this.cacheProvider = cacheProvider;
+		this.templates = new QueryTemplateRegistry();
+		this.tableVersions = new TableVersions();
+		this.loads = new ConcurrentHashMap<Object, SettableFuture<CachedData>>();
+		this.loadTimeoutNanos = unit.toNanos(loadTimeout);
+		this.tableRefreshPolicies = new ConcurrentHashMap<String, RefreshPolicy>();
+		this.refreshes = new ConcurrentHashMap<Object, Boolean>();
+		this.refreshExecutor = refreshExecutor;
+		this.runningRefreshes = new AtomicInteger();
+		this.maxConcurrentRefreshes = 4;
+		this.captureLimits = CaptureLimits.UNLIMITED;
+		this.statistics = new CacheStatistics();
 	}
 
 
 	// API
 	
+	/**
+	 * @param query a {@link String} query, for example : "SELECT * FROM table WHERE field = ?"
+	 * @return The template of the query, it should be used instead of the {@link String} query when the same query is used many times;
+	 * the least recently used templates are evicted with their query results once 10000 queries are known, unless they have their own refresh policy or capture limits
+	 */
+	public final QueryTemplate template(String query) {
+		return templates.intern(query);
+	}
+
 	/**
 	 * @param query a {@link String} query, for example : "SELECT * FROM table WHERE field = ?"
 	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
 	 * @return The cached query result if it exists, null else
 	 */
 	public final CachedData getCachedDataIfPresent(String query, List<Object> queryParameters) {
-		return (CachedData) fetchByQuery(query).get(joinParameters(queryParameters));
+		return getCachedDataIfPresent(template(query), queryParameters);
+	}
+
+	/**
+	 * @param template the query template, see {@link #template(String)}
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @return The cached query result if it exists, null else
+	 */
+	public final CachedData getCachedDataIfPresent(QueryTemplate template, List<Object> queryParameters) {
+		return lookup(template, joinParameters(queryParameters));
+	}
+
+	/**
+	 * Same as {@link #getCachedDataIfPresent(QueryTemplate, List)}, but a stale or a hot query result is refreshed in the background, see {@link RefreshPolicy}
+	 * @param template the query template, see {@link #template(String)}
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @param refresher the refresher used if the query result is stale, null if it is not refreshed in the background: it is then served until its hard TTL
+	 * @return The cached query result if it exists, even if it is stale, null else
+	 */
+	public final CachedData getCachedDataIfPresent(QueryTemplate template, List<Object> queryParameters, CacheRefresher refresher) {
+		return getCachedDataIfPresent(template, queryParameters, queryParameters, refresher);
+	}
+
+	/**
+	 * Same as {@link #getCachedDataIfPresent(QueryTemplate, List, CacheRefresher)}, but the query is refreshed with bind values
+	 * that are not the parameters of the query, for example the jOOQ {@link org.jooq.Param} bound with their data type
+	 * @param template the query template, see {@link #template(String)}
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @param bindValues the bind values given to the refresher
+	 * @param refresher the refresher used if the query result is stale, null if it is not refreshed in the background: it is then served until its hard TTL
+	 * @return The cached query result if it exists, even if it is stale, null else
+	 */
+	public final CachedData getCachedDataIfPresent(QueryTemplate template, List<Object> queryParameters, List<?> bindValues, CacheRefresher refresher) {
+		ParametersKey parameters = joinParameters(queryParameters);
+		CacheEntry entry = lookupEntry(template, parameters);
+		if(entry == null) {
+			return null;
+		}
+		RefreshPolicy refreshPolicy = refresher == null ? null : refreshPolicy(template);
+		if(refreshPolicy != null) {
+			long now = System.currentTimeMillis();
+			// the hits are counted only for the queries with a refresh policy
+			int hits = entry.hit();
+			if(refreshPolicy.isStale(entry.getCachedAt(), now) || refreshPolicy.isRefreshedAhead(entry.getCachedAt(), now, hits)) {
+				refresh(template, queryParameters, bindValues, parameters, entry.getCachedData(), refresher);
+			}
+		}
+		return entry.getCachedData();
+	}
+
+	/**
+	 * Set the refresh policy of a query, it overrides the policies of the tables referenced by the query
+	 * @param query a {@link String} query, for example : "SELECT * FROM table WHERE field = ?"
+	 * @param refreshPolicy the policy, null to use the policies of the tables referenced by the query
+	 */
+	public final void setQueryRefreshPolicy(String query, RefreshPolicy refreshPolicy) {
+		setQueryRefreshPolicy(template(query), refreshPolicy);
+	}
+
+	/**
+	 * Set the refresh policy of a query, it overrides the policies of the tables referenced by the query
+	 * @param template the query template, see {@link #template(String)}
+	 * @param refreshPolicy the policy, null to use the policies of the tables referenced by the query
+	 */
+	public final void setQueryRefreshPolicy(QueryTemplate template, RefreshPolicy refreshPolicy) {
+		template.setRefreshPolicy(refreshPolicy);
+		templates.pin(template);
+	}
+
+	/**
+	 * Set the refresh policy of the queries referencing a table.<br/>
+	 * If a query references many tables with a policy, the lowest TTL are used.
+	 * The table policies apply to the queries whose referenced tables are known by their template, see {@link QueryTemplate#getReferencedTables()}
+	 * @param tableName a {@link String} table name, for example "tableA" or "user"
+	 * @param refreshPolicy the policy, null to remove the policy of the table
+	 */
+	public final void setTableRefreshPolicy(String tableName, RefreshPolicy refreshPolicy) {
+		if(refreshPolicy == null) {
+			tableRefreshPolicies.remove(tableName);
+		} else {
+			tableRefreshPolicies.put(tableName, refreshPolicy);
+		}
+	}
+
+	/**
+	 * Limit the number of refreshes submitted and not completed, so the refreshes cannot overload the database.<br/>
+	 * When the limit is reached, the query results that should be refreshed are served as they are, and are refreshed when they are read again later.
+	 * @param maxConcurrentRefreshes the maximum number of refreshes running or waiting to run, 4 by default
+	 */
+	public final void setMaxConcurrentRefreshes(int maxConcurrentRefreshes) {
+		this.maxConcurrentRefreshes = maxConcurrentRefreshes;
+	}
+
+	/**
+	 * @param template the query template, see {@link #template(String)}
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @param recordType the type of the records expected
+	 * @return The records materialized from the cached query result if they exist, null else; see {@link #cacheRecords(QueryTemplate, List, CachedData, Class, Object)}
+	 */
+	public final Object getCachedRecordsIfPresent(QueryTemplate template, List<Object> queryParameters, Class<?> recordType) {
+		CacheEntry entry = lookupEntry(template, joinParameters(queryParameters));
+		return entry != null ? entry.getRecords(recordType) : null;
+	}
+
+	/**
+	 * Keep the records materialized from a cached query result with the result, so they can be used without reading the result again.<br/>
+	 * The records are shared between all the threads, they must not be modified.
+	 * They are attached only if the query result is still in the cache, or if it has been replaced by an identical result, see {@link #setResultDeduplication(boolean)}.
+	 * @param template the query template, see {@link #template(String)}
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @param cachedData the query result the records have been materialized from
+	 * @param recordType the type of the records
+	 * @param records the records
+	 */
+	public final void cacheRecords(QueryTemplate template, List<Object> queryParameters, CachedData cachedData, Class<?> recordType, Object records) {
+		CacheEntry entry = lookupEntry(template, joinParameters(queryParameters));
+		if(entry != null && (entry.getCachedData() == cachedData || entry.getCachedData() == sharedResult(cachedData))) {
+			entry.setRecords(recordType, records);
+		}
+	}
+
+	/**
+	 * Coalesce the loads of a query result that is not in the cache:
+	 * the first thread that calls this method owns the load and must execute the query,
+	 * the other threads wait until the owner releases the query result or until the load timeout is reached.<br/>
+	 * When the timeout is reached or when the owner aborts the load, the waiting threads execute the query themselves.
+	 * @param template the query template, see {@link #template(String)}
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @return The load, see {@link CacheLoad#isOwner()} and {@link CacheLoad#getCachedData()}
+	 */
+	public final CacheLoad load(QueryTemplate template, List<Object> queryParameters) {
+		ParametersKey parameters = joinParameters(queryParameters);
+		LoadKey key = new LoadKey(template.getId(), parameters);
+		SettableFuture<CachedData> future = SettableFuture.create();
+		SettableFuture<CachedData> running = loads.putIfAbsent(key, future);
+		if(running == null) {
+			// the result may have been cached between the cache miss and the registration of the load
+			CachedData cachedData = lookup(template, parameters);
+			if(cachedData != null) {
+				loads.remove(key, future);
+				future.set(cachedData);
+				return CacheLoad.shared(cachedData);
+			}
+			return CacheLoad.owned(loads, key, future);
+		}
+		return CacheLoad.shared(await(running));
+	}
+
+	/**
+	 * Set the policy deciding which query results are cached, see {@link #admit(QueryTemplate, List, long)}
+	 * @param admissionPolicy the policy, null to cache all the query results
+	 */
+	public final void setAdmissionPolicy(AdmissionPolicy admissionPolicy) {
+		this.admissionPolicy = admissionPolicy;
+	}
+
+	/**
+	 * Decide whether a query result missed in the cache must be read and cached, see {@link AdmissionPolicy}
+	 * @param template the query template, see {@link #template(String)}
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @param executionNanos the time spent to execute the query, in nanoseconds
+	 * @return true if the query result must be cached, always true if there is no admission policy
+	 */
+	public final boolean admit(QueryTemplate template, List<Object> queryParameters, long executionNanos) {
+		AdmissionPolicy policy = admissionPolicy;
+		return policy == null || policy.admit(template, joinParameters(queryParameters), executionNanos);
+	}
+
+	/**
+	 * Set the limits of the query results read to be cached, for the queries without their own limits
+	 * @param captureLimits the limits, {@link CaptureLimits#UNLIMITED} by default
+	 */
+	public final void setCaptureLimits(CaptureLimits captureLimits) {
+		this.captureLimits = captureLimits;
+	}
+
+	/**
+	 * Set the limits of the results of a query, they override the limits set with {@link #setCaptureLimits(CaptureLimits)}
+	 * @param template the query template, see {@link #template(String)}
+	 * @param captureLimits the limits, null to use the limits of all the queries
+	 */
+	public final void setQueryCaptureLimits(QueryTemplate template, CaptureLimits captureLimits) {
+		template.setCaptureLimits(captureLimits);
+		templates.pin(template);
+	}
+
+	/**
+	 * @param template the query template, see {@link #template(String)}
+	 * @return The limits of the results of the query
+	 */
+	public final CaptureLimits captureLimits(QueryTemplate template) {
+		CaptureLimits queryLimits = template.getCaptureLimits();
+		return queryLimits != null ? queryLimits : captureLimits;
+	}
+
+	/**
+	 * Count a query result that has not been cached because it exceeded its capture limits
+	 * @param template the query template, see {@link #template(String)}
+	 */
+	public final void captureAborted(QueryTemplate template) {
+		statistics.abortedCapture();
+		if(log.isDebugEnabled()) {
+			log.debug("The result of the query exceeded its capture limits, it is not cached", template);
+		}
+	}
+
+	/**
+	 * Share the identical query results of a query, for example the empty results or the same row reached with different parameters:
+	 * a result is then stored once and referenced by all the entries with the same values.<br/>
+	 * Each result cached is hashed, so the deduplication should be enabled only when the results of the queries are often the same
+	 * @param deduplication true to share the identical results, false by default
+	 */
+	public final void setResultDeduplication(boolean deduplication) {
+		this.deduplicator = deduplication ? new ResultDeduplicator() : null;
+	}
+
+	/**
+	 * Write the valid entries of the query caches to a file, so they can be restored when the application is restarted, see {@link #loadSnapshot(File, long, TimeUnit)}.<br/>
+	 * Only the entries of the query caches that list their entries are written, see {@link EnumerableQueryCache}.
+	 * The snapshot can be saved when the application is stopped, or regularly with a scheduled executor.
+	 * @param file the snapshot file, it is replaced once the new snapshot is complete
+	 * @return The number of entries written
+	 * @throws IOException if the file cannot be written, or if a query result cannot be encoded
+	 */
+	public final int saveSnapshot(File file) throws IOException {
+		return CacheSnapshot.save(this, file);
+	}
+
+	/**
+	 * Restore the entries of a snapshot, usually before the application starts serving requests.<br/>
+	 * The entries keep the time they have been cached, so their refresh policy still applies, see {@link RefreshPolicy};
+	 * the entries older than the maximum age are not restored. An entry already cached is not replaced.<br/>
+	 * The entries are restored as valid: the changes made to the database while the application was stopped are not detected,
+	 * so the maximum age should be short for the queries on tables that change often.
+	 * @param file the snapshot file, see {@link #saveSnapshot(File)}
+	 * @param maxAge the maximum age of the entries restored
+	 * @param unit the unit of the maximum age
+	 * @return The number of entries restored
+	 * @throws IOException if the file cannot be read, if it is corrupted or if it has been written with another version of the format;
+	 * no entry is restored in that case
+	 */
+	public final int loadSnapshot(File file, long maxAge, TimeUnit unit) throws IOException {
+		return CacheSnapshot.load(this, file, unit.toMillis(maxAge));
+	}
+
+	/**
+	 * @return The counters of the cache manager
+	 */
+	public final CacheStatistics getStatistics() {
+		return statistics;
 	}
 	
 	/**
@@ -55,8 +366,55 @@ public final class CacheManager {
 	 * @param cachedData the query execution result fully loaded, it can be used when the {@link ResultSet} of the query is closed
 	 */
 	public final void cacheQueryResult(Set<String> referencedTables, String query, List<Object> queryParameters, CachedData cachedData) {
-		fetchByQuery(query).put(joinParameters(queryParameters), cachedData);
-		index(tableIndex(), referencedTables, query);
+		cacheQueryResult(referencedTables, template(query), queryParameters, cachedData);
+	}
+
+	/**
+	 * Cache a query result
+	 * @param referencedTables the {@link java.util.Set} of tables referenced by the query; for example "SELECT * FROM table2 t2 JOIN table1 t1 ON t2.a=t1.a" referenced "table2" and "table1"
+	 * @param template the query template, see {@link #template(String)}
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @param cachedData the query execution result fully loaded, it can be used when the {@link ResultSet} of the query is closed
+	 */
+	public final void cacheQueryResult(Set<String> referencedTables, QueryTemplate template, List<Object> queryParameters, CachedData cachedData) {
+		cacheQueryResult(referencedTables, template, queryParameters, cachedData, tablesVersion(referencedTables));
+	}
+
+	/**
+	 * Cache a query result if none of the tables it references has been invalidated since the query has been executed
+	 * @param referencedTables the {@link java.util.Set} of tables referenced by the query; for example "SELECT * FROM table2 t2 JOIN table1 t1 ON t2.a=t1.a" referenced "table2" and "table1"
+	 * @param template the query template, see {@link #template(String)}
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @param cachedData the query execution result fully loaded, it can be used when the {@link ResultSet} of the query is closed
+	 * @param tablesVersion the version of the referenced tables before the query has been executed, see {@link #tablesVersion(Set)}
+	 * @return true if the query result has been cached, false if it has been dropped because it may be stale
+	 */
+	public final boolean cacheQueryResult(Set<String> referencedTables, QueryTemplate template, List<Object> queryParameters, CachedData cachedData, long tablesVersion) {
+		return cacheQueryResult(referencedTables, template, queryParameters, cachedData, tablesVersion, null);
+	}
+
+	/**
+	 * Cache a query result if none of the tables it references has been invalidated since the query has been executed.<br/>
+	 * If the query references a single table, if it is filtered only on the primary key of the table and if the result contains the primary key column,
+	 * the result stays valid when other rows of the table are cleared with {@link #clearByRows(String, Collection)}
+	 * @param referencedTables the {@link java.util.Set} of tables referenced by the query; for example "SELECT * FROM table2 t2 JOIN table1 t1 ON t2.a=t1.a" referenced "table2" and "table1"
+	 * @param template the query template, see {@link #template(String)}
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @param cachedData the query execution result fully loaded, it can be used when the {@link ResultSet} of the query is closed
+	 * @param tablesVersion the version of the referenced tables before the query has been executed, see {@link #tablesVersion(Set)}
+	 * @param primaryKeyColumn the name of the primary key column if the query can be invalidated by rows, else null
+	 * @return true if the query result has been cached, false if it has been dropped because it may be stale
+	 */
+	public final boolean cacheQueryResult(Set<String> referencedTables, QueryTemplate template, List<Object> queryParameters, CachedData cachedData, long tablesVersion, String primaryKeyColumn) {
+		return store(template, joinParameters(queryParameters), tables(template, referencedTables, primaryKeyColumn), cachedData, tablesVersion, primaryKeyColumn, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param referencedTables the tables referenced by a query
+	 * @return The version of the tables, it changes each time one of the tables is cleared with {@link #clearByTable(String)}
+	 */
+	public final long tablesVersion(Set<String> referencedTables) {
+		return tableVersions.version(referencedTables);
 	}
 	
 	/**
@@ -64,94 +422,343 @@ public final class CacheManager {
 	 * @param query a {@link String} query, for example : "SELECT * FROM table WHERE field = ?"
 	 */
 	public final void clearByQuery(String query) {
-		fetchByQuery(query).clear();
+		clearByQuery(template(query));
 	}
 	
 	/**
-	 * Clear the cache for a table name
+	 * Clear the cache for a query
+	 * @param template the query template, see {@link #template(String)}
+	 */
+	public final void clearByQuery(QueryTemplate template) {
+		fetchByQuery(template).clear();
+	}
+
+	/**
+	 * Clear the cache for a table name.<br/>
+	 * The cached results are not walked through: the version of the table is incremented,
+	 * so the results of the queries referencing the table are stale and are dropped when they are looked up.
 	 * @param tableName a {@link String} table name, for example "tableA" or "user"
 	 */
-	@SuppressWarnings("unchecked")
 	public final void clearByTable(String tableName) {
-		Set<String> queries = (Set<String>) tableIndex().get(tableName);
-		if(queries != null) {
-			for(String query : queries) {
-				clearByQuery(query);
-			}
-		}
+		tableVersions.table(tableName).increment();
 	}
-	
+
+	/**
+	 * Clear the cache for some rows of a table, for example after the rows have been updated or deleted.<br/>
+	 * The query results that contain the primary keys of their rows are stale only if they contain one of the rows,
+	 * the other query results referencing the table are stale.
+	 * @param tableName a {@link String} table name, for example "tableA" or "user"
+	 * @param primaryKeys the primary keys of the rows
+	 */
+	public final void clearByRows(String tableName, Collection<?> primaryKeys) {
+		tableVersions.table(tableName).incrementRows(primaryKeys);
+	}
+
 	// internal
-	
+
 	/**
-	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
-	 * @return a {@link String} representation of a parameters list
+	 * @return All the query templates, see {@link CacheSnapshot}
+	 */
+	final Collection<QueryTemplate> templates() {
+		return templates.templates();
+	}
+
+	/**
+	 * @return The entries of all the query caches listed in a single pass over the store of the provider,
+	 * or null if the provider cannot list them, see {@link CacheSnapshot}
+	 */
+	final Map<QueryCache, Map<ParametersKey, Serializable>> entriesByQueryCache() {
+		if (!(cacheProvider instanceof EnumerableCacheProvider)) {
+			return null;
+		}
+		return ((EnumerableCacheProvider) cacheProvider).entries();
+	}
+
+	/**
+	 * Cache an entry read from a snapshot with the current versions of its tables, unless the query result is already cached or it has expired
+	 * @return true if the entry has been restored
+	 */
+	final boolean restore(String query, Set<String> referencedTables, String primaryKeyColumn, List<Object> queryParameters, CacheEntry entry) {
+		QueryTemplate template = template(query);
+		ParametersKey parameters = joinParameters(queryParameters);
+		// the referenced tables are resolved first, so the table refresh policies apply
+		TableVersion[] tables = tables(template, referencedTables, primaryKeyColumn);
+		RefreshPolicy refreshPolicy = refreshPolicy(template);
+		if((refreshPolicy != null && refreshPolicy.isExpired(entry.getCachedAt(), System.currentTimeMillis())) || fetchByQuery(template).get(parameters) != null) {
+			return false;
+		}
+		return store(template, parameters, tables, entry.getCachedData(), TableVersions.version(tables), primaryKeyColumn, entry.getCachedAt());
+	}
+
+	/**
+	 * Resolve the version counters of the tables referenced by a query the first time a result of the query is cached
 	 */
-	final String joinParameters(List<Object> queryParameters) {
-		return queryParameters.toString();
+	private TableVersion[] tables(QueryTemplate template, Set<String> referencedTables, String primaryKeyColumn) {
+		TableVersion[] tables = template.getTableVersions();
+		if(tables == null) {
+			tables = tableVersions.tables(referencedTables);
+			template.setTableVersions(tables);
+		}
+		if(!template.hasReferencedTables()) {
+			// the queries cached without being rendered by jOOQ
+			template.setReferencedTables(new HashSet<String>(referencedTables), primaryKeyColumn);
+		}
+		return tables;
+	}
+
+	/**
+	 * Cache a query result if none of the tables it references has been invalidated since the query has been executed
+	 * @param cachedAt the time the query result has been read, in milliseconds
+	 * @return true if the query result has been cached, false if it has been dropped because it may be stale
+	 */
+	private boolean store(QueryTemplate template, ParametersKey parameters, TableVersion[] tables, CachedData cachedData, long tablesVersion, String primaryKeyColumn, long cachedAt) {
+		cachedData = deduplicate(cachedData);
+		int primaryKeyIndex = primaryKeyColumn != null && tables.length == 1 ? cachedData.findColumn(primaryKeyColumn) : 0;
+		CacheEntry entry;
+		if(primaryKeyIndex > 0) {
+			int[] rowStripes = rowStripes(cachedData, primaryKeyIndex);
+			entry = new CacheEntry(cachedData, tables[0].tableVersion(), rowStripes, tables[0].rowsVersion(rowStripes), cachedAt);
+		} else {
+			entry = new CacheEntry(cachedData, tablesVersion, null, 0, cachedAt);
+		}
+		// checked once the versions of the entry are read, so they are the versions before the query has been executed
+		if(TableVersions.version(tables) != tablesVersion) {
+			return false;
+		}
+		// if a table is cleared after the check, the entry will be dropped when it is looked up
+		fetchByQuery(template).put(parameters, entry);
+		return true;
+	}
+
+	/**
+	 * @return The identical query result that has replaced a query result when it has been cached, or the query result itself
+	 */
+	private CachedData sharedResult(CachedData cachedData) {
+		ResultDeduplicator currentDeduplicator = deduplicator;
+		return currentDeduplicator == null ? cachedData : currentDeduplicator.shared(cachedData);
+	}
+
+	private CachedData deduplicate(CachedData cachedData) {
+		ResultDeduplicator currentDeduplicator = deduplicator;
+		if(currentDeduplicator == null) {
+			return cachedData;
+		}
+		CachedData shared = currentDeduplicator.deduplicate(cachedData);
+		if(shared != cachedData) {
+			statistics.deduplicatedResult(cachedData.estimateSize());
+		}
+		return shared;
+	}
+
+	/**
+	 * Execute a query again in the background, unless it is already being refreshed or too many refreshes are running, see {@link #setMaxConcurrentRefreshes(int)}.<br/>
+	 * The new result is cached only if none of the tables referenced by the query has been cleared during the refresh.<br/>
+	 * As for a query result missed in the cache, the new result is not cached if it exceeds its capture limits or if it is not admitted:
+	 * the stale result is then dropped
+	 */
+	private void refresh(final QueryTemplate template, final List<Object> queryParameters, final List<?> bindValues, final ParametersKey parameters, final CachedData staleData, final CacheRefresher refresher) {
+		final LoadKey key = new LoadKey(template.getId(), parameters);
+		if(refreshes.putIfAbsent(key, Boolean.TRUE) != null) {
+			return;
+		}
+		if(runningRefreshes.incrementAndGet() > maxConcurrentRefreshes) {
+			endRefresh(key);
+			return;
+		}
+		try {
+			refreshExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						TableVersion[] tables = template.getTableVersions();
+						long tablesVersion = TableVersions.version(tables);
+						long start = System.nanoTime();
+						CachedData cachedData = refresher.refresh(template, bindValues, staleData, captureLimits(template));
+						if(cachedData == null) {
+							captureAborted(template);
+						}
+						if(cachedData == null || !admit(template, queryParameters, System.nanoTime() - start)) {
+							// the new result would not be cached if it was missed, the stale result is not served anymore
+							fetchByQuery(template).remove(parameters);
+						} else {
+							store(template, parameters, tables, cachedData, tablesVersion, template.hasReferencedTables() ? template.getPrimaryKeyColumn() : null, System.currentTimeMillis());
+						}
+					} catch (Exception e) {
+						log.debug("The refresh of a query result failed, the cached result is served until its hard TTL", e);
+					} finally {
+						endRefresh(key);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			endRefresh(key);
+			log.debug("Too many refreshes are pending, the cached result is refreshed later");
+		}
 	}
 	
+	private void endRefresh(Object key) {
+		runningRefreshes.decrementAndGet();
+		refreshes.remove(key);
+	}
+
 	/**
-	 * The query cache associate the query parameters to the query result.<br/>
-	 * The query parameters is a {@link String} representation of a parameters list<br/>
-	 * A query result is represented by {@link CachedData}
-	 * @param query a String query, for example : "SELECT * FROM table WHERE field = ?"
-	 * @return The cache object for the query
+	 * @return The refresh policy of the query, the strictest policy of its referenced tables, or null if there is none
 	 */
-	final Cache fetchByQuery(String query) {
+	final RefreshPolicy refreshPolicy(QueryTemplate template) {
+		RefreshPolicy refreshPolicy = template.getRefreshPolicy();
+		if(refreshPolicy != null || tableRefreshPolicies.isEmpty() || !template.hasReferencedTables()) {
+			return refreshPolicy;
+		}
+		for(String table : template.getReferencedTables()) {
+			RefreshPolicy tablePolicy = tableRefreshPolicies.get(table);
+			if(tablePolicy != null) {
+				refreshPolicy = tablePolicy.strictest(refreshPolicy);
+			}
+		}
+		return refreshPolicy;
+	}
+
+	/**
+	 * @return The cached query result if it exists and if none of the tables it references has been cleared since it has been read, null else
+	 */
+	private CachedData lookup(QueryTemplate template, ParametersKey parameters) {
+		CacheEntry entry = lookupEntry(template, parameters);
+		return entry != null ? entry.getCachedData() : null;
+	}
+
+	/**
+	 * @return The cache entry if it exists and if none of the tables it references has been cleared since it has been read, null else
+	 */
+	private CacheEntry lookupEntry(QueryTemplate template, ParametersKey parameters) {
+		QueryCache queryCache = fetchByQuery(template);
+		CacheEntry entry = (CacheEntry) queryCache.get(parameters);
+		if(entry == null) {
+			return null;
+		}
+		TableVersion[] tables = template.getTableVersions();
+		RefreshPolicy refreshPolicy = refreshPolicy(template);
+		if(tables == null || !entry.isValid(tables) || (refreshPolicy != null && refreshPolicy.isExpired(entry.getCachedAt(), System.currentTimeMillis()))) {
+			queryCache.remove(parameters);
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * @return The distinct stripes of the primary keys of a query result, see {@link TableVersion#stripe(Object)}
+	 */
+	private static int[] rowStripes(CachedData cachedData, int primaryKeyIndex) {
+		BitSet stripes = new BitSet(TableVersion.STRIPES);
+		for(int row = 0; row < cachedData.getRowCount(); row++) {
+			stripes.set(TableVersion.stripe(cachedData.getValue(row, primaryKeyIndex)));
+		}
+		int[] rowStripes = new int[stripes.cardinality()];
+		int i = 0;
+		for(int stripe = stripes.nextSetBit(0); stripe >= 0; stripe = stripes.nextSetBit(stripe + 1)) {
+			rowStripes[i++] = stripe;
+		}
+		return rowStripes;
+	}
+
+	/**
+	 * @return The query result released by the owner of the load, or null if it has not been released in time
+	 */
+	private CachedData await(SettableFuture<CachedData> running) {
+		if(loadTimeoutNanos <= 0) {
+			return null;
+		}
 		try {
-			return queriesCache.get(query);
+			return running.get(loadTimeoutNanos, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			log.debug("Timeout while waiting for a query result loaded by another thread, the query is executed");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
+			// the future is never set with an exception
 		}
+		return null;
+	}
+
+	/**
+	 * @return A bounded executor with two daemon threads, the refreshes that cannot be queued are rejected
+	 */
+	private static Executor defaultRefreshExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1000),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("jooq-cache-refresh-%d").build());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
 	}
 	
 	/**
-	 * A table index associate a table name to a list of queries.<br/>
-	 * The cache object can be seen as a {@link java.util.Map} with String entries and {@link java.util.Set} of String values.<br/>
-	 * For example, the table "table1" will be associated to "SELECT a FROM table1" and "SELECT a FROM table1 WHERE b = ?", but not "SELECT * FROM table2"
-	 * @return The table index
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @return a {@link ParametersKey} representation of a parameters list
 	 */
-	final Cache tableIndex() {
-		return tableIndex;
+	final ParametersKey joinParameters(List<Object> queryParameters) {
+		return ParametersKey.of(queryParameters);
 	}
 	
 	/**
-	 * Add to the index cache the tables referenced in a query
-	 * @param tableIndexes The table index which will be updated
-	 * @param referencedTables The tables referenced in the query
 	 * @param query a String query, for example : "SELECT * FROM table WHERE field = ?"
+	 * @return The cache object for the query
+	 * @see #fetchByQuery(QueryTemplate)
 	 */
-	final void index(Cache tableIndexes, Set<String> referencedTables, String query) {
-		for(String tableReference : referencedTables) {
-			index(tableIndexes, tableReference, query);
-		}
+	final QueryCache fetchByQuery(String query) {
+		return fetchByQuery(template(query));
 	}
 	
 	/**
-	 * Add to the index cache a table referenced in a query
-	 * @param tableIndexes The table index which will be updated
-	 * @param tableReference A table referenced in the query
-	 * @param query a String query, for example : "SELECT * FROM table WHERE field = ?"
+	 * The query cache associate the query parameters to the query result.<br/>
+	 * The query parameters is a {@link ParametersKey} representation of a parameters list<br/>
+	 * A query result is represented by {@link CachedData}<br/>
+	 * The query cache is created once for each template
+	 * @param template the query template
+	 * @return The cache object for the query
 	 */
-	@SuppressWarnings("unchecked")
-	final void index(Cache tableIndexes, String tableReferenceName, String query) {
-		if(tableIndexes.get(tableReferenceName) == null) {
-			// the synchronized is mandatory else a link can be overridden
-			synchronized (tableIndexes) {
-				if(tableIndexes.get(tableReferenceName) == null) {
-					CopyOnWriteArraySet<String> links = new CopyOnWriteArraySet<String>();
-					links.add(query);
-					tableIndexes.put(tableReferenceName, links);
-					return;
+	final QueryCache fetchByQuery(QueryTemplate template) {
+		QueryCache queryCache = template.getQueryCache();
+		if(queryCache == null) {
+			// the synchronized is mandatory else a cache can be overridden, it is only reached the first time a query is cached
+			synchronized (template) {
+				queryCache = template.getQueryCache();
+				if(queryCache == null) {
+					queryCache = QueryCacheAdapter.adapt(cacheProvider.fetchByQuery(template.getQuery()));
+					template.setQueryCache(queryCache);
 				}
 			}
 		}
+		return queryCache;
+	}
+	
+	/**
+	 * Identify a query result that is being loaded
+	 */
+	private static final class LoadKey {
+	
+		private final int templateId;
+		private final ParametersKey parameters;
+
+		LoadKey(int templateId, ParametersKey parameters) {
+			this.templateId = templateId;
+			this.parameters = parameters;
+		}
 		
-		Set<String> links = (Set<String>) tableIndexes.get(tableReferenceName);
-		if(!links.contains(query)) {
-			links.add(query);
+		@Override
+		public int hashCode() {
+			return 31 * templateId + parameters.hashCode();
 		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			if(!(obj instanceof LoadKey)) {
+				return false;
+			}
+			LoadKey other = (LoadKey) obj;
+			return templateId == other.templateId && parameters.equals(other.parameters);
+		}
+
 	}
 	
 }
@@ -10,7 +10,9 @@ public interface CacheProvider {
 	/**
 	 * This cache should not expire.
 	 * @return A cache instance which will be use to index the links between table and query 
+	 * @deprecated the tables are now invalidated with version counters kept by the {@link CacheManager}, this cache is not used anymore
 	 */
+	@Deprecated
 	Cache tableIndex();
 	
 	/**
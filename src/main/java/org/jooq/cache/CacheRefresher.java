@@ -0,0 +1,26 @@
+package org.jooq.cache;
+
+import java.util.List;
+
+import org.jooq.cache.jdbc.CachedData;
+
+/**
+ * Execute a query again to refresh its cached result, see {@link RefreshPolicy}.<br/>
+ * The refresh is run in the background by the {@link CacheManager}.
+ * @author Aurélien Manteaux
+ *
+ */
+public interface CacheRefresher {
+
+	/**
+	 * The same refresher can be used for all the executions of the queries, the bind values are given with each refresh.
+	 * @param template the query template, see {@link CacheManager#template(String)}
+	 * @param bindValues the bind values of the query, see {@link CacheManager#getCachedDataIfPresent(QueryTemplate, List, List, CacheRefresher)}
+	 * @param staleData the query result currently in the cache, the new result must be readable the same way
+	 * @param captureLimits the limits of the new result, see {@link CacheManager#captureLimits(QueryTemplate)}
+	 * @return The new query result fully loaded, or null if it exceeds the capture limits
+	 * @throws Exception if the query cannot be executed
+	 */
+	CachedData refresh(QueryTemplate template, List<?> bindValues, CachedData staleData, CaptureLimits captureLimits) throws Exception;
+
+}
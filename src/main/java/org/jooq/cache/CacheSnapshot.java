@@ -0,0 +1,255 @@
+package org.jooq.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.jooq.cache.jdbc.CachedDataCodec;
+
+import com.google.common.io.Files;
+
+/**
+ * Write the valid entries of the query caches to a file, and read them back.<br/>
+ * The file starts with a magic number and the version of the format, then each query is written with its referenced tables
+ * and its entries, see {@link CacheEntryCodec}; it ends with a checksum of its content.
+ * The entries of a query are written only if the query cache lists its entries, see {@link EnumerableQueryCache},
+ * and only if their parameters and their values can be encoded, see {@link CachedDataCodec};
+ * when the provider lists the entries of all its query caches, see {@link EnumerableCacheProvider}, its store is read once for all the queries.
+ * @author Aurélien Manteaux
+ *
+ */
+final class CacheSnapshot {
+
+	static final int MAGIC = 0x4A514353;
+	static final int VERSION = 1;
+
+	// the records of the file
+	private static final int END = 0;
+	private static final int QUERY = 1;
+
+	private CacheSnapshot() {
+		// static methods only
+	}
+
+	/**
+	 * The snapshot is written to a temporary file that replaces the file once it is complete;
+	 * the temporary file is deleted if the snapshot cannot be written
+	 * @return The number of entries written
+	 */
+	static int save(CacheManager cacheManager, File file) throws IOException {
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		boolean saved = false;
+		try {
+			int entries = write(cacheManager, temporaryFile);
+			// the file is replaced directly when the platform allows it
+			if (!temporaryFile.renameTo(file) && !(file.delete() && temporaryFile.renameTo(file))) {
+				throw new IOException("The snapshot " + temporaryFile + " cannot be renamed to " + file);
+			}
+			saved = true;
+			return entries;
+		} finally {
+			if (!saved) {
+				temporaryFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * The whole file is read in memory and its checksum is verified before the entries are parsed:
+	 * a corrupted file is rejected without decoding any of its values
+	 * @param maxAgeMillis the maximum age of the entries restored, in milliseconds
+	 * @return The number of entries restored
+	 * @throws IOException if the file cannot be read, if it is corrupted or if it has been written with another version of the format
+	 */
+	static int load(CacheManager cacheManager, File file, long maxAgeMillis) throws IOException {
+		byte[] bytes = Files.toByteArray(file);
+		// the checksum is written after the checked content
+		int contentLength = bytes.length - 4;
+		CRC32 checksum = new CRC32();
+		if (contentLength >= 0) {
+			checksum.update(bytes, 0, contentLength);
+		}
+		if (contentLength < 0 || ByteBuffer.wrap(bytes, contentLength, 4).getInt() != (int) checksum.getValue()) {
+			throw new IOException("The snapshot " + file + " is corrupted");
+		}
+
+		List<SnapshotEntry> snapshotEntries = new ArrayList<SnapshotEntry>();
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, 0, contentLength));
+		if (input.readInt() != MAGIC) {
+			throw new IOException(file + " is not a query cache snapshot");
+		}
+		int version = input.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported snapshot version " + version + ", expected " + VERSION);
+		}
+		input.readLong();
+		for (int record = input.readUnsignedByte(); record != END; record = input.readUnsignedByte()) {
+			if (record != QUERY) {
+				throw new IOException("Unknown snapshot record " + record);
+			}
+			readQuery(input, snapshotEntries);
+		}
+
+		long now = System.currentTimeMillis();
+		int restored = 0;
+		for (SnapshotEntry snapshotEntry : snapshotEntries) {
+			if (now - snapshotEntry.entry.getCachedAt() <= maxAgeMillis
+					&& cacheManager.restore(snapshotEntry.query, snapshotEntry.tables, snapshotEntry.primaryKeyColumn, snapshotEntry.parameters, snapshotEntry.entry)) {
+				restored++;
+			}
+		}
+		return restored;
+	}
+
+	// internal
+
+	private static int write(CacheManager cacheManager, File file) throws IOException {
+		OutputStream rawOutput = new BufferedOutputStream(new FileOutputStream(file));
+		CheckedOutputStream checkedOutput = new CheckedOutputStream(rawOutput, new CRC32());
+		int entries = 0;
+		try {
+			DataOutputStream output = new DataOutputStream(checkedOutput);
+			output.writeInt(MAGIC);
+			output.writeByte(VERSION);
+			long now = System.currentTimeMillis();
+			output.writeLong(now);
+			Map<QueryCache, Map<ParametersKey, Serializable>> entriesByQueryCache = cacheManager.entriesByQueryCache();
+			for (QueryTemplate template : cacheManager.templates()) {
+				entries += writeQuery(cacheManager, template, entries(template.getQueryCache(), entriesByQueryCache), output, now);
+			}
+			output.writeByte(END);
+			output.flush();
+			// the checksum is not part of the checked content
+			new DataOutputStream(rawOutput).writeInt((int) checkedOutput.getChecksum().getValue());
+		} finally {
+			checkedOutput.close();
+		}
+		return entries;
+	}
+
+	/**
+	 * @return The entries of a query cache, or null if they cannot be listed
+	 */
+	private static Map<ParametersKey, Serializable> entries(QueryCache queryCache, Map<QueryCache, Map<ParametersKey, Serializable>> entriesByQueryCache) {
+		if (entriesByQueryCache != null) {
+			Map<ParametersKey, Serializable> entries = entriesByQueryCache.get(queryCache);
+			return entries == null ? Collections.<ParametersKey, Serializable>emptyMap() : entries;
+		}
+		if (queryCache instanceof EnumerableQueryCache) {
+			return ((EnumerableQueryCache) queryCache).entries();
+		}
+		return null;
+	}
+
+	private static int writeQuery(CacheManager cacheManager, QueryTemplate template, Map<ParametersKey, Serializable> entries, DataOutputStream output, long now) throws IOException {
+		TableVersion[] tables = template.getTableVersions();
+		if (entries == null || tables == null || !template.hasReferencedTables()) {
+			return 0;
+		}
+		List<byte[]> validEntries = new ArrayList<byte[]>();
+		RefreshPolicy refreshPolicy = cacheManager.refreshPolicy(template);
+		for (Map.Entry<ParametersKey, Serializable> entry : entries.entrySet()) {
+			if (entry.getValue() instanceof CacheEntry) {
+				CacheEntry cacheEntry = (CacheEntry) entry.getValue();
+				if (cacheEntry.isValid(tables) && (refreshPolicy == null || !refreshPolicy.isExpired(cacheEntry.getCachedAt(), now))) {
+					byte[] bytes = encode(entry.getKey(), cacheEntry);
+					if (bytes != null) {
+						validEntries.add(bytes);
+					}
+				}
+			}
+		}
+		if (validEntries.isEmpty()) {
+			return 0;
+		}
+		output.writeByte(QUERY);
+		CachedDataCodec.writeString(output, template.getQuery());
+		Set<String> referencedTables = template.getReferencedTables();
+		CachedDataCodec.writeVarInt(output, referencedTables.size());
+		for (String table : referencedTables) {
+			CachedDataCodec.writeString(output, table);
+		}
+		CachedDataCodec.writeString(output, template.getPrimaryKeyColumn());
+		CachedDataCodec.writeVarInt(output, validEntries.size());
+		for (byte[] bytes : validEntries) {
+			output.write(bytes);
+		}
+		return validEntries.size();
+	}
+
+	/**
+	 * @return The parameters and the entry encoded, or null if they contain values that cannot be encoded, see {@link CachedDataCodec#writeValue}
+	 */
+	private static byte[] encode(ParametersKey parameters, CacheEntry entry) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		try {
+			CachedDataCodec.writeVarInt(output, parameters.size());
+			for (int i = 0; i < parameters.size(); i++) {
+				CachedDataCodec.writeValue(output, parameters.get(i));
+			}
+			CacheEntryCodec.write(entry, output);
+		} catch (IOException e) {
+			// the entry is not saved
+			return null;
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void readQuery(DataInputStream input, List<SnapshotEntry> snapshotEntries) throws IOException {
+		String query = CachedDataCodec.readString(input);
+		int tableCount = CachedDataCodec.readLength(input);
+		Set<String> tables = new HashSet<String>();
+		for (int i = 0; i < tableCount; i++) {
+			tables.add(CachedDataCodec.readString(input));
+		}
+		String primaryKeyColumn = CachedDataCodec.readString(input);
+		int entryCount = CachedDataCodec.readLength(input);
+		for (int i = 0; i < entryCount; i++) {
+			List<Object> parameters = new ArrayList<Object>();
+			int parameterCount = CachedDataCodec.readLength(input);
+			for (int j = 0; j < parameterCount; j++) {
+				parameters.add(CachedDataCodec.readValue(input));
+			}
+			snapshotEntries.add(new SnapshotEntry(query, tables, primaryKeyColumn, parameters, CacheEntryCodec.read(input)));
+		}
+	}
+
+	/**
+	 * An entry read from a snapshot, it is restored once the whole snapshot has been verified
+	 */
+	private static final class SnapshotEntry {
+
+		private final String query;
+		private final Set<String> tables;
+		private final String primaryKeyColumn;
+		private final List<Object> parameters;
+		private final CacheEntry entry;
+
+		SnapshotEntry(String query, Set<String> tables, String primaryKeyColumn, List<Object> parameters, CacheEntry entry) {
+			this.query = query;
+			this.tables = tables;
+			this.primaryKeyColumn = primaryKeyColumn;
+			this.parameters = parameters;
+			this.entry = entry;
+		}
+
+	}
+
+}
@@ -0,0 +1,59 @@
+package org.jooq.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters of a {@link CacheManager}, see {@link CacheManager#getStatistics()}
+ * @author Aurélien Manteaux
+ *
+ */
+public final class CacheStatistics {
+
+	private final AtomicLong abortedCaptures;
+	private final AtomicLong deduplicatedResults;
+	private final AtomicLong deduplicatedBytes;
+
+	CacheStatistics() {
+		this.abortedCaptures = new AtomicLong();
+		this.deduplicatedResults = new AtomicLong();
+		this.deduplicatedBytes = new AtomicLong();
+	}
+
+	/**
+	 * @return The number of query results that have not been cached because they exceeded the capture limits, see {@link CaptureLimits}
+	 */
+	public long getAbortedCaptures() {
+		return abortedCaptures.get();
+	}
+
+	/**
+	 * @return The number of query results replaced by an identical result already cached, see {@link CacheManager#setResultDeduplication(boolean)}
+	 */
+	public long getDeduplicatedResults() {
+		return deduplicatedResults.get();
+	}
+
+	/**
+	 * @return The estimated heap size of the query results replaced by an identical result already cached, in bytes
+	 */
+	public long getDeduplicatedBytes() {
+		return deduplicatedBytes.get();
+	}
+
+	void abortedCapture() {
+		abortedCaptures.incrementAndGet();
+	}
+
+	void deduplicatedResult(long bytes) {
+		deduplicatedResults.incrementAndGet();
+		deduplicatedBytes.addAndGet(bytes);
+	}
+
+	@Override
+	public String toString() {
+		return "aborted captures: " + getAbortedCaptures()
+				+ ", deduplicated results: " + getDeduplicatedResults()
+				+ ", deduplicated bytes: " + getDeduplicatedBytes();
+	}
+
+}
@@ -0,0 +1,79 @@
+package org.jooq.cache;
+
+/**
+ * The limits of a query result read to be cached, see {@link CacheManager#setCaptureLimits(CaptureLimits)}.<br/>
+ * When a query result exceeds a limit while it is read, it is not cached anymore: the rows already copied are released
+ * and the remaining rows are streamed from the database.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class CaptureLimits {
+
+	/**
+	 * No limit, the query results are always cached
+	 */
+	public static final CaptureLimits UNLIMITED = new CaptureLimits(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+	private final int maxRows;
+	private final long maxBytes;
+
+	private CaptureLimits(int maxRows, long maxBytes) {
+		this.maxRows = maxRows;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param maxRows the maximum number of rows of a query result cached
+	 * @param maxBytes the maximum estimated heap size of a query result cached, see {@link org.jooq.cache.jdbc.CachedData#estimateSize()}
+	 * @return The limits
+	 */
+	public static CaptureLimits of(int maxRows, long maxBytes) {
+		if(maxRows < 0 || maxBytes < 0) {
+			throw new IllegalArgumentException("The limits must be positive");
+		}
+		return new CaptureLimits(maxRows, maxBytes);
+	}
+
+	/**
+	 * @param maxRows the maximum number of rows of a query result cached
+	 * @return The limits, without limit on the size of the query results
+	 */
+	public static CaptureLimits ofRows(int maxRows) {
+		return of(maxRows, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxBytes the maximum estimated heap size of a query result cached
+	 * @return The limits, without limit on the number of rows of the query results
+	 */
+	public static CaptureLimits ofBytes(long maxBytes) {
+		return of(Integer.MAX_VALUE, maxBytes);
+	}
+
+	/**
+	 * @return The maximum number of rows of a query result cached
+	 */
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	/**
+	 * @return The maximum estimated heap size of a query result cached, in bytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return true if the size of the query results is limited
+	 */
+	public boolean isSizeLimited() {
+		return maxBytes != Long.MAX_VALUE;
+	}
+
+	@Override
+	public String toString() {
+		return "max " + maxRows + " rows, max " + maxBytes + " bytes";
+	}
+
+}
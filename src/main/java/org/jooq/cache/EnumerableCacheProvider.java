@@ -0,0 +1,23 @@
+package org.jooq.cache;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * A provider whose query caches share a single store, and that lists the entries of all its query caches in one pass over the store.<br/>
+ * A snapshot of the cache then reads the store once, instead of once per query with {@link EnumerableQueryCache#entries()},
+ * see {@link CacheManager#saveSnapshot(java.io.File)}.
+ * @author Aurélien Manteaux
+ *
+ */
+public interface EnumerableCacheProvider extends CacheProvider {
+
+	/**
+	 * The entries put with a {@link String} key are not listed.<br/>
+	 * Listing the entries is not a read: the access metadata used to evict the entries are not updated
+	 * @return A copy of the entries grouped by query cache, a query cache without entries may be missing;
+	 * the entries added or removed while the copy is made may be missing
+	 */
+	Map<QueryCache, Map<ParametersKey, Serializable>> entries();
+
+}
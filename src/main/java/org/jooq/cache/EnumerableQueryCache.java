@@ -0,0 +1,20 @@
+package org.jooq.cache;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * A query cache whose entries can be listed, for example to save a snapshot of the cache, see {@link CacheManager#saveSnapshot(java.io.File)}.<br/>
+ * A {@link Cache} returned by a {@link CacheProvider} can implement this interface to be included in the snapshots.
+ * @author Aurélien Manteaux
+ *
+ */
+public interface EnumerableQueryCache extends QueryCache {
+
+	/**
+	 * The entries put with a {@link String} key are not listed
+	 * @return A copy of the entries of the cache, the entries added or removed while the copy is made may be missing
+	 */
+	Map<ParametersKey, Serializable> entries();
+
+}
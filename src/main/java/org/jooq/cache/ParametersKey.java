@@ -0,0 +1,173 @@
+package org.jooq.cache;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable key representing the parameters list of a query.<br/>
+ * The hash is computed once, and two keys are equal only if their parameters have the same type and the same value:
+ * <code>1</code> (Integer), <code>1L</code> (Long) and <code>"1"</code> (String) are three different keys.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class ParametersKey implements Serializable {
+
+	private static final long serialVersionUID = -2580420390389149186L;
+
+	private static final Object[] NO_PARAMETERS = new Object[0];
+
+	private final Object[] parameters;
+	private transient int hash;
+
+	private ParametersKey(Object[] parameters) {
+		this.parameters = parameters;
+		this.hash = hash(parameters);
+	}
+
+	/**
+	 * @param queryParameters the parameters list for the query; for a same query, the parameters should always be in the same order
+	 * @return The key corresponding to the parameters
+	 */
+	public static ParametersKey of(List<Object> queryParameters) {
+		return new ParametersKey(queryParameters.isEmpty() ? NO_PARAMETERS : queryParameters.toArray());
+	}
+
+	/**
+	 * @return The number of parameters
+	 */
+	public int size() {
+		return parameters.length;
+	}
+
+	/**
+	 * @param index the parameter index, starting from 0
+	 * @return The parameter value
+	 */
+	public Object get(int index) {
+		return parameters[index];
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ParametersKey)) {
+			return false;
+		}
+		ParametersKey other = (ParametersKey) obj;
+		if (hash != other.hash || parameters.length != other.parameters.length) {
+			return false;
+		}
+		for (int i = 0; i < parameters.length; i++) {
+			if (!equal(parameters[i], other.parameters[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The representation contains the type of each parameter, for example : "[java.lang.Integer:1, java.lang.String:1]";
+	 * it is ambiguous when a value contains a separator, see {@link #toCacheKey()}
+	 */
+	@Override
+	public String toString() {
+		return toString(false);
+	}
+
+	/**
+	 * The representation contains the type and the length of each parameter, so it can be used as a {@link String} key
+	 * by the {@link Cache} implementations, for example : "[java.lang.Integer:1:1, java.lang.String:3:a, b]"
+	 */
+	String toCacheKey() {
+		return toString(true);
+	}
+
+	// serialization
+
+	private Object readResolve() {
+		// the hash depends on the class names and is recomputed in the current JVM
+		return new ParametersKey(parameters);
+	}
+
+	// utils
+
+	/**
+	 * @param lengthPrefixed true to write the length of each value before the value: a type name cannot contain ':',
+	 * so the parameters can be read back from the representation whatever their values contain
+	 */
+	private String toString(boolean lengthPrefixed) {
+		StringBuilder builder = new StringBuilder(16 * parameters.length + 2).append('[');
+		for (int i = 0; i < parameters.length; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			Object parameter = parameters[i];
+			if (parameter == null) {
+				builder.append("null");
+			} else {
+				String value = toString(parameter);
+				builder.append(parameter.getClass().getName()).append(':');
+				if (lengthPrefixed) {
+					builder.append(value.length()).append(':');
+				}
+				builder.append(value);
+			}
+		}
+		return builder.append(']').toString();
+	}
+
+	private static int hash(Object[] parameters) {
+		int result = 1;
+		for (Object parameter : parameters) {
+			result = 31 * result + hash(parameter);
+		}
+		return result;
+	}
+
+	private static int hash(Object parameter) {
+		if (parameter == null) {
+			return 0;
+		}
+		// the class name hash is stable between JVM, contrary to the class hash
+		int typeHash = parameter.getClass().getName().hashCode();
+		int valueHash;
+		if (parameter instanceof Enum<?>) {
+			valueHash = ((Enum<?>) parameter).name().hashCode();
+		} else if (parameter.getClass().isArray()) {
+			valueHash = Arrays.deepHashCode(new Object[] { parameter });
+		} else {
+			valueHash = parameter.hashCode();
+		}
+		return 31 * typeHash + valueHash;
+	}
+
+	private static boolean equal(Object a, Object b) {
+		if (a == b) {
+			return true;
+		}
+		if (a == null || b == null || a.getClass() != b.getClass()) {
+			return false;
+		}
+		if (a.getClass().isArray()) {
+			return Arrays.deepEquals(new Object[] { a }, new Object[] { b });
+		}
+		return a.equals(b);
+	}
+
+	private static String toString(Object parameter) {
+		if (parameter.getClass().isArray()) {
+			String deepToString = Arrays.deepToString(new Object[] { parameter });
+			return deepToString.substring(1, deepToString.length() - 1);
+		}
+		return parameter.toString();
+	}
+
+}
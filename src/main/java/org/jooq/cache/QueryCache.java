@@ -0,0 +1,39 @@
+package org.jooq.cache;
+
+import java.io.Serializable;
+
+/**
+ * A cache dedicated to the results of a query, the results are identified by the query parameters. All operation must be thread-safe.<br/>
+ * A {@link Cache} returned by a {@link CacheProvider} can implement this interface to avoid the conversion
+ * of the {@link ParametersKey} to a {@link String} key.
+ * @author Aurélien Manteaux
+ *
+ */
+public interface QueryCache {
+
+	/**
+	 * Put or replace an entry to the cache
+	 * @param key
+	 * @param value must not be null
+	 * @return The value added to the cache
+	 */
+	Serializable put(ParametersKey key, Serializable value);
+
+	/**
+	 * @param key
+	 * @return The value corresponding to the key or null if no value exists for the key
+	 */
+	Serializable get(ParametersKey key);
+
+	/**
+	 * Remove an entry from the cache
+	 * @param key
+	 */
+	void remove(ParametersKey key);
+
+	/**
+	 * Empty all the values in the cache
+	 */
+	void clear();
+
+}
@@ -0,0 +1,53 @@
+package org.jooq.cache;
+
+import java.io.Serializable;
+
+/**
+ * Enable to use a {@link Cache} that does not implement {@link QueryCache}: the keys are converted to {@link String}, see {@link ParametersKey#toCacheKey()}
+ * @author Aurélien Manteaux
+ *
+ */
+final class QueryCacheAdapter implements QueryCache {
+
+	private final Cache delegate;
+
+	private QueryCacheAdapter(Cache delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * @param cache
+	 * @return The cache if it already implements {@link QueryCache}, else an adapter
+	 */
+	static QueryCache adapt(Cache cache) {
+		if (cache instanceof QueryCache) {
+			return (QueryCache) cache;
+		}
+		return new QueryCacheAdapter(cache);
+	}
+
+	@Override
+	public Serializable put(ParametersKey key, Serializable value) {
+		return delegate.put(key.toCacheKey(), value);
+	}
+
+	@Override
+	public Serializable get(ParametersKey key) {
+		return delegate.get(key.toCacheKey());
+	}
+
+	/**
+	 * A {@link Cache} cannot remove a single entry, so nothing is done:
+	 * a stale entry is rejected each time it is looked up, and it is overwritten by the next query result cached
+	 */
+	@Override
+	public void remove(ParametersKey key) {
+		// nothing to do
+	}
+
+	@Override
+	public void clear() {
+		delegate.clear();
+	}
+
+}
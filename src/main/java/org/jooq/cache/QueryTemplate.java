@@ -0,0 +1,147 @@
+package org.jooq.cache;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.jooq.cache.jdbc.CachedMetaData;
+
+/**
+ * A distinct query, for example : "SELECT * FROM table WHERE field = ?".<br/>
+ * A query template is created once by the {@link CacheManager} for each distinct query,
+ * it is then identified by a compact id instead of the query {@link String}.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class QueryTemplate {
+
+	private final int id;
+	private final String query;
+
+	// lazily created by the CacheManager
+	private volatile QueryCache queryCache;
+	// the version counters of the referenced tables, resolved the first time a result is cached
+	private volatile TableVersion[] tableVersions;
+	// the tables referenced by the query, collected the first time the query is rendered
+	private volatile ReferencedTables referencedTables;
+	// the refresh policy of the query, null to use the policies of the referenced tables
+	private volatile RefreshPolicy refreshPolicy;
+	// the capture limits of the query, null to use the limits of all the queries
+	private volatile CaptureLimits captureLimits;
+	// the meta-data shared by the results of the query, read the first time a result is cached
+	private volatile CachedMetaData metaData;
+
+	QueryTemplate(int id, String query) {
+		this.id = id;
+		this.query = query;
+	}
+
+	/**
+	 * @return The id of the query, unique for a {@link CacheManager}
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return The query, for example : "SELECT * FROM table WHERE field = ?"
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return true if the referenced tables of the query are known, see {@link #setReferencedTables(Set, String)}
+	 */
+	public boolean hasReferencedTables() {
+		return referencedTables != null;
+	}
+
+	/**
+	 * Available only when the referenced tables have been set
+	 * @return The names of the tables referenced by the query
+	 */
+	public Set<String> getReferencedTables() {
+		return referencedTables.tables;
+	}
+
+	/**
+	 * Available only when the referenced tables have been set
+	 * @return The primary key column if the query results can be invalidated by rows, else null
+	 */
+	public String getPrimaryKeyColumn() {
+		return referencedTables.primaryKeyColumn;
+	}
+
+	/**
+	 * Set the tables referenced by the query, the tables set the first time are kept
+	 * @param tables the names of the tables referenced by the query
+	 * @param primaryKeyColumn the primary key column if the query results can be invalidated by rows, else null
+	 */
+	public void setReferencedTables(Set<String> tables, String primaryKeyColumn) {
+		if (referencedTables == null) {
+			referencedTables = new ReferencedTables(Collections.unmodifiableSet(tables), primaryKeyColumn);
+		}
+	}
+
+	/**
+	 * @return The meta-data shared by the results of the query, or null if no result has been cached yet
+	 */
+	public CachedMetaData getMetaData() {
+		return metaData;
+	}
+
+	/**
+	 * Set the meta-data of the query results, it replaces the previous meta-data if the columns of the query have changed
+	 */
+	public void setMetaData(CachedMetaData metaData) {
+		this.metaData = metaData;
+	}
+
+	RefreshPolicy getRefreshPolicy() {
+		return refreshPolicy;
+	}
+
+	void setRefreshPolicy(RefreshPolicy refreshPolicy) {
+		this.refreshPolicy = refreshPolicy;
+	}
+
+	CaptureLimits getCaptureLimits() {
+		return captureLimits;
+	}
+
+	void setCaptureLimits(CaptureLimits captureLimits) {
+		this.captureLimits = captureLimits;
+	}
+
+	QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	void setQueryCache(QueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+
+	TableVersion[] getTableVersions() {
+		return tableVersions;
+	}
+
+	void setTableVersions(TableVersion[] tableVersions) {
+		this.tableVersions = tableVersions;
+	}
+
+	@Override
+	public String toString() {
+		return "#" + id + " " + query;
+	}
+
+	private static final class ReferencedTables {
+		private final Set<String> tables;
+		private final String primaryKeyColumn;
+
+		ReferencedTables(Set<String> tables, String primaryKeyColumn) {
+			this.tables = tables;
+			this.primaryKeyColumn = primaryKeyColumn;
+		}
+	}
+
+}
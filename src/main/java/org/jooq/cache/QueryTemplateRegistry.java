@@ -0,0 +1,78 @@
+package org.jooq.cache;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Intern each distinct query into a {@link QueryTemplate} the first time it is seen.<br/>
+ * The number of templates is bounded: the least recently used templates are evicted with their query results,
+ * except the templates with a refresh policy or capture limits of their own, see {@link #pin(QueryTemplate)}.
+ * @author Aurélien Manteaux
+ *
+ */
+final class QueryTemplateRegistry {
+
+	static final int DEFAULT_MAX_TEMPLATES = 10000;
+
+	private final Cache<String, QueryTemplate> templatesByQuery;
+	// the templates that are never evicted
+	private final ConcurrentMap<String, QueryTemplate> pinnedTemplates;
+	private final AtomicInteger sequence;
+
+	QueryTemplateRegistry() {
+		this(DEFAULT_MAX_TEMPLATES);
+	}
+
+	/**
+	 * @param maxTemplates the maximum number of templates, the pinned templates are not counted
+	 */
+	QueryTemplateRegistry(int maxTemplates) {
+		this.templatesByQuery = CacheBuilder.newBuilder().maximumSize(maxTemplates).build();
+		this.pinnedTemplates = new ConcurrentHashMap<String, QueryTemplate>();
+		this.sequence = new AtomicInteger();
+	}
+
+	/**
+	 * @param query a {@link String} query, for example : "SELECT * FROM table WHERE field = ?"
+	 * @return The template of the query, the same instance for a same query until the template is evicted
+	 */
+	QueryTemplate intern(String query) {
+		QueryTemplate template = pinnedTemplates.get(query);
+		if (template != null) {
+			return template;
+		}
+		template = templatesByQuery.getIfPresent(query);
+		if (template != null) {
+			return template;
+		}
+
+		QueryTemplate newTemplate = new QueryTemplate(sequence.getAndIncrement(), query);
+		template = templatesByQuery.asMap().putIfAbsent(query, newTemplate);
+		// if another thread has registered the query first, the id of the new template is lost
+		return template != null ? template : newTemplate;
+	}
+
+	/**
+	 * Keep a template until the registry is discarded, the template configured first is kept for a query
+	 */
+	void pin(QueryTemplate template) {
+		pinnedTemplates.putIfAbsent(template.getQuery(), template);
+	}
+
+	/**
+	 * @return A copy of all the templates
+	 */
+	Collection<QueryTemplate> templates() {
+		Set<QueryTemplate> templates = new HashSet<QueryTemplate>(templatesByQuery.asMap().values());
+		templates.addAll(pinnedTemplates.values());
+		return templates;
+	}
+
+}
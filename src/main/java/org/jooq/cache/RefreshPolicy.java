@@ -0,0 +1,127 @@
+package org.jooq.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Define how long a cached query result is served, see {@link CacheManager#setQueryRefreshPolicy(QueryTemplate, RefreshPolicy)}
+ * and {@link CacheManager#setTableRefreshPolicy(String, RefreshPolicy)}:<br/>
+ * - until the soft TTL, the query result is fresh and it is served from the cache,<br/>
+ * - between the soft TTL and the hard TTL, the query result is stale: it is still served from the cache, but the query is executed again in the background to refresh it,<br/>
+ * - after the hard TTL, the query result is dropped and the query is executed again by the next caller.<br/>
+ * The TTL are counted from the time the query result has been cached.
+ * With refresh-ahead, a hot query result is also refreshed shortly before its hard TTL, see {@link #withRefreshAhead(long, TimeUnit, int)}.
+ * The caches provided by the {@link CacheProvider} should keep the query results longer than the hard TTL.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class RefreshPolicy implements Serializable {
+
+	private static final long serialVersionUID = 2546353271931408763L;
+
+	private final long softTtlMillis;
+	private final long hardTtlMillis;
+	// 0 if refresh-ahead is disabled
+	private final long refreshAheadMillis;
+	private final int refreshAheadHits;
+
+	private RefreshPolicy(long softTtlMillis, long hardTtlMillis, long refreshAheadMillis, int refreshAheadHits) {
+		this.softTtlMillis = softTtlMillis;
+		this.hardTtlMillis = hardTtlMillis;
+		this.refreshAheadMillis = refreshAheadMillis;
+		this.refreshAheadHits = refreshAheadHits;
+	}
+
+	/**
+	 * @param softTtl the time after which a query result is refreshed in the background
+	 * @param hardTtl the time after which a query result is not served anymore, it must not be lower than the soft TTL
+	 * @param unit the unit of the TTL
+	 * @return The policy
+	 */
+	public static RefreshPolicy of(long softTtl, long hardTtl, TimeUnit unit) {
+		if(softTtl < 0 || hardTtl < softTtl) {
+			throw new IllegalArgumentException("The soft TTL must be positive and lower than the hard TTL");
+		}
+		return new RefreshPolicy(unit.toMillis(softTtl), unit.toMillis(hardTtl), 0, 0);
+	}
+
+	/**
+	 * Refresh the hot query results before their hard TTL, so they are never dropped while they are read:
+	 * a query result read at least minHits times is refreshed in the background when it is read during the window before its hard TTL.<br/>
+	 * The reads are counted from the time the query result has been cached.
+	 * @param window the duration before the hard TTL during which a hot query result is refreshed
+	 * @param unit the unit of the window
+	 * @param minHits the number of reads from which a query result is hot
+	 * @return A new policy with the same TTL and with refresh-ahead
+	 */
+	public RefreshPolicy withRefreshAhead(long window, TimeUnit unit, int minHits) {
+		if(window <= 0 || minHits <= 0) {
+			throw new IllegalArgumentException("The refresh-ahead window and the minimum number of hits must be positive");
+		}
+		return new RefreshPolicy(softTtlMillis, hardTtlMillis, unit.toMillis(window), minHits);
+	}
+
+	/**
+	 * @return The time in milliseconds after which a query result is refreshed in the background
+	 */
+	public long getSoftTtlMillis() {
+		return softTtlMillis;
+	}
+
+	/**
+	 * @return The time in milliseconds after which a query result is not served anymore
+	 */
+	public long getHardTtlMillis() {
+		return hardTtlMillis;
+	}
+
+	/**
+	 * @return The duration in milliseconds before the hard TTL during which a hot query result is refreshed, 0 if refresh-ahead is disabled
+	 */
+	public long getRefreshAheadMillis() {
+		return refreshAheadMillis;
+	}
+
+	/**
+	 * @return The number of reads from which a query result is refreshed ahead
+	 */
+	public int getRefreshAheadHits() {
+		return refreshAheadHits;
+	}
+
+	/**
+	 * @param other another policy, may be null
+	 * @return The policy with the lowest soft TTL and the lowest hard TTL of the two policies, and with the widest refresh-ahead
+	 */
+	RefreshPolicy strictest(RefreshPolicy other) {
+		if(other == null) {
+			return this;
+		}
+		RefreshPolicy refreshAhead = other.refreshAheadMillis == 0 || (refreshAheadMillis != 0 && refreshAheadHits <= other.refreshAheadHits) ? this : other;
+		return new RefreshPolicy(
+			Math.min(softTtlMillis, other.softTtlMillis),
+			Math.min(hardTtlMillis, other.hardTtlMillis),
+			Math.max(refreshAheadMillis, other.refreshAheadMillis),
+			refreshAhead.refreshAheadHits
+		);
+	}
+
+	boolean isStale(long cachedAt, long now) {
+		return now - cachedAt >= softTtlMillis;
+	}
+
+	boolean isExpired(long cachedAt, long now) {
+		return now - cachedAt >= hardTtlMillis;
+	}
+
+	boolean isRefreshedAhead(long cachedAt, long now, int hits) {
+		return refreshAheadMillis > 0 && hits >= refreshAheadHits && now - cachedAt >= hardTtlMillis - refreshAheadMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "soft TTL " + softTtlMillis + "ms, hard TTL " + hardTtlMillis + "ms"
+				+ (refreshAheadMillis > 0 ? ", refresh-ahead " + refreshAheadMillis + "ms from " + refreshAheadHits + " hits" : "");
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.jooq.cache;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.jooq.cache.jdbc.CachedData;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Share the query results that contain the same values, for example the empty results of a query:
+ * a result is replaced by an identical result already cached, so its copy can be garbage collected.<br/>
+ * The results are indexed by their content hash and referenced weakly, they are dropped from the index
+ * once no cache entry references them anymore.
+ * @author Aurélien Manteaux
+ *
+ */
+final class ResultDeduplicator {
+
+	private final ConcurrentMap<Integer, CachedData> results;
+
+	ResultDeduplicator() {
+		this.results = CacheBuilder.newBuilder().weakValues().<Integer, CachedData>build().asMap();
+	}
+
+	/**
+	 * @return The identical result already cached, or the result itself if there is none
+	 */
+	CachedData deduplicate(CachedData cachedData) {
+		Integer hash = cachedData.contentHash();
+		CachedData shared = results.putIfAbsent(hash, cachedData);
+		if (shared == null || shared == cachedData) {
+			return cachedData;
+		}
+		if (shared.hasSameContent(cachedData)) {
+			return shared;
+		}
+		// another result has the same hash: the latest result is indexed instead
+		results.replace(hash, shared, cachedData);
+		return cachedData;
+	}
+
+	/**
+	 * Same as {@link #deduplicate(CachedData)}, but the result is not indexed
+	 * @return The identical result already cached, or the result itself if there is none
+	 */
+	CachedData shared(CachedData cachedData) {
+		CachedData shared = results.get(cachedData.contentHash());
+		return shared != null && shared.hasSameContent(cachedData) ? shared : cachedData;
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.jooq.cache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The version counters of a table:<br/>
+ * - the table version is incremented when the whole table is invalidated, for example after an insert,<br/>
+ * - the row writes counter is incremented when some rows identified by their primary key are updated or deleted,<br/>
+ * - the stripes are incremented for these rows, a row being associated to a stripe with the hash of its primary key.<br/>
+ * A query result that contains the primary keys of its rows only depends on the table version and on the stripes of its rows,
+ * the other query results depend on the table version and on the row writes counter.
+ * @author Aurélien Manteaux
+ *
+ */
+final class TableVersion {
+
+	static final int STRIPES = 1024;
+
+	private final AtomicLong version;
+	private final AtomicLong rowWrites;
+	private final AtomicLongArray stripes;
+
+	TableVersion() {
+		this.version = new AtomicLong();
+		this.rowWrites = new AtomicLong();
+		this.stripes = new AtomicLongArray(STRIPES);
+	}
+
+	/**
+	 * @return The number of invalidations of the table, whole table and rows included
+	 */
+	long version() {
+		return version.get() + rowWrites.get();
+	}
+
+	/**
+	 * @return The number of invalidations of the whole table
+	 */
+	long tableVersion() {
+		return version.get();
+	}
+
+	/**
+	 * @param rowStripes the stripes of the rows of a query result, see {@link #stripe(Object)}
+	 * @return The version of the stripes
+	 */
+	long rowsVersion(int[] rowStripes) {
+		long rowsVersion = 0;
+		for(int stripe : rowStripes) {
+			rowsVersion += stripes.get(stripe);
+		}
+		return rowsVersion;
+	}
+
+	/**
+	 * Invalidate the whole table
+	 */
+	void increment() {
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Invalidate some rows of the table
+	 * @param primaryKeys the primary keys of the rows
+	 */
+	void incrementRows(Iterable<?> primaryKeys) {
+		// the row writes counter is incremented first: a query result read before the update and stamped with the new versions of the stripes
+		// is then dropped when it is stored, see CacheManager.store()
+		rowWrites.incrementAndGet();
+		for(Object primaryKey : primaryKeys) {
+			stripes.incrementAndGet(stripe(primaryKey));
+		}
+	}
+
+	/**
+	 * The integer primary keys are converted to long values,
+	 * so a key read as an Integer from the database and the same key given as a Long to a DAO are in the same stripe
+	 * @param primaryKey the primary key of a row
+	 * @return The stripe of the row
+	 */
+	static int stripe(Object primaryKey) {
+		int hash;
+		if(primaryKey instanceof Long || primaryKey instanceof Integer || primaryKey instanceof Short || primaryKey instanceof Byte) {
+			hash = hash(((Number) primaryKey).longValue());
+		} else if(primaryKey instanceof BigInteger && ((BigInteger) primaryKey).bitLength() < 64) {
+			hash = hash(((BigInteger) primaryKey).longValue());
+		} else if(primaryKey instanceof BigDecimal && ((BigDecimal) primaryKey).scale() == 0 && ((BigDecimal) primaryKey).unscaledValue().bitLength() < 64) {
+			hash = hash(((BigDecimal) primaryKey).longValue());
+		} else {
+			hash = primaryKey == null ? 0 : primaryKey.hashCode();
+		}
+		// spread the bits as the keys are often sequential
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+		return hash & (STRIPES - 1);
+	}
+
+	private static int hash(long value) {
+		return (int) (value ^ (value >>> 32));
+	}
+
+}
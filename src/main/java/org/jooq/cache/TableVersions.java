@@ -0,0 +1,80 @@
+package org.jooq.cache;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Count the invalidations of each table, see {@link TableVersion}.<br/>
+ * A query read captures the version of the tables it references before it is executed:
+ * if one of the tables is invalidated while the query is being read, the version has changed when the result is cached.<br/>
+ * The counters are never removed, so the counters of the tables referenced by a query template can be resolved once.
+ * @author Aurélien Manteaux
+ *
+ */
+final class TableVersions {
+
+	private final ConcurrentMap<String, TableVersion> versions;
+
+	TableVersions() {
+		this.versions = new ConcurrentHashMap<String, TableVersion>();
+	}
+
+	/**
+	 * The versions of the tables only increase, so the sum of the versions changes as soon as one of the tables is invalidated
+	 * @param tableNames the tables referenced by a query
+	 * @return The version of the set of tables
+	 */
+	long version(Set<String> tableNames) {
+		long version = 0;
+		for(String tableName : tableNames) {
+			TableVersion tableVersion = versions.get(tableName);
+			if(tableVersion != null) {
+				version += tableVersion.version();
+			}
+		}
+		return version;
+	}
+
+	/**
+	 * @param tableNames the tables referenced by a query
+	 * @return The version counters of the tables, see {@link #version(TableVersion[])}
+	 */
+	TableVersion[] tables(Set<String> tableNames) {
+		TableVersion[] tables = new TableVersion[tableNames.size()];
+		int i = 0;
+		for(String tableName : tableNames) {
+			tables[i++] = table(tableName);
+		}
+		return tables;
+	}
+
+	/**
+	 * @param tables the version counters of the tables referenced by a query, see {@link #tables(Set)}
+	 * @return The version of the set of tables, the same value as {@link #version(Set)} for the table names
+	 */
+	static long version(TableVersion[] tables) {
+		long version = 0;
+		for(TableVersion table : tables) {
+			version += table.version();
+		}
+		return version;
+	}
+
+	/**
+	 * @param tableName the table name
+	 * @return The version counters of the table
+	 */
+	TableVersion table(String tableName) {
+		TableVersion tableVersion = versions.get(tableName);
+		if(tableVersion == null) {
+			TableVersion newTableVersion = new TableVersion();
+			tableVersion = versions.putIfAbsent(tableName, newTableVersion);
+			if(tableVersion == null) {
+				tableVersion = newTableVersion;
+			}
+		}
+		return tableVersion;
+	}
+
+}
@@ -0,0 +1,34 @@
+package org.jooq.cache.impl;
+
+import java.io.Serializable;
+
+import org.jooq.cache.CacheEntry;
+import org.jooq.cache.jdbc.CachedData;
+
+import com.google.common.cache.Weigher;
+
+/**
+ * Weigh the cache entries with the estimated heap size of the query results, see {@link CachedData#estimateSize()}.<br/>
+ * The values that are not query results are weighed as an entry overhead only.
+ * @author Aurélien Manteaux
+ *
+ */
+final class CachedDataWeigher implements Weigher<Object, Serializable> {
+
+	/**
+	 * The estimated size of the key, the parameters and the cache internal entry
+	 */
+	static final int ENTRY_OVERHEAD = 128;
+
+	@Override
+	public int weigh(Object key, Serializable value) {
+		if (value instanceof CacheEntry) {
+			value = ((CacheEntry) value).getCachedData();
+		}
+		if (value instanceof CachedData) {
+			return (int) Math.min(Integer.MAX_VALUE, ENTRY_OVERHEAD + ((CachedData) value).estimateSize());
+		}
+		return ENTRY_OVERHEAD;
+	}
+
+}
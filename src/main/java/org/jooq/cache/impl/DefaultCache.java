@@ -1,21 +1,24 @@
 package org.jooq.cache.impl;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.jooq.cache.Cache;
+import org.jooq.cache.EnumerableQueryCache;
+import org.jooq.cache.ParametersKey;
 
 /**
- * A cache backed with a {@link ConcurrentHashMap}
+ * A cache backed with a {@link ConcurrentHashMap}, it accepts both {@link String} and {@link ParametersKey} keys
  * @author Aurélien Manteaux
  *
  * @param <K>
  * @param <V>
  */
-public class DefaultCache implements Cache {
+public class DefaultCache implements Cache, EnumerableQueryCache {
 	
-	private final Map<String, Serializable> data = new ConcurrentHashMap<String, Serializable>();
+	private final Map<Object, Serializable> data = new ConcurrentHashMap<Object, Serializable>();
 
 	@Override
 	public Serializable put(String key, Serializable value) {
@@ -28,10 +31,37 @@ public class DefaultCache implements Cache {
 		return data.get(key);
 	}
 
+	@Override
+	public Serializable put(ParametersKey key, Serializable value) {
+		data.put(key, value);
+		return value;
+	}
+
+	@Override
+	public Serializable get(ParametersKey key) {
+		return data.get(key);
+	}
+
+	@Override
+	public void remove(ParametersKey key) {
+		data.remove(key);
+	}
+
 	@Override
 	public void clear() {
 		data.clear();
 	}
+
+	@Override
+	public Map<ParametersKey, Serializable> entries() {
+		Map<ParametersKey, Serializable> entries = new HashMap<ParametersKey, Serializable>();
+		for (Map.Entry<Object, Serializable> entry : data.entrySet()) {
+			if (entry.getKey() instanceof ParametersKey) {
+				entries.put((ParametersKey) entry.getKey(), entry.getValue());
+			}
+		}
+		return entries;
+	}
 	
 	boolean isEmpty() {
 		return data.isEmpty();
@@ -1,20 +1,49 @@
 package org.jooq.cache.impl;
 
-import org.jooq.CachedConfiguration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.jooq.AutoCommitCachedConfiguration;
+import org.jooq.ConnectionProvider;
+import org.jooq.RefreshCachedConfiguration;
 import org.jooq.cache.CacheManager;
 import org.jooq.cache.CacheProvider;
+import org.jooq.impl.DataSourceConnectionProvider;
 import org.jooq.impl.DefaultConfigurationExtended;
 
-public class DefaultCachedConfiguration extends DefaultConfigurationExtended implements CachedConfiguration {
+public class DefaultCachedConfiguration extends DefaultConfigurationExtended implements AutoCommitCachedConfiguration, RefreshCachedConfiguration {
 
 	private static final long serialVersionUID = -3764955303536523419L;
 	
 	private final CacheManager cacheManager;
+	private volatile boolean autoCommitIgnored;
+	private transient volatile ConnectionProvider refreshConnectionProvider;
 
 	public DefaultCachedConfiguration(CacheProvider cacheProvider) {
 		cacheManager = new CacheManager(cacheProvider);
 	}
 	
+	/**
+	 * @param cacheProvider the provider of the caches
+	 * @param loadTimeout the maximum time a thread waits for the result of a query that is being executed by another thread; 0 to never wait
+	 * @param unit the unit of the timeout
+	 */
+	public DefaultCachedConfiguration(CacheProvider cacheProvider, long loadTimeout, TimeUnit unit) {
+		cacheManager = new CacheManager(cacheProvider, loadTimeout, unit);
+	}
+	
+	/**
+	 * @param cacheProvider the provider of the caches
+	 * @param loadTimeout the maximum time a thread waits for the result of a query that is being executed by another thread; 0 to never wait
+	 * @param unit the unit of the timeout
+	 * @param refreshExecutor the executor of the background refreshes, see {@link org.jooq.cache.RefreshPolicy}
+	 */
+	public DefaultCachedConfiguration(CacheProvider cacheProvider, long loadTimeout, TimeUnit unit, Executor refreshExecutor) {
+		cacheManager = new CacheManager(cacheProvider, loadTimeout, unit, refreshExecutor);
+	}
+	
 	public DefaultCachedConfiguration() {
 		this(new DefaultCacheProvider());
 	}
@@ -23,5 +52,37 @@ public class DefaultCachedConfiguration extends DefaultConfigurationExtended imp
 	public CacheManager cacheManager() {
 		return cacheManager;
 	}
+	
+	@Override
+	public boolean isAutoCommitIgnored() {
+		return autoCommitIgnored;
+	}
+	
+	/**
+	 * @param autoCommitIgnored true to serve the query results in the cache without acquiring a connection, see {@link AutoCommitCachedConfiguration#isAutoCommitIgnored()}
+	 */
+	public void setAutoCommitIgnored(boolean autoCommitIgnored) {
+		this.autoCommitIgnored = autoCommitIgnored;
+	}
+	
+	@Override
+	public ConnectionProvider refreshConnectionProvider() {
+		return refreshConnectionProvider;
+	}
+	
+	/**
+	 * @param refreshConnectionProvider the provider of the connections dedicated to the refreshes, see {@link RefreshCachedConfiguration#refreshConnectionProvider()};
+	 * null to never refresh the query results in the background
+	 */
+	public void setRefreshConnectionProvider(ConnectionProvider refreshConnectionProvider) {
+		this.refreshConnectionProvider = refreshConnectionProvider;
+	}
+	
+	/**
+	 * @param refreshDataSource the data source of the connections dedicated to the refreshes, see {@link RefreshCachedConfiguration#refreshConnectionProvider()}
+	 */
+	public void setRefreshDataSource(DataSource refreshDataSource) {
+		setRefreshConnectionProvider(new DataSourceConnectionProvider(refreshDataSource));
+	}
 
 }
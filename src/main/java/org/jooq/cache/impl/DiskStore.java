@@ -0,0 +1,256 @@
+package org.jooq.cache.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Store byte arrays on disk, in append-only segment files mapped in memory.<br/>
+ * The values are appended to the current segment; when it is full, a new segment is created.
+ * When the number of segments exceeds the maximum, the oldest segment is compacted: the values read since they have been written
+ * are copied to the current segment if it has enough room, the other values are evicted, then the segment file is deleted.<br/>
+ * A segment is never written once it is full, so the values can be read without locking.
+ * Only the index of the values is kept on the heap.
+ * @author Aurélien Manteaux
+ *
+ */
+final class DiskStore {
+
+	private final File directory;
+	private final int segmentSize;
+	private final int maxSegments;
+	private final ConcurrentMap<Object, Location> index;
+	// guarded by the store
+	private final LinkedList<Segment> segments;
+	private int nextSegmentId;
+
+	/**
+	 * @param directory the directory of the segment files, it is created if it does not exist
+	 * @param segmentSize the size of a segment in bytes, it is the maximum size of a value
+	 * @param maxSegments the maximum number of segments, at least 2
+	 */
+	DiskStore(File directory, int segmentSize, int maxSegments) {
+		if (maxSegments < 2) {
+			throw new IllegalArgumentException("At least two segments are required");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("The directory " + directory + " cannot be created");
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+		this.index = new ConcurrentHashMap<Object, Location>();
+		this.segments = new LinkedList<Segment>();
+		this.nextSegmentId = 0;
+	}
+
+	/**
+	 * Store a value, it replaces the previous value of the key
+	 * @return false if the value is larger than a segment and has not been stored
+	 * @throws IOException if a segment file cannot be created
+	 */
+	boolean put(Object key, byte[] value) throws IOException {
+		if (value.length > segmentSize) {
+			index.remove(key);
+			return false;
+		}
+		synchronized (this) {
+			if (segments.isEmpty() || !append(segments.getLast(), key, ByteBuffer.wrap(value), 0)) {
+				roll(value.length);
+				append(segments.getLast(), key, ByteBuffer.wrap(value), 0);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The value is not copied: the buffer returned reads the segment mapped in memory.<br/>
+	 * The value is marked as read, so it is kept when its segment is compacted
+	 * @return A read-only buffer containing the value, or null if the key has no value or if its value has been evicted
+	 */
+	ByteBuffer get(Object key) {
+		Location location = index.get(key);
+		if (location == null) {
+			return null;
+		}
+		location.referenced = true;
+		return location.read();
+	}
+
+	/**
+	 * Same as {@link #get(Object)}, but the value is not marked as read, for example to list the values:
+	 * the value is not kept because of this read when its segment is compacted
+	 * @return A read-only buffer containing the value, or null if the key has no value or if its value has been evicted
+	 */
+	ByteBuffer peek(Object key) {
+		Location location = index.get(key);
+		return location == null ? null : location.read();
+	}
+
+	/**
+	 * @return true if the key has a value, it may be evicted before it is read
+	 */
+	boolean contains(Object key) {
+		return index.containsKey(key);
+	}
+
+	/**
+	 * Remove the value of a key, its space is reclaimed when its segment is compacted
+	 */
+	void remove(Object key) {
+		index.remove(key);
+	}
+
+	/**
+	 * @return A view of the keys of the values stored, a key may have been evicted when its value is read
+	 */
+	Collection<Object> keys() {
+		return index.keySet();
+	}
+
+	/**
+	 * @return The number of values stored
+	 */
+	int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return The number of segment files
+	 */
+	synchronized int segmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Delete all the segment files, the values are not reachable any more
+	 */
+	synchronized void close() {
+		index.clear();
+		for (Segment segment : segments) {
+			segment.delete();
+		}
+		segments.clear();
+	}
+
+	// internal
+
+	/**
+	 * Append a value to a segment, the caller must hold the store monitor
+	 * @param reserved the room that must be left in the segment after the value
+	 * @return false if the segment has not enough room left
+	 */
+	private boolean append(Segment segment, Object key, ByteBuffer value, int reserved) {
+		int length = value.remaining();
+		if (segment.position + length > segmentSize - reserved) {
+			return false;
+		}
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(segment.position);
+		buffer.put(value);
+		index.put(key, new Location(segment, segment.position, length));
+		segment.keys.add(key);
+		segment.position += length;
+		return true;
+	}
+
+	/**
+	 * Start a new segment, the oldest segment is compacted if there are too many segments; the caller must hold the store monitor
+	 * @param reserved the room kept in the new segment for the value being stored
+	 */
+	private void roll(int reserved) throws IOException {
+		segments.addLast(new Segment(new File(directory, "segment-" + nextSegmentId++ + ".data"), segmentSize));
+		if (segments.size() > maxSegments) {
+			compact(segments.removeFirst(), segments.getLast(), reserved);
+		}
+	}
+
+	/**
+	 * Copy the values of a segment that have been read to another segment while it has room, evict the other values and delete the segment
+	 */
+	private void compact(Segment segment, Segment target, int reserved) {
+		for (Object key : segment.keys) {
+			Location location = index.get(key);
+			if (location == null || location.segment != segment) {
+				// the value has been removed or replaced
+				continue;
+			}
+			if (!location.referenced || !append(target, key, location.read(), reserved)) {
+				index.remove(key, location);
+			}
+		}
+		segment.delete();
+	}
+
+	/**
+	 * A segment file mapped in memory
+	 */
+	private static final class Segment {
+
+		private final File file;
+		private final MappedByteBuffer buffer;
+		// the keys of the values appended to the segment
+		private final List<Object> keys;
+		private int position;
+
+		Segment(File file, int size) throws IOException {
+			this.file = file;
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+			try {
+				// the mapping stays valid once the file is closed
+				this.buffer = randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, size);
+			} finally {
+				randomAccessFile.close();
+			}
+			this.keys = new ArrayList<Object>();
+			this.position = 0;
+		}
+
+		/**
+		 * The mapping is released once the buffer is garbage collected, so the values being read stay readable
+		 */
+		void delete() {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+
+	}
+
+	/**
+	 * The location of a value in the segments
+	 */
+	private static final class Location {
+
+		private final Segment segment;
+		private final int offset;
+		private final int length;
+		// true once the value has been read, the value is then kept when its segment is compacted
+		private volatile boolean referenced;
+
+		Location(Segment segment, int offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.referenced = false;
+		}
+
+		ByteBuffer read() {
+			ByteBuffer value = segment.buffer.duplicate();
+			value.position(offset);
+			value.limit(offset + length);
+			return value.slice().asReadOnlyBuffer();
+		}
+
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.jooq.cache.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.jooq.cache.AdmissionPolicy;
+import org.jooq.cache.ParametersKey;
+import org.jooq.cache.QueryTemplate;
+
+/**
+ * Admit the query results that are requested frequently or that are expensive to execute.<br/>
+ * The requests of each query and parameters are counted in a count-min sketch, as in TinyLFU:
+ * the counters take a fixed memory whatever the number of distinct queries, and they are halved periodically so the old requests are forgotten.
+ * A one-off query with unique parameters is then not cached, unless its execution takes longer than the minimum execution time.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class FrequencyAdmissionPolicy implements AdmissionPolicy {
+
+	private static final int DEPTH = 4;
+	private static final int MAX_COUNT = 15;
+	private static final int[] SEEDS = { 0x97cb3127, 0xb3f8a9e1, 0x4a2d6b5f, 0xe4c3b1a7 };
+
+	private final int minFrequency;
+	private final long minExecutionNanos;
+	private final AtomicIntegerArray counters;
+	private final int mask;
+	private final int sampleSize;
+	private final AtomicInteger additions;
+
+	/**
+	 * Admit the query results requested at least twice recently, whatever their execution time
+	 */
+	public FrequencyAdmissionPolicy() {
+		this(2, 0, TimeUnit.NANOSECONDS, 1 << 16);
+	}
+
+	/**
+	 * @param minFrequency the number of recent requests from which a query result is admitted, including the current request; at most 15
+	 * @param minExecutionTime the execution time from which a query result is admitted whatever its frequency, 0 to admit only by frequency
+	 * @param unit the unit of the execution time
+	 * @param width the number of counters per row of the sketch, rounded up to a power of two; it should be about the number of query results kept in the cache
+	 */
+	public FrequencyAdmissionPolicy(int minFrequency, long minExecutionTime, TimeUnit unit, int width) {
+		if(minFrequency > MAX_COUNT) {
+			throw new IllegalArgumentException("The minimum frequency must not be greater than " + MAX_COUNT);
+		}
+		int size = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+		this.minFrequency = minFrequency;
+		this.minExecutionNanos = unit.toNanos(minExecutionTime);
+		this.counters = new AtomicIntegerArray(DEPTH * size);
+		this.mask = size - 1;
+		this.sampleSize = 10 * size;
+		this.additions = new AtomicInteger();
+	}
+
+	@Override
+	public boolean admit(QueryTemplate template, ParametersKey parameters, long executionNanos) {
+		int frequency = increment(31 * template.getId() + parameters.hashCode());
+		return frequency >= minFrequency || (minExecutionNanos > 0 && executionNanos >= minExecutionNanos);
+	}
+
+	/**
+	 * Count a request
+	 * @return The estimated number of recent requests, including this one
+	 */
+	int increment(int hash) {
+		int frequency = MAX_COUNT;
+		for (int row = 0; row < DEPTH; row++) {
+			int index = index(hash, row);
+			int count = counters.get(index);
+			if(count < MAX_COUNT) {
+				// a lost increment only makes the estimation lower
+				count = counters.incrementAndGet(index);
+			}
+			frequency = Math.min(frequency, count);
+		}
+		if(additions.incrementAndGet() == sampleSize) {
+			reset();
+		}
+		return frequency;
+	}
+
+	// utils
+
+	private int index(int hash, int row) {
+		int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+		h ^= h >>> 16;
+		return row * (mask + 1) + (h & mask);
+	}
+
+	/**
+	 * Halve all the counters, so the frequencies reflect the recent requests
+	 */
+	private void reset() {
+		for (int i = 0; i < counters.length(); i++) {
+			int count;
+			do {
+				count = counters.get(i);
+			} while (!counters.compareAndSet(i, count, count >>> 1));
+		}
+		additions.set(0);
+	}
+
+}
@@ -1,15 +1,19 @@
 package org.jooq.cache.impl;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.jooq.cache.Cache;
+import org.jooq.cache.EnumerableQueryCache;
+import org.jooq.cache.ParametersKey;
 
 import com.google.common.cache.CacheBuilder;
 
-public class GuavaCache implements Cache {
+public class GuavaCache implements Cache, EnumerableQueryCache {
 	
-	private final com.google.common.cache.Cache<String, Serializable> cache = CacheBuilder
+	private final com.google.common.cache.Cache<Object, Serializable> cache = CacheBuilder
 			.newBuilder()
 			.maximumSize(10000)
 			.expireAfterAccess(2, TimeUnit.HOURS)
@@ -26,9 +30,36 @@ public class GuavaCache implements Cache {
 		return cache.getIfPresent(key);
 	}
 	
+	@Override
+	public Serializable put(ParametersKey key, Serializable value) {
+		cache.put(key, value);
+		return value;
+	}
+	
+	@Override
+	public Serializable get(ParametersKey key) {
+		return cache.getIfPresent(key);
+	}
+	
+	@Override
+	public void remove(ParametersKey key) {
+		cache.invalidate(key);
+	}
+	
 	@Override
 	public void clear() {
 		cache.invalidateAll();
 	}
 
+	@Override
+	public Map<ParametersKey, Serializable> entries() {
+		Map<ParametersKey, Serializable> entries = new HashMap<ParametersKey, Serializable>();
+		for (Map.Entry<Object, Serializable> entry : cache.asMap().entrySet()) {
+			if (entry.getKey() instanceof ParametersKey) {
+				entries.put((ParametersKey) entry.getKey(), entry.getValue());
+			}
+		}
+		return entries;
+	}
+
 }
@@ -0,0 +1,170 @@
+package org.jooq.cache.impl;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jooq.cache.Cache;
+import org.jooq.cache.CacheEntryCodec;
+import org.jooq.cache.EnumerableQueryCache;
+import org.jooq.cache.ParametersKey;
+import org.jooq.tools.JooqLogger;
+
+/**
+ * A query cache view on a store outside of the heap, see {@link OffHeapCacheProvider}.<br/>
+ * The values are encoded with the {@link CacheEntryCodec} when they are put to the cache; the values put or read recently are kept decoded on the heap,
+ * the other values are decoded when they are read. A decoded value is served only while its encoded value is in the store.
+ * As for the {@link SharedCache}, clearing the cache increments a generation counter.
+ * @author Aurélien Manteaux
+ *
+ */
+final class OffHeapCache implements Cache, EnumerableQueryCache {
+	
+	private static final JooqLogger log = JooqLogger.getLogger(OffHeapCache.class);
+	
+	private final OffHeapStore store;
+	// shared by the query caches of the provider
+	private final com.google.common.cache.Cache<StoreKey, Serializable> decoded;
+	private final int id;
+	private final AtomicLong generation;
+	
+	OffHeapCache(OffHeapStore store, com.google.common.cache.Cache<StoreKey, Serializable> decoded, int id) {
+		this.store = store;
+		this.decoded = decoded;
+		this.id = id;
+		this.generation = new AtomicLong();
+	}
+
+	@Override
+	public Serializable put(String key, Serializable value) {
+		write(new StoreKey(id, generation.get(), key), value);
+		return value;
+	}
+
+	@Override
+	public Serializable get(String key) {
+		return lookup(new StoreKey(id, generation.get(), key));
+	}
+
+	@Override
+	public Serializable put(ParametersKey key, Serializable value) {
+		write(new StoreKey(id, generation.get(), key), value);
+		return value;
+	}
+
+	@Override
+	public Serializable get(ParametersKey key) {
+		return lookup(new StoreKey(id, generation.get(), key));
+	}
+
+	@Override
+	public void remove(ParametersKey key) {
+		StoreKey storeKey = new StoreKey(id, generation.get(), key);
+		store.remove(storeKey);
+		decoded.invalidate(storeKey);
+	}
+
+	@Override
+	public void clear() {
+		generation.incrementAndGet();
+	}
+	
+	/**
+	 * The index of the whole store is walked through to find the entries of the current generation,
+	 * the entries found are decoded unless they are already decoded on the heap
+	 */
+	@Override
+	public Map<ParametersKey, Serializable> entries() {
+		Map<ParametersKey, Serializable> entries = new HashMap<ParametersKey, Serializable>();
+		Map<StoreKey, Serializable> decodedValues = decodedValues(decoded);
+		for (Object storeKey : store.keys()) {
+			StoreKey key = (StoreKey) storeKey;
+			Serializable value = key.getCache() == id ? readCurrent(key, decodedValues) : null;
+			if (value != null) {
+				entries.put((ParametersKey) key.getParameters(), value);
+			}
+		}
+		return entries;
+	}
+	
+	int id() {
+		return id;
+	}
+	
+	/**
+	 * The value is listed: the decoded values are not updated, so the values read recently are still the ones kept decoded
+	 * @param decodedValues a copy of the decoded values, see {@link #decodedValues(com.google.common.cache.Cache)}
+	 * @return The decoded value of a key of this query cache, or null if the key is not of the current generation or is not a {@link ParametersKey}
+	 */
+	Serializable readCurrent(StoreKey key, Map<StoreKey, Serializable> decodedValues) {
+		if (!key.isCurrent(id, generation.get()) || !(key.getParameters() instanceof ParametersKey)) {
+			return null;
+		}
+		Serializable value = decodedValues.get(key);
+		return value != null ? value : read(key);
+	}
+	
+	/**
+	 * @return A copy of the decoded values, made without marking them as read
+	 */
+	static Map<StoreKey, Serializable> decodedValues(com.google.common.cache.Cache<StoreKey, Serializable> decoded) {
+		return new HashMap<StoreKey, Serializable>(decoded.asMap());
+	}
+	
+	// internal
+	
+	private void write(StoreKey key, Serializable value) {
+		boolean stored;
+		try {
+			stored = store.put(key, CacheEntryCodec.encode(value));
+		} catch (IOException e) {
+			// the value is not cached
+			store.remove(key);
+			stored = false;
+			log.debug("A value cannot be encoded, it is not cached", e);
+		}
+		if (stored) {
+			decoded.put(key, value);
+		} else {
+			decoded.invalidate(key);
+		}
+	}
+	
+	/**
+	 * The decoded value is kept on the heap with its hits and its records, see {@link org.jooq.cache.CacheEntry}, until it is evicted from the decoded values
+	 */
+	private Serializable lookup(StoreKey key) {
+		Serializable value = decoded.getIfPresent(key);
+		if (value != null) {
+			if (store.contains(key)) {
+				return value;
+			}
+			// the encoded value has been evicted from the store
+			decoded.invalidate(key);
+			return null;
+		}
+		value = read(key);
+		if (value == null) {
+			return null;
+		}
+		// a value put concurrently is not overridden
+		Serializable current = decoded.asMap().putIfAbsent(key, value);
+		return current != null ? current : value;
+	}
+	
+	private Serializable read(StoreKey key) {
+		byte[] bytes = store.get(key);
+		if (bytes == null) {
+			return null;
+		}
+		try {
+			return CacheEntryCodec.decode(bytes);
+		} catch (IOException e) {
+			log.debug("A cached value cannot be decoded, it is ignored", e);
+			return null;
+		}
+	}
+
+}
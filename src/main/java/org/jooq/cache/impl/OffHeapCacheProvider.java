@@ -0,0 +1,117 @@
+package org.jooq.cache.impl;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jooq.cache.Cache;
+import org.jooq.cache.EnumerableCacheProvider;
+import org.jooq.cache.ParametersKey;
+import org.jooq.cache.QueryCache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Table;
+
+/**
+ * Provide query caches that keep the query results outside of the heap, in a single store shared by all the queries:
+ * the cached results do not lengthen the garbage collection pauses whatever their number.<br/>
+ * The results are encoded with the {@link org.jooq.cache.CacheEntryCodec} in direct memory slabs, they are evicted slab by slab in a FIFO order when the store is full,
+ * see {@link OffHeapStore}. A result larger than a slab is not cached.<br/>
+ * The results put or read recently are kept decoded on the heap within a budget, 16MB by default; the other results are decoded each time they are read,
+ * so this provider suits large caches of results whose hot set fits in the budget. The hits counted for the refresh-ahead, see {@link org.jooq.cache.RefreshPolicy},
+ * and the records cached with a result are kept only while the result is decoded on the heap: they are lost once it is evicted from the budget.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class OffHeapCacheProvider implements EnumerableCacheProvider {
+	
+	private static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+	private static final long DEFAULT_DECODED_BYTES = 16 * 1024 * 1024;
+	
+	private final OffHeapStore store;
+	private final com.google.common.cache.Cache<StoreKey, Serializable> decoded;
+	private final AtomicInteger cacheIds;
+	// the query caches by id, a query cache that is not referenced any more is dropped
+	private final ConcurrentMap<Integer, OffHeapCache> caches;
+	
+	/**
+	 * @param capacity the size of the memory allocated outside of the heap, in bytes; it is split in slabs of 4MB
+	 */
+	public OffHeapCacheProvider(long capacity) {
+		this(DEFAULT_SLAB_SIZE, (int) Math.max(2, capacity / DEFAULT_SLAB_SIZE));
+	}
+	
+	/**
+	 * @param slabSize the size of a slab in bytes, it is the maximum size of an encoded result
+	 * @param slabCount the number of slabs, at least 2
+	 */
+	public OffHeapCacheProvider(int slabSize, int slabCount) {
+		this(slabSize, slabCount, DEFAULT_DECODED_BYTES);
+	}
+	
+	/**
+	 * @param slabSize the size of a slab in bytes, it is the maximum size of an encoded result
+	 * @param slabCount the number of slabs, at least 2
+	 * @param decodedBytes the maximum estimated heap size of the results kept decoded on the heap, see {@link org.jooq.cache.jdbc.CachedData#estimateSize()};
+	 * 0 to decode the results each time they are read
+	 */
+	public OffHeapCacheProvider(int slabSize, int slabCount, long decodedBytes) {
+		this.store = new OffHeapStore(slabSize, slabCount);
+		this.decoded = CacheBuilder
+				.newBuilder()
+				.maximumWeight(decodedBytes)
+				.weigher(new CachedDataWeigher())
+				.<StoreKey, Serializable>build();
+		this.cacheIds = new AtomicInteger();
+		this.caches = new MapMaker().weakValues().makeMap();
+	}
+
+	@Override
+	public final Cache tableIndex() {
+		return new DefaultCache();
+	}
+
+	@Override
+	public final Cache fetchByQuery(String query) {
+		OffHeapCache cache = new OffHeapCache(store, decoded, cacheIds.incrementAndGet());
+		caches.put(cache.id(), cache);
+		return cache;
+	}
+	
+	/**
+	 * The index of the store is walked through once for all the query caches,
+	 * each entry found is decoded once unless it is already decoded on the heap
+	 */
+	@Override
+	public final Map<QueryCache, Map<ParametersKey, Serializable>> entries() {
+		Table<QueryCache, ParametersKey, Serializable> entries = HashBasedTable.create();
+		Map<StoreKey, Serializable> decodedValues = OffHeapCache.decodedValues(decoded);
+		for (Object storeKey : store.keys()) {
+			StoreKey key = (StoreKey) storeKey;
+			OffHeapCache cache = caches.get(key.getCache());
+			Serializable value = cache == null ? null : cache.readCurrent(key, decodedValues);
+			if (value != null) {
+				entries.put(cache, (ParametersKey) key.getParameters(), value);
+			}
+		}
+		return entries.rowMap();
+	}
+	
+	/**
+	 * @return The number of entries in the store, it may include entries of cleared queries that have not been evicted yet
+	 */
+	public final int size() {
+		return store.size();
+	}
+	
+	/**
+	 * @return The size of the memory allocated outside of the heap, in bytes
+	 */
+	public final long capacity() {
+		return store.capacity();
+	}
+
+}
@@ -0,0 +1,183 @@
+package org.jooq.cache.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Store byte arrays outside of the heap, in direct {@link ByteBuffer} slabs of a fixed size.<br/>
+ * The values are appended to the current slab; when it is full, the next slab is reused and all the values it contained are evicted.
+ * The slabs are then evicted in a FIFO order, without fragmentation and without walking through the values.<br/>
+ * Only the index of the values is kept on the heap.
+ * @author Aurélien Manteaux
+ *
+ */
+final class OffHeapStore {
+
+	private final ByteBuffer[] slabs;
+	private final ReadWriteLock[] locks;
+	// the number of times each slab has been reused, guarded by the lock of the slab
+	private final long[] generations;
+	// the keys of the values stored in each slab, guarded by the store
+	private final List<List<Object>> slabKeys;
+	private final ConcurrentMap<Object, Location> index;
+	private final int slabSize;
+	private int currentSlab;
+	private int position;
+
+	/**
+	 * @param slabSize the size of a slab in bytes, it is the maximum size of a value
+	 * @param slabCount the number of slabs, at least 2
+	 */
+	OffHeapStore(int slabSize, int slabCount) {
+		if (slabCount < 2) {
+			throw new IllegalArgumentException("At least two slabs are required");
+		}
+		this.slabs = new ByteBuffer[slabCount];
+		this.locks = new ReadWriteLock[slabCount];
+		this.generations = new long[slabCount];
+		this.slabKeys = new ArrayList<List<Object>>(slabCount);
+		for (int i = 0; i < slabCount; i++) {
+			slabs[i] = ByteBuffer.allocateDirect(slabSize);
+			locks[i] = new ReentrantReadWriteLock();
+			slabKeys.add(new ArrayList<Object>());
+		}
+		this.index = new ConcurrentHashMap<Object, Location>();
+		this.slabSize = slabSize;
+		this.currentSlab = 0;
+		this.position = 0;
+	}
+
+	/**
+	 * Store a value, it replaces the previous value of the key
+	 * @return false if the value is larger than a slab and has not been stored
+	 */
+	boolean put(Object key, byte[] value) {
+		if (value.length > slabSize) {
+			index.remove(key);
+			return false;
+		}
+		synchronized (this) {
+			if (position + value.length > slabSize) {
+				currentSlab = (currentSlab + 1) % slabs.length;
+				position = 0;
+				evict(currentSlab);
+			}
+			// the slab is written only by the store, the readers use their own duplicates
+			ByteBuffer slab = slabs[currentSlab].duplicate();
+			slab.position(position);
+			slab.put(value);
+			index.put(key, new Location(currentSlab, generations[currentSlab], position, value.length));
+			slabKeys.get(currentSlab).add(key);
+			position += value.length;
+		}
+		return true;
+	}
+
+	/**
+	 * @return A copy of the value, or null if the key has no value or if its value has been evicted
+	 */
+	byte[] get(Object key) {
+		Location location = index.get(key);
+		if (location == null) {
+			return null;
+		}
+		ReadWriteLock lock = locks[location.slab];
+		lock.readLock().lock();
+		try {
+			if (generations[location.slab] != location.generation) {
+				return null;
+			}
+			byte[] value = new byte[location.length];
+			ByteBuffer slab = slabs[location.slab].duplicate();
+			slab.position(location.offset);
+			slab.get(value);
+			return value;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return true if the key has a value, it may be evicted before it is read
+	 */
+	boolean contains(Object key) {
+		return index.containsKey(key);
+	}
+
+	/**
+	 * Remove the value of a key, its space is reclaimed when its slab is reused
+	 */
+	void remove(Object key) {
+		index.remove(key);
+	}
+
+	/**
+	 * @return A view of the keys of the values stored, a key may have been evicted when its value is read
+	 */
+	Collection<Object> keys() {
+		return index.keySet();
+	}
+
+	/**
+	 * @return The number of values stored
+	 */
+	int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return The size of the memory allocated outside of the heap, in bytes
+	 */
+	long capacity() {
+		return (long) slabSize * slabs.length;
+	}
+
+	// internal
+
+	/**
+	 * Evict all the values of a slab before it is reused, the caller must hold the store monitor
+	 */
+	private void evict(int slab) {
+		ReadWriteLock lock = locks[slab];
+		lock.writeLock().lock();
+		try {
+			generations[slab]++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		List<Object> keys = slabKeys.get(slab);
+		for (Object key : keys) {
+			Location location = index.get(key);
+			if (location != null && location.slab == slab) {
+				index.remove(key, location);
+			}
+		}
+		keys.clear();
+	}
+
+	/**
+	 * The location of a value in the slabs
+	 */
+	private static final class Location {
+
+		private final int slab;
+		private final long generation;
+		private final int offset;
+		private final int length;
+
+		Location(int slab, long generation, int offset, int length) {
+			this.slab = slab;
+			this.generation = generation;
+			this.offset = offset;
+			this.length = length;
+		}
+
+	}
+
+}
@@ -0,0 +1,136 @@
+package org.jooq.cache.impl;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jooq.cache.Cache;
+import org.jooq.cache.EnumerableQueryCache;
+import org.jooq.cache.ParametersKey;
+import org.jooq.cache.QueryCache;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+/**
+ * A query cache view on a store shared between all the queries.<br/>
+ * Clearing the cache does not walk through the store: a generation counter is incremented,
+ * so the entries of the previous generation are not reachable any more and are evicted by the store.
+ * @author Aurélien Manteaux
+ *
+ */
+final class SharedCache implements Cache, EnumerableQueryCache {
+	
+	private final com.google.common.cache.Cache<Key, Serializable> store;
+	private final AtomicLong generation;
+	private final int hash;
+	
+	SharedCache(com.google.common.cache.Cache<Key, Serializable> store) {
+		this.store = store;
+		this.generation = new AtomicLong();
+		this.hash = System.identityHashCode(this);
+	}
+
+	@Override
+	public Serializable put(String key, Serializable value) {
+		store.put(new Key(this, generation.get(), key), value);
+		return value;
+	}
+
+	@Override
+	public Serializable get(String key) {
+		return store.getIfPresent(new Key(this, generation.get(), key));
+	}
+
+	@Override
+	public Serializable put(ParametersKey key, Serializable value) {
+		store.put(new Key(this, generation.get(), key), value);
+		return value;
+	}
+
+	@Override
+	public Serializable get(ParametersKey key) {
+		return store.getIfPresent(new Key(this, generation.get(), key));
+	}
+
+	@Override
+	public void remove(ParametersKey key) {
+		store.invalidate(new Key(this, generation.get(), key));
+	}
+
+	@Override
+	public void clear() {
+		generation.incrementAndGet();
+	}
+	
+	/**
+	 * The whole store is walked through to find the entries of the current generation
+	 */
+	@Override
+	public Map<ParametersKey, Serializable> entries() {
+		long currentGeneration = generation.get();
+		Map<ParametersKey, Serializable> entries = new HashMap<ParametersKey, Serializable>();
+		for (Map.Entry<Key, Serializable> entry : store.asMap().entrySet()) {
+			Key key = entry.getKey();
+			if (key.cache == this && key.generation == currentGeneration && key.parameters instanceof ParametersKey) {
+				entries.put((ParametersKey) key.parameters, entry.getValue());
+			}
+		}
+		return entries;
+	}
+	
+	/**
+	 * The store is walked through once to find the entries of the current generation of each query cache, see {@link SharedCacheProvider#entries()}
+	 */
+	static Map<QueryCache, Map<ParametersKey, Serializable>> entries(com.google.common.cache.Cache<Key, Serializable> store) {
+		Table<QueryCache, ParametersKey, Serializable> entries = HashBasedTable.create();
+		for (Map.Entry<Key, Serializable> entry : store.asMap().entrySet()) {
+			Key key = entry.getKey();
+			if (key.generation == key.cache.generation.get() && key.parameters instanceof ParametersKey) {
+				entries.put(key.cache, (ParametersKey) key.parameters, entry.getValue());
+			}
+		}
+		return entries.rowMap();
+	}
+	
+	/**
+	 * The key of an entry in the shared store
+	 */
+	static final class Key {
+		
+		private final SharedCache cache;
+		private final long generation;
+		private final Object parameters;
+		private final int hash;
+		
+		Key(SharedCache cache, long generation, Object parameters) {
+			this.cache = cache;
+			this.generation = generation;
+			this.parameters = parameters;
+			this.hash = 31 * (31 * cache.hash + (int) (generation ^ (generation >>> 32))) + parameters.hashCode();
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return cache == other.cache
+					&& generation == other.generation
+					&& hash == other.hash
+					&& parameters.equals(other.parameters);
+		}
+		
+	}
+
+}
@@ -0,0 +1,87 @@
+package org.jooq.cache.impl;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jooq.cache.Cache;
+import org.jooq.cache.EnumerableCacheProvider;
+import org.jooq.cache.ParametersKey;
+import org.jooq.cache.QueryCache;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Provide query caches that share a single store: the results of all the queries are kept in one cache
+ * bounded globally, instead of one bounded cache per query.<br/>
+ * Each query cache is a view on the shared store, the entries are identified by the query cache and the query parameters.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class SharedCacheProvider implements EnumerableCacheProvider {
+	
+	private final com.google.common.cache.Cache<SharedCache.Key, Serializable> store;
+	
+	public SharedCacheProvider() {
+		this(100000);
+	}
+	
+	/**
+	 * @param maximumSize the maximum number of query results kept in the cache, all queries included
+	 */
+	public SharedCacheProvider(long maximumSize) {
+		this(CacheBuilder
+				.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterAccess(2, TimeUnit.HOURS)
+				.<SharedCache.Key, Serializable>build());
+	}
+
+	private SharedCacheProvider(com.google.common.cache.Cache<SharedCache.Key, Serializable> store) {
+		this.store = store;
+	}
+
+	/**
+	 * Bound the cache with a memory budget instead of a number of entries: each query result is weighed
+	 * with its estimated heap size, and the least recently used results are evicted when the budget is exceeded.<br/>
+	 * A large result does not count as much as a single row result anymore.<br/>
+	 * Note that the budget is split between the segments of the cache,
+	 * so a result that is larger than a fraction of the budget may not be kept at all.
+	 * @param maximumBytes the maximum estimated heap size of the query results kept in the cache, all queries included
+	 * @return The provider
+	 */
+	public static SharedCacheProvider withMemoryBudget(long maximumBytes) {
+		return new SharedCacheProvider(CacheBuilder
+				.newBuilder()
+				.maximumWeight(maximumBytes)
+				.weigher(new CachedDataWeigher())
+				.expireAfterAccess(2, TimeUnit.HOURS)
+				.<SharedCache.Key, Serializable>build());
+	}
+
+	@Override
+	public final Cache tableIndex() {
+		return new DefaultCache();
+	}
+
+	@Override
+	public final Cache fetchByQuery(String query) {
+		return new SharedCache(store);
+	}
+	
+	/**
+	 * The shared store is walked through once for all the query caches
+	 */
+	@Override
+	public final Map<QueryCache, Map<ParametersKey, Serializable>> entries() {
+		return SharedCache.entries(store);
+	}
+	
+	/**
+	 * @return The number of entries in the shared store, it may include entries of cleared queries that have not been evicted yet
+	 */
+	public final long size() {
+		return store.size();
+	}
+
+}
@@ -0,0 +1,58 @@
+package org.jooq.cache.impl;
+
+/**
+ * The key of an entry in a store shared by the query caches, outside of the heap or on disk.<br/>
+ * The key contains the id of the query cache and its generation, so the entries of a cleared query cache are not reachable any more.
+ * @author Aurélien Manteaux
+ *
+ */
+final class StoreKey {
+	
+	private final int cache;
+	private final long generation;
+	private final Object parameters;
+	private final int hash;
+	
+	StoreKey(int cache, long generation, Object parameters) {
+		this.cache = cache;
+		this.generation = generation;
+		this.parameters = parameters;
+		this.hash = 31 * (31 * cache + (int) (generation ^ (generation >>> 32))) + parameters.hashCode();
+	}
+	
+	int getCache() {
+		return cache;
+	}
+	
+	Object getParameters() {
+		return parameters;
+	}
+	
+	/**
+	 * @return true if the key belongs to the current generation of the query cache
+	 */
+	boolean isCurrent(int cacheId, long currentGeneration) {
+		return cache == cacheId && generation == currentGeneration;
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof StoreKey)) {
+			return false;
+		}
+		StoreKey other = (StoreKey) obj;
+		return cache == other.cache
+				&& generation == other.generation
+				&& hash == other.hash
+				&& parameters.equals(other.parameters);
+	}
+	
+}
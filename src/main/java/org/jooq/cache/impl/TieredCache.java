@@ -0,0 +1,190 @@
+package org.jooq.cache.impl;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jooq.cache.Cache;
+import org.jooq.cache.CacheEntryCodec;
+import org.jooq.cache.EnumerableQueryCache;
+import org.jooq.cache.ParametersKey;
+import org.jooq.tools.JooqLogger;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * A query cache with two tiers, see {@link TieredCacheProvider}: the entries evicted from the heap are written to a {@link DiskStore}
+ * instead of being dropped, and an entry read from the disk is copied back to the heap.<br/>
+ * As for the {@link SharedCache}, clearing the cache increments a generation counter.
+ * @author Aurélien Manteaux
+ *
+ */
+final class TieredCache implements Cache, EnumerableQueryCache {
+	
+	private static final JooqLogger log = JooqLogger.getLogger(TieredCache.class);
+	
+	private final com.google.common.cache.Cache<Object, Serializable> heap;
+	private final DiskStore disk;
+	private final int id;
+	private final AtomicLong generation;
+	
+	TieredCache(DiskStore disk, int id, long heapEntries) {
+		this.heap = CacheBuilder
+				.newBuilder()
+				.maximumSize(heapEntries)
+				.removalListener(new RemovalListener<Object, Serializable>() {
+					@Override
+					public void onRemoval(RemovalNotification<Object, Serializable> notification) {
+						if (notification.wasEvicted() && notification.getKey() != null && notification.getValue() != null) {
+							demote(notification.getKey(), notification.getValue());
+						}
+					}
+				})
+				.build();
+		this.disk = disk;
+		this.id = id;
+		this.generation = new AtomicLong();
+	}
+
+	@Override
+	public Serializable put(String key, Serializable value) {
+		return putToHeap(key, value);
+	}
+
+	@Override
+	public Serializable get(String key) {
+		return getFromTiers(key);
+	}
+
+	@Override
+	public Serializable put(ParametersKey key, Serializable value) {
+		return putToHeap(key, value);
+	}
+
+	@Override
+	public Serializable get(ParametersKey key) {
+		return getFromTiers(key);
+	}
+
+	@Override
+	public void remove(ParametersKey key) {
+		heap.invalidate(key);
+		disk.remove(new StoreKey(id, generation.get(), key));
+	}
+
+	@Override
+	public void clear() {
+		generation.incrementAndGet();
+		heap.invalidateAll();
+	}
+	
+	/**
+	 * The entries of the heap are listed with the entries of the disk, the entries of the disk that are not on the heap are decoded
+	 */
+	@Override
+	public Map<ParametersKey, Serializable> entries() {
+		Map<ParametersKey, Serializable> entries = heapEntries();
+		for (Object diskKey : disk.keys()) {
+			StoreKey key = (StoreKey) diskKey;
+			if (key.getCache() == id && !entries.containsKey(key.getParameters())) {
+				Serializable value = readCurrent(key);
+				if (value != null) {
+					entries.put((ParametersKey) key.getParameters(), value);
+				}
+			}
+		}
+		return entries;
+	}
+	
+	/**
+	 * @return A copy of the entries of the heap, the entries put with a {@link String} key are not listed
+	 */
+	Map<ParametersKey, Serializable> heapEntries() {
+		Map<ParametersKey, Serializable> entries = new HashMap<ParametersKey, Serializable>();
+		for (Map.Entry<Object, Serializable> entry : heap.asMap().entrySet()) {
+			if (entry.getKey() instanceof ParametersKey) {
+				entries.put((ParametersKey) entry.getKey(), entry.getValue());
+			}
+		}
+		return entries;
+	}
+	
+	int id() {
+		return id;
+	}
+	
+	/**
+	 * The entry is listed, it is not marked as read on the disk
+	 * @return The decoded value of a key of this query cache, or null if the key is not of the current generation or is not a {@link ParametersKey}
+	 */
+	Serializable readCurrent(StoreKey key) {
+		if (!key.isCurrent(id, generation.get()) || !(key.getParameters() instanceof ParametersKey)) {
+			return null;
+		}
+		return read(key, false);
+	}
+	
+	// internal
+	
+	private Serializable putToHeap(Object key, Serializable value) {
+		heap.put(key, value);
+		// the previous value written to the disk is stale
+		disk.remove(new StoreKey(id, generation.get(), key));
+		return value;
+	}
+	
+	private Serializable getFromTiers(Object key) {
+		Serializable value = heap.getIfPresent(key);
+		if (value != null) {
+			return value;
+		}
+		value = read(new StoreKey(id, generation.get(), key), true);
+		if (value == null) {
+			return null;
+		}
+		// the entry is copied back to the heap, its copy on the disk is kept: it is not written again when it is evicted from the heap,
+		// and it survives the compaction of its segment as it has been read; a value put concurrently is not overridden
+		Serializable current = heap.asMap().putIfAbsent(key, value);
+		return current != null ? current : value;
+	}
+	
+	/**
+	 * Write an entry evicted from the heap to the disk
+	 */
+	private void demote(Object key, Serializable value) {
+		StoreKey diskKey = new StoreKey(id, generation.get(), key);
+		if (disk.contains(diskKey)) {
+			// the entry has been read from the disk, its copy on the disk is up to date as a put removes it
+			return;
+		}
+		try {
+			disk.put(diskKey, CacheEntryCodec.encode(value));
+		} catch (IOException e) {
+			// the entry is dropped
+			disk.remove(diskKey);
+			log.debug("An entry evicted from the heap cannot be written to the disk, it is dropped", e);
+		}
+	}
+	
+	/**
+	 * @param lookup true if the entry is looked up, it is then kept when its segment is compacted; false if it is listed
+	 */
+	private Serializable read(StoreKey key, boolean lookup) {
+		ByteBuffer bytes = lookup ? disk.get(key) : disk.peek(key);
+		if (bytes == null) {
+			return null;
+		}
+		try {
+			return CacheEntryCodec.decode(bytes);
+		} catch (IOException e) {
+			log.debug("An entry of the disk cannot be decoded, it is ignored", e);
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.jooq.cache.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jooq.cache.Cache;
+import org.jooq.cache.EnumerableCacheProvider;
+import org.jooq.cache.ParametersKey;
+import org.jooq.cache.QueryCache;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Table;
+
+/**
+ * Provide query caches with two tiers: each query keeps its most recent results on the heap,
+ * and the results evicted from the heap are written to segment files on a local disk shared by all the queries, instead of being dropped.<br/>
+ * The segment files are mapped in memory and read without copying, a result read from the disk is decoded and copied back to the heap.
+ * When the disk capacity is reached, the oldest segment is compacted, see {@link DiskStore}: only the results read since they have been
+ * written to the disk are kept, listing the results for a snapshot does not count as a read.<br/>
+ * The segment files are deleted when the provider is closed; to keep the cached results across restarts, see {@link org.jooq.cache.CacheManager#saveSnapshot(File)}.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class TieredCacheProvider implements EnumerableCacheProvider, Closeable {
+	
+	private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	
+	private final DiskStore disk;
+	private final long heapEntries;
+	private final AtomicInteger cacheIds;
+	// the query caches by id, a query cache that is not referenced any more is dropped
+	private final ConcurrentMap<Integer, TieredCache> caches;
+	
+	/**
+	 * @param directory the directory of the segment files, it should be on a local SSD
+	 * @param heapEntries the maximum number of results of each query kept on the heap
+	 * @param diskCapacity the maximum size of the segment files, in bytes; it is split in segments of 64MB
+	 */
+	public TieredCacheProvider(File directory, long heapEntries, long diskCapacity) {
+		this(directory, heapEntries, DEFAULT_SEGMENT_SIZE, (int) Math.max(2, diskCapacity / DEFAULT_SEGMENT_SIZE));
+	}
+	
+	/**
+	 * @param directory the directory of the segment files, it should be on a local SSD
+	 * @param heapEntries the maximum number of results of each query kept on the heap
+	 * @param segmentSize the size of a segment file in bytes, it is the maximum size of an encoded result
+	 * @param maxSegments the maximum number of segment files, at least 2
+	 */
+	public TieredCacheProvider(File directory, long heapEntries, int segmentSize, int maxSegments) {
+		this.disk = new DiskStore(directory, segmentSize, maxSegments);
+		this.heapEntries = heapEntries;
+		this.cacheIds = new AtomicInteger();
+		this.caches = new MapMaker().weakValues().makeMap();
+	}
+
+	@Override
+	public final Cache tableIndex() {
+		return new DefaultCache();
+	}
+
+	@Override
+	public final Cache fetchByQuery(String query) {
+		TieredCache cache = new TieredCache(disk, cacheIds.incrementAndGet(), heapEntries);
+		caches.put(cache.id(), cache);
+		return cache;
+	}
+	
+	/**
+	 * The index of the disk is walked through once for all the query caches, each entry found on the disk that is not on the heap is decoded once;
+	 * the entries of the heap of each query cache are listed with them
+	 */
+	@Override
+	public final Map<QueryCache, Map<ParametersKey, Serializable>> entries() {
+		Table<QueryCache, ParametersKey, Serializable> entries = HashBasedTable.create();
+		for (TieredCache cache : caches.values()) {
+			for (Map.Entry<ParametersKey, Serializable> entry : cache.heapEntries().entrySet()) {
+				entries.put(cache, entry.getKey(), entry.getValue());
+			}
+		}
+		for (Object storeKey : disk.keys()) {
+			StoreKey key = (StoreKey) storeKey;
+			TieredCache cache = caches.get(key.getCache());
+			if (cache != null && !entries.contains(cache, key.getParameters())) {
+				Serializable value = cache.readCurrent(key);
+				if (value != null) {
+					entries.put(cache, (ParametersKey) key.getParameters(), value);
+				}
+			}
+		}
+		return entries.rowMap();
+	}
+	
+	/**
+	 * @return The number of results on the disk, it may include results of cleared queries that have not been compacted yet
+	 */
+	public final int diskSize() {
+		return disk.size();
+	}
+	
+	/**
+	 * Delete the segment files, the results on the disk are lost
+	 */
+	@Override
+	public final void close() {
+		disk.close();
+	}
+
+}
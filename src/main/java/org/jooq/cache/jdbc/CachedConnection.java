@@ -18,209 +18,304 @@ import java.sql.Struct;
 import java.util.Map;
 import java.util.Properties;
 
+import org.jooq.ConnectionProvider;
+import org.jooq.cache.CacheLoad;
 import org.jooq.impl.CacheQueryInformation;
 
+/**
+ * A connection that prepares statements using the cache.<br/>
+ * When the query result is already in the cache and the autocommit is ignored, the statements are provided without using a database connection:
+ * the connection is acquired from the connection provider only when it is needed, see {@link org.jooq.AutoCommitCachedConfiguration#isAutoCommitIgnored()}.
+ * @author Aurélien Manteaux
+ *
+ */
 public class CachedConnection implements Connection {
 	
-	private final Connection delegate;
+	private final ConnectionProvider connectionProvider;
 	private final CacheQueryInformation queryInformation;
+	private final CachedData cachedData;
+	private final CacheLoad load;
+	private final boolean autoCommitIgnored;
+	private Connection delegate;
 	
 	public CachedConnection(Connection delegate, CacheQueryInformation queryInformation) {
+		this.connectionProvider = null;
+		this.queryInformation = queryInformation;
+		this.cachedData = null;
+		this.load = null;
+		this.autoCommitIgnored = false;
 		this.delegate = delegate;
+	}
+	
+	/**
+	 * @param connectionProvider the provider of the database connection, it is called only if the connection is needed
+	 * @param queryInformation the query
+	 * @param cachedData the query result if it is in the cache or if it has been read by another thread, else null
+	 * @param load the load of the query result if it is not in the cache, see {@link org.jooq.cache.CacheManager#load}; else null
+	 * @param autoCommitIgnored true to serve the query result without acquiring the database connection, see {@link org.jooq.AutoCommitCachedConfiguration#isAutoCommitIgnored()}
+	 */
+	public CachedConnection(ConnectionProvider connectionProvider, CacheQueryInformation queryInformation, CachedData cachedData, CacheLoad load, boolean autoCommitIgnored) {
+		this.connectionProvider = connectionProvider;
 		this.queryInformation = queryInformation;
+		this.cachedData = cachedData;
+		this.load = load;
+		this.autoCommitIgnored = autoCommitIgnored;
+		this.delegate = null;
+	}
+	
+	/**
+	 * @return true if the database connection has been acquired
+	 */
+	public boolean isAcquired() {
+		return delegate != null;
+	}
+	
+	/**
+	 * Release the threads waiting for the query result if it has not been read with this connection.<br/>
+	 * It does nothing if the query result has already been released, see {@link CacheLoad#abort()}
+	 */
+	public void abortLoad() {
+		if(load != null) {
+			load.abort();
+		}
+	}
+	
+	private Connection delegate() {
+		if(delegate == null) {
+			delegate = connectionProvider.acquire();
+		}
+		return delegate;
+	}
+
+	/**
+	 * [#8] A query result is read from the cache only when the connection is set to autocommit, unless the autocommit is ignored
+	 * @return The statement serving the query result from the cache, or null if the query must be executed
+	 */
+	private PreparedStatement cachedStatement() throws SQLException {
+		if(cachedData == null || !(autoCommitIgnored || delegate().getAutoCommit())) {
+			return null;
+		}
+		queryInformation.setCachedData(cachedData);
+		return new CachedPreparedStatement(this, cachedData);
 	}
 
 	// cached prepared statement
 
 	@Override
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
-		return new CachingPreparedStatement(delegate.prepareStatement(sql), queryInformation);
+		PreparedStatement cachedStatement = cachedStatement();
+		if(cachedStatement != null) {
+			return cachedStatement;
+		}
+		return new CachingPreparedStatement(delegate().prepareStatement(sql), queryInformation, load);
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-		return new CachingPreparedStatement(delegate.prepareStatement(sql, resultSetType, resultSetConcurrency), queryInformation);
+		PreparedStatement cachedStatement = cachedStatement();
+		if(cachedStatement != null) {
+			return cachedStatement;
+		}
+		return new CachingPreparedStatement(delegate().prepareStatement(sql, resultSetType, resultSetConcurrency), queryInformation, load);
 	}
 	
 	@Override
 	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-		return new CachingPreparedStatement(delegate.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), queryInformation);
+		PreparedStatement cachedStatement = cachedStatement();
+		if(cachedStatement != null) {
+			return cachedStatement;
+		}
+		return new CachingPreparedStatement(delegate().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), queryInformation, load);
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-		return new CachingPreparedStatement(delegate.prepareStatement(sql, autoGeneratedKeys), queryInformation);
+		PreparedStatement cachedStatement = cachedStatement();
+		if(cachedStatement != null) {
+			return cachedStatement;
+		}
+		return new CachingPreparedStatement(delegate().prepareStatement(sql, autoGeneratedKeys), queryInformation, load);
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-		return new CachingPreparedStatement(delegate.prepareStatement(sql, columnIndexes), queryInformation);
+		PreparedStatement cachedStatement = cachedStatement();
+		if(cachedStatement != null) {
+			return cachedStatement;
+		}
+		return new CachingPreparedStatement(delegate().prepareStatement(sql, columnIndexes), queryInformation, load);
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-		return new CachingPreparedStatement(delegate.prepareStatement(sql, columnNames), queryInformation);
+		PreparedStatement cachedStatement = cachedStatement();
+		if(cachedStatement != null) {
+			return cachedStatement;
+		}
+		return new CachingPreparedStatement(delegate().prepareStatement(sql, columnNames), queryInformation, load);
 	}
 
 	// delegated methods (no change)
 
 	@Override
 	public <T> T unwrap(Class<T> iface) throws SQLException {
-		return delegate.unwrap(iface);
+		return delegate().unwrap(iface);
 	}
 
 	@Override
 	public boolean isWrapperFor(Class<?> iface) throws SQLException {
-		return delegate.isWrapperFor(iface);
+		return delegate().isWrapperFor(iface);
 	}
 
 	@Override
 	public Statement createStatement() throws SQLException {
-		return delegate.createStatement();
+		return delegate().createStatement();
 	}
 
 	@Override
 	public CallableStatement prepareCall(String sql) throws SQLException {
-		return delegate.prepareCall(sql);
+		return delegate().prepareCall(sql);
 	}
 
 	@Override
 	public String nativeSQL(String sql) throws SQLException {
-		return delegate.nativeSQL(sql);
+		return delegate().nativeSQL(sql);
 	}
 
 	@Override
 	public void setAutoCommit(boolean autoCommit) throws SQLException {
-		delegate.setAutoCommit(autoCommit);
+		delegate().setAutoCommit(autoCommit);
 	}
 
 	@Override
 	public boolean getAutoCommit() throws SQLException {
-		return delegate.getAutoCommit();
+		return delegate().getAutoCommit();
 	}
 
 	@Override
 	public void commit() throws SQLException {
-		delegate.commit();
+		delegate().commit();
 	}
 
 	@Override
 	public void rollback() throws SQLException {
-		delegate.rollback();
+		delegate().rollback();
 	}
 
 	@Override
 	public void close() throws SQLException {
-		delegate.close();
+		if(delegate != null) {
+			delegate.close();
+		}
 	}
 
 	@Override
 	public boolean isClosed() throws SQLException {
-		return delegate.isClosed();
+		return delegate != null && delegate.isClosed();
 	}
 
 	@Override
 	public DatabaseMetaData getMetaData() throws SQLException {
-		return delegate.getMetaData();
+		return delegate().getMetaData();
 	}
 
 	@Override
 	public void setReadOnly(boolean readOnly) throws SQLException {
-		delegate.setReadOnly(readOnly);
+		delegate().setReadOnly(readOnly);
 	}
 
 	@Override
 	public boolean isReadOnly() throws SQLException {
-		return delegate.isReadOnly();
+		return delegate().isReadOnly();
 	}
 
 	@Override
 	public void setCatalog(String catalog) throws SQLException {
-		delegate.setCatalog(catalog);
+		delegate().setCatalog(catalog);
 	}
 
 	@Override
 	public String getCatalog() throws SQLException {
-		return delegate.getCatalog();
+		return delegate().getCatalog();
 	}
 
 	@Override
 	public void setTransactionIsolation(int level) throws SQLException {
-		delegate.setTransactionIsolation(level);
+		delegate().setTransactionIsolation(level);
 	}
 
 	@Override
 	public int getTransactionIsolation() throws SQLException {
-		return delegate.getTransactionIsolation();
+		return delegate().getTransactionIsolation();
 	}
 
 	@Override
 	public SQLWarning getWarnings() throws SQLException {
-		return delegate.getWarnings();
+		return delegate().getWarnings();
 	}
 
 	@Override
 	public void clearWarnings() throws SQLException {
-		delegate.clearWarnings();
+		delegate().clearWarnings();
 	}
 
 	@Override
 	public Statement createStatement(int resultSetType, int resultSetConcurrency)
 			throws SQLException {
-		return delegate.createStatement(resultSetType, resultSetConcurrency);
+		return delegate().createStatement(resultSetType, resultSetConcurrency);
 	}
 
 	@Override
 	public CallableStatement prepareCall(String sql, int resultSetType,
 			int resultSetConcurrency) throws SQLException {
-		return delegate.prepareCall(sql, resultSetType, resultSetConcurrency);
+		return delegate().prepareCall(sql, resultSetType, resultSetConcurrency);
 	}
 
 	@Override
 	public Map<String, Class<?>> getTypeMap() throws SQLException {
-		return delegate.getTypeMap();
+		return delegate().getTypeMap();
 	}
 
 	@Override
 	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
-		delegate.setTypeMap(map);
+		delegate().setTypeMap(map);
 	}
 
 	@Override
 	public void setHoldability(int holdability) throws SQLException {
-		delegate.setHoldability(holdability);
+		delegate().setHoldability(holdability);
 	}
 
 	@Override
 	public int getHoldability() throws SQLException {
-		return delegate.getHoldability();
+		return delegate().getHoldability();
 	}
 
 	@Override
 	public Savepoint setSavepoint() throws SQLException {
-		return delegate.setSavepoint();
+		return delegate().setSavepoint();
 	}
 
 	@Override
 	public Savepoint setSavepoint(String name) throws SQLException {
-		return delegate.setSavepoint(name);
+		return delegate().setSavepoint(name);
 	}
 
 	@Override
 	public void rollback(Savepoint savepoint) throws SQLException {
-		delegate.rollback(savepoint);
+		delegate().rollback(savepoint);
 	}
 
 	@Override
 	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
-		delegate.releaseSavepoint(savepoint);
+		delegate().releaseSavepoint(savepoint);
 	}
 
 	@Override
 	public Statement createStatement(int resultSetType,
 			int resultSetConcurrency, int resultSetHoldability)
 			throws SQLException {
-		return delegate.createStatement(resultSetType, resultSetConcurrency,
+		return delegate().createStatement(resultSetType, resultSetConcurrency,
 				resultSetHoldability);
 	}
 
@@ -228,67 +323,67 @@ public class CachedConnection implements Connection {
 	public CallableStatement prepareCall(String sql, int resultSetType,
 			int resultSetConcurrency, int resultSetHoldability)
 			throws SQLException {
-		return delegate.prepareCall(sql, resultSetType, resultSetConcurrency,
+		return delegate().prepareCall(sql, resultSetType, resultSetConcurrency,
 				resultSetHoldability);
 	}
 
 	@Override
 	public Clob createClob() throws SQLException {
-		return delegate.createClob();
+		return delegate().createClob();
 	}
 
 	@Override
 	public Blob createBlob() throws SQLException {
-		return delegate.createBlob();
+		return delegate().createBlob();
 	}
 
 	@Override
 	public NClob createNClob() throws SQLException {
-		return delegate.createNClob();
+		return delegate().createNClob();
 	}
 
 	@Override
 	public SQLXML createSQLXML() throws SQLException {
-		return delegate.createSQLXML();
+		return delegate().createSQLXML();
 	}
 
 	@Override
 	public boolean isValid(int timeout) throws SQLException {
-		return delegate.isValid(timeout);
+		return delegate().isValid(timeout);
 	}
 
 	@Override
 	public void setClientInfo(String name, String value)
 			throws SQLClientInfoException {
-		delegate.setClientInfo(name, value);
+		delegate().setClientInfo(name, value);
 	}
 
 	@Override
 	public void setClientInfo(Properties properties)
 			throws SQLClientInfoException {
-		delegate.setClientInfo(properties);
+		delegate().setClientInfo(properties);
 	}
 
 	@Override
 	public String getClientInfo(String name) throws SQLException {
-		return delegate.getClientInfo(name);
+		return delegate().getClientInfo(name);
 	}
 
 	@Override
 	public Properties getClientInfo() throws SQLException {
-		return delegate.getClientInfo();
+		return delegate().getClientInfo();
 	}
 
 	@Override
 	public Array createArrayOf(String typeName, Object[] elements)
 			throws SQLException {
-		return delegate.createArrayOf(typeName, elements);
+		return delegate().createArrayOf(typeName, elements);
 	}
 
 	@Override
 	public Struct createStruct(String typeName, Object[] attributes)
 			throws SQLException {
-		return delegate.createStruct(typeName, attributes);
+		return delegate().createStruct(typeName, attributes);
 	}
 
 }
@@ -5,38 +5,150 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * Describe a chached query result with its fields and its rows
+ * Describe a chached query result with its fields and its rows.<br/>
+ * The rows are stored by column, see {@link Column}
  * @author Aurélien Manteaux
  *
  */
 public class CachedData implements Serializable {
 
-	private static final long serialVersionUID = 1077350001901121366L;
-	
-	private final List<Object[]> rows;
-	private final Map<String, Integer> fields;
-	private final List<ColumnInfo> columnInfos;
+	private static final long serialVersionUID = -5164962390346218255L;
 
+	private final int rowCount;
+	private final Column[] columns;
+	private final CachedMetaData metaData;
+	private transient long estimatedSize;
+	private transient int contentHash;
+
+	/**
+	 * @param rows the values of each row, all the rows must have the same length
+	 * @param fields the index of each field, starting from 1
+	 * @param columnInfos the columns meta-data
+	 */
 	public CachedData(List<Object[]> rows, Map<String, Integer> fields, List<ColumnInfo> columnInfos) {
-		this.rows = rows;
-		this.fields = fields;
-		this.columnInfos = columnInfos;
+		this(rows.size(), Column.of(rows, rows.isEmpty() ? columnInfos.size() : rows.get(0).length), fields, columnInfos);
+	}
+
+	CachedData(int rowCount, Column[] columns, Map<String, Integer> fields, List<ColumnInfo> columnInfos) {
+		this(rowCount, columns, new CachedMetaData(fields, columnInfos));
 	}
-	
+
+	/**
+	 * @param metaData the meta-data, usually shared by all the results of a query
+	 */
+	CachedData(int rowCount, Column[] columns, CachedMetaData metaData) {
+		this.rowCount = rowCount;
+		this.columns = columns;
+		this.metaData = metaData;
+	}
+
 	public CachedResultSet newResultSet() {
 		return new CachedResultSet(this);
 	}
 
-	List<Object[]> getRows() {
-		return rows;
+	/**
+	 * @return The number of rows
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * The estimation is computed the first time the method is called.<br/>
+	 * It includes the rows, the strings, the LOB copies and the numbers, but not the fields and columns meta-data
+	 * which are shared between the results of a query, see {@link CachedMetaData}
+	 * @return An estimation of the heap size of the query result in bytes
+	 */
+	public long estimateSize() {
+		long size = estimatedSize;
+		if (size == 0) {
+			size = 32;
+			for (Column column : columns) {
+				size += 8 + column.estimateSize();
+			}
+			estimatedSize = size;
+		}
+		return size;
+	}
+
+	/**
+	 * The hash is computed the first time the method is called
+	 * @return A hash of the values of the query result, see {@link #hasSameContent(CachedData)}
+	 */
+	public int contentHash() {
+		int hash = contentHash;
+		if (hash == 0) {
+			hash = rowCount;
+			for (Column column : columns) {
+				hash = 31 * hash + column.contentHash();
+			}
+			// 0 means that the hash has not been computed
+			hash = hash == 0 ? 1 : hash;
+			contentHash = hash;
+		}
+		return hash;
+	}
+
+	/**
+	 * The results must also describe the same columns, see {@link CachedMetaData}
+	 * @return true if the other query result contains the same values, stored the same way
+	 */
+	public boolean hasSameContent(CachedData other) {
+		if (other == this) {
+			return true;
+		}
+		if (other.rowCount != rowCount || other.columns.length != columns.length || !metaData.describesSameColumns(other.metaData)) {
+			return false;
+		}
+		for (int i = 0; i < columns.length; i++) {
+			if (!columns[i].hasSameContent(other.columns[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param columnName the name of a column, the case is ignored
+	 * @return The index of the column, starting from 1, or 0 if the column does not exist
+	 */
+	public int findColumn(String columnName) {
+		Map<String, Integer> fields = metaData.getFields();
+		Integer index = fields.get(columnName);
+		if (index != null) {
+			return index;
+		}
+		for (Map.Entry<String, Integer> field : fields.entrySet()) {
+			if (field.getKey().equalsIgnoreCase(columnName)) {
+				return field.getValue();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param row the index of the row, starting from 0
+	 * @param column the index of the column, starting from 1
+	 * @return The value, or null if the value is null
+	 */
+	public Object getValue(int row, int column) {
+		return columns[column - 1].getObject(row);
+	}
+
+	Column[] getColumns() {
+		return columns;
+	}
+
+	CachedMetaData getMetaData() {
+		return metaData;
 	}
 
 	Map<String, Integer> getFields() {
-		return fields;
+		return metaData.getFields();
 	}
 
 	List<ColumnInfo> getColumnInfos() {
-		return columnInfos;
+		return metaData.getColumnInfos();
 	}
-	
+
 }
@@ -0,0 +1,517 @@
+package org.jooq.cache.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for the {@link CachedData}, used by the caches storing the query results outside of the heap.<br/>
+ * The format starts with a version byte, then a header with the fields and the columns meta-data, then the columns:
+ * each column is written with its type, its null bitmap and its values; a dictionary column is written with its distinct strings and the codes of its rows.
+ * Integer values are written as variable length integers, and the common JDBC objects are written without Java serialization.
+ * Other objects cannot be written: the LOBs are cached as bytes and strings, and the results with other objects are kept only on the heap.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class CachedDataCodec {
+
+	/**
+	 * The version of the format, a result written with a later version cannot be read.<br/>
+	 * 1: initial format, 2: dictionary columns, 3: UUID values and no Java serialization
+	 */
+	public static final int VERSION = 3;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// the types of the values of object columns
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int BIG_DECIMAL = 2;
+	private static final int BIG_INTEGER = 3;
+	private static final int TIMESTAMP = 4;
+	private static final int DATE = 5;
+	private static final int TIME = 6;
+	private static final int BYTES = 7;
+	private static final int BOOLEAN = 8;
+	private static final int BYTE = 9;
+	private static final int SHORT = 10;
+	private static final int INTEGER = 11;
+	private static final int LONG = 12;
+	private static final int FLOAT = 13;
+	private static final int DOUBLE = 14;
+	private static final int UUID = 16;
+
+	private static final ColumnType[] COLUMN_TYPES = ColumnType.values();
+	// the kind of a dictionary column, written instead of its type
+	private static final int DICTIONARY_COLUMN = 0x80;
+
+	private CachedDataCodec() {
+		// static methods only
+	}
+
+	// API
+
+	public static byte[] encode(CachedData cachedData) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		write(cachedData, new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	public static CachedData decode(byte[] bytes) throws IOException {
+		return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	public static void write(CachedData cachedData, DataOutput output) throws IOException {
+		output.writeByte(VERSION);
+		writeVarInt(output, cachedData.getRowCount());
+		writeHeader(output, cachedData.getFields(), cachedData.getColumnInfos());
+		Column[] columns = cachedData.getColumns();
+		writeVarInt(output, columns.length);
+		for (Column column : columns) {
+			writeColumn(output, column, cachedData.getRowCount());
+		}
+	}
+
+	/**
+	 * @throws IOException if the data is corrupted or if it has been written with another version of the format
+	 */
+	public static CachedData read(DataInput input) throws IOException {
+		int version = input.readUnsignedByte();
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported cached data version " + version + ", expected at most " + VERSION);
+		}
+		int rowCount = checkLength(input, readVarInt(input), 0);
+		Map<String, Integer> fields = readFields(input);
+		List<ColumnInfo> columnInfos = readColumnInfos(input);
+		Column[] columns = new Column[readLength(input)];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = readColumn(input, rowCount);
+		}
+		return new CachedData(rowCount, columns, fields, columnInfos);
+	}
+
+	// varints
+
+	public static void writeVarInt(DataOutput output, int value) throws IOException {
+		writeVarLong(output, value & 0xFFFFFFFFL);
+	}
+
+	public static int readVarInt(DataInput input) throws IOException {
+		return (int) readVarLong(input);
+	}
+
+	/**
+	 * Write an unsigned long with 7 bits per byte, the small values take a single byte
+	 */
+	public static void writeVarLong(DataOutput output, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			output.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.writeByte((int) value);
+	}
+
+	/**
+	 * Read a number of elements written with {@link #writeVarInt(DataOutput, int)}, each element taking at least one byte
+	 * @throws IOException if the number is corrupted, see {@link #checkLength(DataInput, int, int)}
+	 */
+	public static int readLength(DataInput input) throws IOException {
+		return checkLength(input, readVarInt(input), 1);
+	}
+
+	/**
+	 * Check a number of elements before an array is allocated for them, so a corrupted number fails with an {@link IOException}.<br/>
+	 * When the input is read from memory, the number is also checked against the bytes left
+	 * @param elementSize the minimum size in bytes of each element
+	 * @return The number of elements
+	 * @throws IOException if the number is negative or if the elements cannot fit in the bytes left
+	 */
+	public static int checkLength(DataInput input, int length, int elementSize) throws IOException {
+		if (length < 0 || (input instanceof InputStream && (long) length * elementSize > ((InputStream) input).available())) {
+			throw new IOException("Corrupted length " + length);
+		}
+		return length;
+	}
+
+	public static long readVarLong(DataInput input) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = input.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+
+	/**
+	 * Write a signed long, the small negative values take a single byte
+	 */
+	public static void writeZigZag(DataOutput output, long value) throws IOException {
+		writeVarLong(output, (value << 1) ^ (value >> 63));
+	}
+
+	public static long readZigZag(DataInput input) throws IOException {
+		long value = readVarLong(input);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Write a string in UTF-8, it can be null
+	 */
+	public static void writeString(DataOutput output, String value) throws IOException {
+		if (value == null) {
+			writeVarInt(output, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF_8);
+		writeVarInt(output, bytes.length + 1);
+		output.write(bytes);
+	}
+
+	public static String readString(DataInput input) throws IOException {
+		int length = readVarInt(input);
+		if (length == 0) {
+			return null;
+		}
+		byte[] bytes = new byte[checkLength(input, length - 1, 1)];
+		input.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	// header
+
+	private static void writeHeader(DataOutput output, Map<String, Integer> fields, List<ColumnInfo> columnInfos) throws IOException {
+		writeVarInt(output, fields.size());
+		for (Map.Entry<String, Integer> field : fields.entrySet()) {
+			writeString(output, field.getKey());
+			writeVarInt(output, field.getValue());
+		}
+		if (columnInfos == null) {
+			writeVarInt(output, 0);
+			return;
+		}
+		writeVarInt(output, columnInfos.size() + 1);
+		for (ColumnInfo columnInfo : columnInfos) {
+			writeZigZag(output, columnInfo.getPrecision());
+			writeZigZag(output, columnInfo.getScale());
+			writeString(output, columnInfo.getLabel());
+			writeString(output, columnInfo.getTypeName());
+		}
+	}
+
+	private static Map<String, Integer> readFields(DataInput input) throws IOException {
+		int size = readLength(input);
+		Map<String, Integer> fields = new HashMap<String, Integer>();
+		for (int i = 0; i < size; i++) {
+			fields.put(readString(input), readVarInt(input));
+		}
+		return fields;
+	}
+
+	private static List<ColumnInfo> readColumnInfos(DataInput input) throws IOException {
+		int size = readVarInt(input);
+		if (size == 0) {
+			return null;
+		}
+		List<ColumnInfo> columnInfos = new ArrayList<ColumnInfo>(checkLength(input, size - 1, 1));
+		for (int i = 1; i < size; i++) {
+			columnInfos.add(new ColumnInfo(
+				(int) readZigZag(input),
+				(int) readZigZag(input),
+				readString(input),
+				readString(input)
+			));
+		}
+		return columnInfos;
+	}
+
+	// columns
+
+	private static void writeColumn(DataOutput output, Column column, int rowCount) throws IOException {
+		if (column instanceof Column.DictionaryColumn) {
+			writeDictionaryColumn(output, (Column.DictionaryColumn) column, rowCount);
+			return;
+		}
+		ColumnType type = column.getType();
+		output.writeByte(type.ordinal());
+		if (type == ColumnType.OBJECT) {
+			Object[] values = ((Column.ObjectColumn) column).getValues();
+			for (int row = 0; row < rowCount; row++) {
+				writeValue(output, values[row]);
+			}
+			return;
+		}
+		writeNulls(output, column.getNulls());
+		switch (type) {
+		case BOOLEAN:
+		case BYTE:
+			output.write(((Column.ByteColumn) column).getValues(), 0, rowCount);
+			break;
+		case SHORT:
+		case INT:
+			int[] ints = ((Column.IntColumn) column).getValues();
+			for (int row = 0; row < rowCount; row++) {
+				writeZigZag(output, ints[row]);
+			}
+			break;
+		case LONG:
+			long[] longs = ((Column.LongColumn) column).getValues();
+			for (int row = 0; row < rowCount; row++) {
+				writeZigZag(output, longs[row]);
+			}
+			break;
+		case FLOAT:
+			double[] floats = ((Column.DoubleColumn) column).getValues();
+			for (int row = 0; row < rowCount; row++) {
+				output.writeFloat((float) floats[row]);
+			}
+			break;
+		default:
+			double[] doubles = ((Column.DoubleColumn) column).getValues();
+			for (int row = 0; row < rowCount; row++) {
+				output.writeDouble(doubles[row]);
+			}
+			break;
+		}
+	}
+
+	private static Column readColumn(DataInput input, int rowCount) throws IOException {
+		int ordinal = input.readUnsignedByte();
+		if (ordinal == DICTIONARY_COLUMN) {
+			return readDictionaryColumn(input, rowCount);
+		}
+		if (ordinal >= COLUMN_TYPES.length) {
+			throw new IOException("Unknown column type " + ordinal);
+		}
+		ColumnType type = COLUMN_TYPES[ordinal];
+		if (type == ColumnType.OBJECT) {
+			Object[] values = new Object[checkLength(input, rowCount, 1)];
+			for (int row = 0; row < rowCount; row++) {
+				values[row] = readValue(input);
+			}
+			return new Column.ObjectColumn(values);
+		}
+		long[] nulls = readNulls(input);
+		switch (type) {
+		case BOOLEAN:
+		case BYTE:
+			byte[] bytes = new byte[checkLength(input, rowCount, 1)];
+			input.readFully(bytes);
+			return new Column.ByteColumn(type, bytes, nulls);
+		case SHORT:
+		case INT:
+			int[] ints = new int[checkLength(input, rowCount, 1)];
+			for (int row = 0; row < rowCount; row++) {
+				ints[row] = (int) readZigZag(input);
+			}
+			return new Column.IntColumn(type, ints, nulls);
+		case LONG:
+			long[] longs = new long[checkLength(input, rowCount, 1)];
+			for (int row = 0; row < rowCount; row++) {
+				longs[row] = readZigZag(input);
+			}
+			return new Column.LongColumn(longs, nulls);
+		case FLOAT:
+			double[] floats = new double[checkLength(input, rowCount, 4)];
+			for (int row = 0; row < rowCount; row++) {
+				floats[row] = input.readFloat();
+			}
+			return new Column.DoubleColumn(type, floats, nulls);
+		default:
+			double[] doubles = new double[checkLength(input, rowCount, 8)];
+			for (int row = 0; row < rowCount; row++) {
+				doubles[row] = input.readDouble();
+			}
+			return new Column.DoubleColumn(type, doubles, nulls);
+		}
+	}
+
+	private static void writeDictionaryColumn(DataOutput output, Column.DictionaryColumn column, int rowCount) throws IOException {
+		output.writeByte(DICTIONARY_COLUMN);
+		String[] dictionary = column.getDictionary();
+		writeVarInt(output, dictionary.length);
+		for (String value : dictionary) {
+			writeString(output, value);
+		}
+		writeNulls(output, column.getNulls());
+		int[] codes = column.getCodes();
+		for (int row = 0; row < rowCount; row++) {
+			writeVarInt(output, codes[row]);
+		}
+	}
+
+	private static Column readDictionaryColumn(DataInput input, int rowCount) throws IOException {
+		String[] dictionary = new String[readLength(input)];
+		for (int i = 0; i < dictionary.length; i++) {
+			dictionary[i] = readString(input);
+		}
+		long[] nulls = readNulls(input);
+		int[] codes = new int[checkLength(input, rowCount, 1)];
+		for (int row = 0; row < rowCount; row++) {
+			codes[row] = readVarInt(input);
+			if (codes[row] < 0 || codes[row] >= Math.max(1, dictionary.length)) {
+				throw new IOException("Invalid dictionary code " + codes[row]);
+			}
+		}
+		return new Column.DictionaryColumn(dictionary, codes, nulls);
+	}
+
+	private static void writeNulls(DataOutput output, long[] nulls) throws IOException {
+		if (nulls == null) {
+			writeVarInt(output, 0);
+			return;
+		}
+		writeVarInt(output, nulls.length + 1);
+		for (long word : nulls) {
+			output.writeLong(word);
+		}
+	}
+
+	private static long[] readNulls(DataInput input) throws IOException {
+		int words = readVarInt(input);
+		if (words == 0) {
+			return null;
+		}
+		long[] nulls = new long[checkLength(input, words - 1, 8)];
+		for (int i = 0; i < nulls.length; i++) {
+			nulls[i] = input.readLong();
+		}
+		return nulls;
+	}
+
+	// objects
+
+	/**
+	 * Write a value read from a {@link java.sql.ResultSet} or a query parameter, it can be null
+	 * @throws IOException if the type of the value is not supported
+	 */
+	public static void writeValue(DataOutput output, Object value) throws IOException {
+		if (value == null) {
+			output.writeByte(NULL);
+		} else if (value instanceof String) {
+			output.writeByte(STRING);
+			writeString(output, (String) value);
+		} else if (value instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) value;
+			output.writeByte(BIG_DECIMAL);
+			writeZigZag(output, decimal.scale());
+			writeBytes(output, decimal.unscaledValue().toByteArray());
+		} else if (value instanceof BigInteger) {
+			output.writeByte(BIG_INTEGER);
+			writeBytes(output, ((BigInteger) value).toByteArray());
+		} else if (value instanceof java.sql.Timestamp) {
+			java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+			output.writeByte(TIMESTAMP);
+			writeZigZag(output, timestamp.getTime());
+			writeVarInt(output, timestamp.getNanos());
+		} else if (value.getClass() == java.sql.Date.class) {
+			output.writeByte(DATE);
+			writeZigZag(output, ((java.sql.Date) value).getTime());
+		} else if (value.getClass() == java.sql.Time.class) {
+			output.writeByte(TIME);
+			writeZigZag(output, ((java.sql.Time) value).getTime());
+		} else if (value instanceof byte[]) {
+			output.writeByte(BYTES);
+			writeBytes(output, (byte[]) value);
+		} else if (value instanceof Boolean) {
+			output.writeByte(BOOLEAN);
+			output.writeBoolean((Boolean) value);
+		} else if (value instanceof Byte) {
+			output.writeByte(BYTE);
+			output.writeByte((Byte) value);
+		} else if (value instanceof Short) {
+			output.writeByte(SHORT);
+			writeZigZag(output, (Short) value);
+		} else if (value instanceof Integer) {
+			output.writeByte(INTEGER);
+			writeZigZag(output, (Integer) value);
+		} else if (value instanceof Long) {
+			output.writeByte(LONG);
+			writeZigZag(output, (Long) value);
+		} else if (value instanceof Float) {
+			output.writeByte(FLOAT);
+			output.writeFloat((Float) value);
+		} else if (value instanceof Double) {
+			output.writeByte(DOUBLE);
+			output.writeDouble((Double) value);
+		} else if (value instanceof java.util.UUID) {
+			java.util.UUID uuid = (java.util.UUID) value;
+			output.writeByte(UUID);
+			output.writeLong(uuid.getMostSignificantBits());
+			output.writeLong(uuid.getLeastSignificantBits());
+		} else {
+			throw new IOException("A value of type " + value.getClass().getName() + " cannot be encoded");
+		}
+	}
+
+	public static Object readValue(DataInput input) throws IOException {
+		int type = input.readUnsignedByte();
+		switch (type) {
+		case NULL:
+			return null;
+		case STRING:
+			return readString(input);
+		case BIG_DECIMAL:
+			int scale = (int) readZigZag(input);
+			return new BigDecimal(new BigInteger(readBytes(input)), scale);
+		case BIG_INTEGER:
+			return new BigInteger(readBytes(input));
+		case TIMESTAMP:
+			java.sql.Timestamp timestamp = new java.sql.Timestamp(readZigZag(input));
+			timestamp.setNanos(readVarInt(input));
+			return timestamp;
+		case DATE:
+			return new java.sql.Date(readZigZag(input));
+		case TIME:
+			return new java.sql.Time(readZigZag(input));
+		case BYTES:
+			return readBytes(input);
+		case BOOLEAN:
+			return input.readBoolean();
+		case BYTE:
+			return input.readByte();
+		case SHORT:
+			return (short) readZigZag(input);
+		case INTEGER:
+			return (int) readZigZag(input);
+		case LONG:
+			return readZigZag(input);
+		case FLOAT:
+			return input.readFloat();
+		case DOUBLE:
+			return input.readDouble();
+		case UUID:
+			return new java.util.UUID(input.readLong(), input.readLong());
+		default:
+			throw new IOException("Unknown value type " + type);
+		}
+	}
+
+	// utils
+
+	private static void writeBytes(DataOutput output, byte[] bytes) throws IOException {
+		writeVarInt(output, bytes.length);
+		output.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInput input) throws IOException {
+		byte[] bytes = new byte[readLength(input)];
+		input.readFully(bytes);
+		return bytes;
+	}
+
+}
@@ -0,0 +1,188 @@
+package org.jooq.cache.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import org.jooq.cache.CaptureLimits;
+
+/**
+ * Read a whole {@link ResultSet} the same way another result of the same query has been read by jOOQ:
+ * each column is read with the getter used for the previous result, so the new result can be served to jOOQ instead of the previous one.
+ * @author Aurélien Manteaux
+ *
+ */
+final class CachedDataReader {
+
+	private CachedDataReader() {
+	}
+
+	/**
+	 * @param resultSet the result set to read, it is not closed
+	 * @param previous a result of the same query, its fields and columns meta-data are shared with the new result
+	 * @param captureLimits the limits of the result, the size is checked every 64 rows and once the result is read
+	 * @return The result read, or null if it exceeds the capture limits: the remaining rows are not read
+	 * @throws SQLException if the result set cannot be read or if its columns do not match the previous result
+	 */
+	static CachedData read(ResultSet resultSet, CachedData previous, CaptureLimits captureLimits) throws SQLException {
+		Column[] previousColumns = previous.getColumns();
+		ResultSetMetaData metaData = resultSet.getMetaData();
+		if(metaData.getColumnCount() != previousColumns.length) {
+			throw new SQLException("The columns of the query result do not match the cached result");
+		}
+
+		ColumnBuilder[] builders = new ColumnBuilder[previousColumns.length];
+		Class<?>[] valueTypes = new Class<?>[previousColumns.length];
+		for (int i = 0; i < previousColumns.length; i++) {
+			builders[i] = new ColumnBuilder();
+			valueTypes[i] = valueType(previousColumns[i], metaData.getColumnType(i + 1));
+		}
+
+		int rowCount = 0;
+		while (resultSet.next()) {
+			for (int i = 0; i < previousColumns.length; i++) {
+				read(resultSet, i + 1, previousColumns[i].getType(), valueTypes[i], builders[i], rowCount);
+			}
+			rowCount++;
+			if(exceedsLimits(builders, rowCount, captureLimits, (rowCount & 63) == 0)) {
+				return null;
+			}
+		}
+		if(exceedsLimits(builders, rowCount, captureLimits, true)) {
+			return null;
+		}
+
+		Column[] columns = new Column[builders.length];
+		for (int i = 0; i < builders.length; i++) {
+			columns[i] = builders[i].build(rowCount);
+		}
+		return new CachedData(rowCount, columns, previous.getMetaData());
+	}
+
+	// utils
+
+	private static boolean exceedsLimits(ColumnBuilder[] builders, int rowCount, CaptureLimits captureLimits, boolean checkSize) {
+		if(rowCount > captureLimits.getMaxRows()) {
+			return true;
+		}
+		if(!checkSize || !captureLimits.isSizeLimited()) {
+			return false;
+		}
+		long size = 0;
+		for (ColumnBuilder builder : builders) {
+			size += builder.estimateSize();
+		}
+		return size > captureLimits.getMaxBytes();
+	}
+
+	private static void read(ResultSet resultSet, int columnIndex, ColumnType type, Class<?> valueType, ColumnBuilder builder, int row) throws SQLException {
+		switch (type) {
+		case BOOLEAN:
+			builder.setBoolean(row, resultSet.getBoolean(columnIndex));
+			break;
+		case BYTE:
+			builder.setByte(row, resultSet.getByte(columnIndex));
+			break;
+		case SHORT:
+			builder.setShort(row, resultSet.getShort(columnIndex));
+			break;
+		case INT:
+			builder.setInt(row, resultSet.getInt(columnIndex));
+			break;
+		case LONG:
+			builder.setLong(row, resultSet.getLong(columnIndex));
+			break;
+		case FLOAT:
+			builder.setFloat(row, resultSet.getFloat(columnIndex));
+			break;
+		case DOUBLE:
+			builder.setDouble(row, resultSet.getDouble(columnIndex));
+			break;
+		default:
+			builder.setObject(row, readObject(resultSet, columnIndex, valueType));
+			return;
+		}
+		if(resultSet.wasNull()) {
+			builder.setNull(row);
+		}
+	}
+
+	private static Object readObject(ResultSet resultSet, int columnIndex, Class<?> valueType) throws SQLException {
+		if(valueType == String.class) {
+			return resultSet.getString(columnIndex);
+		}
+		if(valueType == BigDecimal.class) {
+			return resultSet.getBigDecimal(columnIndex);
+		}
+		if(valueType == Timestamp.class) {
+			return resultSet.getTimestamp(columnIndex);
+		}
+		if(valueType == Date.class) {
+			return resultSet.getDate(columnIndex);
+		}
+		if(valueType == Time.class) {
+			return resultSet.getTime(columnIndex);
+		}
+		if(valueType == byte[].class) {
+			return resultSet.getBytes(columnIndex);
+		}
+		if(valueType == Array.class) {
+			return resultSet.getArray(columnIndex);
+		}
+		return resultSet.getObject(columnIndex);
+	}
+
+	/**
+	 * @return The type of the values of an object column: the type of the values of the previous result,
+	 * or the type deduced from the SQL type if the previous result contains only null values
+	 */
+	private static Class<?> valueType(Column previous, int sqlType) {
+		if(previous instanceof Column.DictionaryColumn) {
+			return String.class;
+		}
+		if(previous instanceof Column.ObjectColumn) {
+			for (Object value : ((Column.ObjectColumn) previous).getValues()) {
+				if(value instanceof Array) {
+					return Array.class;
+				}
+				if(value != null) {
+					return value.getClass();
+				}
+			}
+		}
+		switch (sqlType) {
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+		case Types.CLOB:
+		case Types.NCLOB:
+			return String.class;
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			return BigDecimal.class;
+		case Types.TIMESTAMP:
+			return Timestamp.class;
+		case Types.DATE:
+			return Date.class;
+		case Types.TIME:
+			return Time.class;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			return byte[].class;
+		default:
+			return Object.class;
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+package org.jooq.cache.jdbc;
+
+import java.io.Serializable;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fields and the columns meta-data of a query result.<br/>
+ * All the results of a query have the same meta-data: it is read from the driver the first time a result of the query is cached,
+ * it is then kept by the {@link org.jooq.cache.QueryTemplate} and shared by all the results of the query, as long as the driver describes the same column labels and types.<br/>
+ * Each later capture still asks the driver for the column count, and for the label and the type name of each column, see {@link #describes(ResultSetMetaData)};
+ * the names, the precisions and the scales are read again only when the columns have changed.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class CachedMetaData implements Serializable {
+
+	private static final long serialVersionUID = -3529130787426519147L;
+
+	private final Map<String, Integer> fields;
+	private final List<ColumnInfo> columnInfos;
+	// the meta-data returned by the cached result sets, created the first time it is requested
+	private transient volatile CachedResultSetMetaData resultSetMetaData;
+
+	/**
+	 * @param fields the index of each field, starting from 1
+	 * @param columnInfos the columns meta-data
+	 */
+	CachedMetaData(Map<String, Integer> fields, List<ColumnInfo> columnInfos) {
+		this.fields = Collections.unmodifiableMap(fields);
+		this.columnInfos = columnInfos == null ? null : Collections.unmodifiableList(columnInfos);
+	}
+
+	/**
+	 * Read the meta-data of a query result from the driver
+	 */
+	static CachedMetaData read(ResultSetMetaData metaData) throws SQLException {
+		int columnCount = metaData.getColumnCount();
+		List<ColumnInfo> columnInfos = new ArrayList<ColumnInfo>(columnCount);
+		Map<String, Integer> fields = new HashMap<String, Integer>(columnCount);
+		for (int i = 1; i < columnCount + 1; i++ ) {
+			fields.put(metaData.getColumnName(i), i);
+			columnInfos.add(new ColumnInfo(metaData.getPrecision(i), metaData.getScale(i), metaData.getColumnLabel(i), metaData.getColumnTypeName(i)));
+		}
+		return new CachedMetaData(fields, columnInfos);
+	}
+
+	/**
+	 * @return true if the meta-data read from the driver have the same column labels and the same column types
+	 */
+	boolean describes(ResultSetMetaData metaData) throws SQLException {
+		if (columnInfos == null || columnInfos.size() != metaData.getColumnCount()) {
+			return false;
+		}
+		for (int i = 0; i < columnInfos.size(); i++) {
+			ColumnInfo columnInfo = columnInfos.get(i);
+			if (!equal(columnInfo.getLabel(), metaData.getColumnLabel(i + 1)) || !equal(columnInfo.getTypeName(), metaData.getColumnTypeName(i + 1))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of columns, or -1 if the columns meta-data are unknown
+	 */
+	public int getColumnCount() {
+		return columnInfos == null ? -1 : columnInfos.size();
+	}
+
+	Map<String, Integer> getFields() {
+		return fields;
+	}
+
+	List<ColumnInfo> getColumnInfos() {
+		return columnInfos;
+	}
+
+	/**
+	 * @return true if the other meta-data describe the same fields and the same columns
+	 */
+	boolean describesSameColumns(CachedMetaData other) {
+		if (other == this) {
+			return true;
+		}
+		if (!fields.equals(other.fields) || (columnInfos == null) != (other.columnInfos == null)) {
+			return false;
+		}
+		if (columnInfos == null) {
+			return true;
+		}
+		if (columnInfos.size() != other.columnInfos.size()) {
+			return false;
+		}
+		for (int i = 0; i < columnInfos.size(); i++) {
+			ColumnInfo columnInfo = columnInfos.get(i);
+			ColumnInfo otherColumnInfo = other.columnInfos.get(i);
+			if (columnInfo.getPrecision() != otherColumnInfo.getPrecision()
+					|| columnInfo.getScale() != otherColumnInfo.getScale()
+					|| !equal(columnInfo.getLabel(), otherColumnInfo.getLabel())
+					|| !equal(columnInfo.getTypeName(), otherColumnInfo.getTypeName())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The meta-data returned by {@link CachedResultSet#getMetaData()}, the same instance is returned each time
+	 */
+	ResultSetMetaData getResultSetMetaData() {
+		CachedResultSetMetaData current = resultSetMetaData;
+		if (current == null) {
+			current = new CachedResultSetMetaData(columnInfos);
+			resultSetMetaData = current;
+		}
+		return current;
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+}
@@ -0,0 +1,570 @@
+package org.jooq.cache.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * A PreparedStatement that provides a {@link CachedResultSet} without using a database connection:
+ * it is used when the query result is already in the cache before the statement is prepared.<br/>
+ * The parameters and the options set on the statement are ignored.
+ * @author Aurélien Manteaux
+ *
+ */
+class CachedPreparedStatement implements PreparedStatement {
+
+	private final Connection connection;
+	private final CachedData cachedData;
+	private boolean closed;
+
+	CachedPreparedStatement(Connection connection, CachedData cachedData) {
+		this.connection = connection;
+		this.cachedData = cachedData;
+		this.closed = false;
+	}
+
+	// impl
+
+	@Override
+	public boolean execute() throws SQLException {
+		return true;
+	}
+
+	@Override
+	public ResultSet executeQuery(String sql) throws SQLException {
+		return getResultSet();
+	}
+
+	@Override
+	public ResultSet executeQuery() throws SQLException {
+		return getResultSet();
+	}
+
+	@Override
+	public ResultSet getResultSet() throws SQLException {
+		return closed ? null : cachedData.newResultSet();
+	}
+
+	@Override
+	public void close() throws SQLException {
+		closed = true;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return connection;
+	}
+
+	@Override
+	public ResultSetMetaData getMetaData() throws SQLException {
+		return cachedData.newResultSet().getMetaData();
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return closed;
+	}
+
+	// ignored parameters and options
+
+	@Override
+	public void setNull(int parameterIndex, int sqlType) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setMaxFieldSize(int max) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setByte(int parameterIndex, byte x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setShort(int parameterIndex, short x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setInt(int parameterIndex, int x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setMaxRows(int max) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setLong(int parameterIndex, long x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setEscapeProcessing(boolean enable) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setFloat(int parameterIndex, float x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setDouble(int parameterIndex, double x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setQueryTimeout(int seconds) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setBigDecimal(int parameterIndex, BigDecimal x)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void cancel() throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setString(int parameterIndex, String x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setDate(int parameterIndex, Date x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setCursorName(String name) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setTime(int parameterIndex, Time x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setTimestamp(int parameterIndex, Timestamp x)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x, int length)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setUnicodeStream(int parameterIndex, InputStream x, int length)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x, int length)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setFetchDirection(int direction) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void clearParameters() throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, int targetSqlType)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setFetchSize(int rows) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void clearBatch() throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void addBatch() throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader, int length)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setRef(int parameterIndex, Ref x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, Blob x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Clob x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setArray(int parameterIndex, Array x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setDate(int parameterIndex, Date x, Calendar cal)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setTime(int parameterIndex, Time x, Calendar cal)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setNull(int parameterIndex, int sqlType, String typeName)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setURL(int parameterIndex, URL x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setRowId(int parameterIndex, RowId x) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setNString(int parameterIndex, String value)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setNCharacterStream(int parameterIndex, Reader value,
+			long length) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, NClob value) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Reader reader, long length)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, InputStream inputStream, long length)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setPoolable(boolean poolable) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, Reader reader, long length)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setSQLXML(int parameterIndex, SQLXML xmlObject)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, int targetSqlType,
+			int scaleOrLength) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x, long length)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x, long length)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader,
+			long length) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setNCharacterStream(int parameterIndex, Reader value)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Reader reader) throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, InputStream inputStream)
+			throws SQLException {
+		// ignored
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+		// ignored
+	}
+
+	// other methods
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if(iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("Not a wrapper for " + iface);
+	}
+
+	@Override
+	public int executeUpdate(String sql) throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+	@Override
+	public int executeUpdate() throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public int getMaxFieldSize() throws SQLException {
+		return 0;
+	}
+
+	@Override
+	public int getMaxRows() throws SQLException {
+		return 0;
+	}
+
+	@Override
+	public int getQueryTimeout() throws SQLException {
+		return 0;
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		return null;
+	}
+
+	@Override
+	public boolean execute(String sql) throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public int getUpdateCount() throws SQLException {
+		return -1;
+	}
+
+	@Override
+	public boolean getMoreResults() throws SQLException {
+		return false;
+	}
+
+	@Override
+	public int getFetchDirection() throws SQLException {
+		return ResultSet.FETCH_FORWARD;
+	}
+
+	@Override
+	public int getFetchSize() throws SQLException {
+		return 0;
+	}
+
+	@Override
+	public int getResultSetConcurrency() throws SQLException {
+		return ResultSet.CONCUR_READ_ONLY;
+	}
+
+	@Override
+	public int getResultSetType() throws SQLException {
+		return ResultSet.TYPE_FORWARD_ONLY;
+	}
+
+	@Override
+	public void addBatch(String sql) throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public int[] executeBatch() throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public boolean getMoreResults(int current) throws SQLException {
+		return false;
+	}
+
+	@Override
+	public ResultSet getGeneratedKeys() throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public int executeUpdate(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public int executeUpdate(String sql, int[] columnIndexes)
+			throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public int executeUpdate(String sql, String[] columnNames)
+			throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public boolean execute(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public ParameterMetaData getParameterMetaData() throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public boolean execute(String sql, String[] columnNames)
+			throws SQLException {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public int getResultSetHoldability() throws SQLException {
+		return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+	}
+
+	@Override
+	public boolean isPoolable() throws SQLException {
+		return false;
+	}
+
+}
@@ -24,38 +24,56 @@ import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Map;
 
+/**
+ * A ResultSet that reads the values of a {@link CachedData} directly from its columns
+ * 
+ * @author Aurélien Manteaux
+ * 
+ */
 class CachedResultSet implements ResultSet {
 	
 	private final CachedData cachedData;
+	private final Column[] columns;
+	private final int rowCount;
 	private int rowIndex;
-	private Object[] currentRow;
 	
 	private boolean close;
 	private int lastRead;
 	
 	CachedResultSet(CachedData cachedData) {
 		this.cachedData = cachedData;
-		this.rowIndex = 0;
+		this.columns = cachedData.getColumns();
+		this.rowCount = cachedData.getRowCount();
+		this.rowIndex = -1;
 		this.close = false;
 		this.lastRead = 0;
 	}
 	
 	@Override
 	public boolean next() throws SQLException {
-		if(rowIndex >= cachedData.getRows().size()) {
+		if(rowIndex + 1 >= rowCount) {
+			rowIndex = rowCount;
 			return false;
 		}
-		currentRow = cachedData.getRows().get(rowIndex++);
+		rowIndex++;
 		return true;
 	}
 	
-	private Object get(int columnIndex) {
+	private Column column(int columnIndex) {
 		lastRead = columnIndex;
-		return currentRow[columnIndex - 1];
+		return columns[columnIndex - 1];
+	}
+	
+	private Column column(String columnLabel) {
+		return column(cachedData.getFields().get(columnLabel));
+	}
+	
+	private Object get(int columnIndex) {
+		return column(columnIndex).getObject(rowIndex);
 	}
 	
 	private Object get(String columnLabel) {
-		return get(cachedData.getFields().get(columnLabel));
+		return column(columnLabel).getObject(rowIndex);
 	}
 	
 	// impl
@@ -72,7 +90,7 @@ class CachedResultSet implements ResultSet {
 
 	@Override
 	public boolean wasNull() throws SQLException {
-		return get(lastRead) == null;
+		return columns[lastRead - 1].isNull(rowIndex);
 	}
 	
 	@Override
@@ -83,7 +101,7 @@ class CachedResultSet implements ResultSet {
 	
 	@Override
 	public ResultSetMetaData getMetaData() throws SQLException {
-		return new CachedResultSetMetaData(cachedData.getColumnInfos());
+		return cachedData.getMetaData().getResultSetMetaData();
 	}
 	
 	// data
@@ -95,37 +113,37 @@ class CachedResultSet implements ResultSet {
 
 	@Override
 	public boolean getBoolean(int columnIndex) throws SQLException {
-		return (Boolean) get(columnIndex);
+		return column(columnIndex).getBoolean(rowIndex);
 	}
 
 	@Override
 	public byte getByte(int columnIndex) throws SQLException {
-		return (Byte) get(columnIndex);
+		return column(columnIndex).getByte(rowIndex);
 	}
 
 	@Override
 	public short getShort(int columnIndex) throws SQLException {
-		return (Short) get(columnIndex);
+		return column(columnIndex).getShort(rowIndex);
 	}
 
 	@Override
 	public int getInt(int columnIndex) throws SQLException {
-		return (Integer) get(columnIndex);
+		return column(columnIndex).getInt(rowIndex);
 	}
 
 	@Override
 	public long getLong(int columnIndex) throws SQLException {
-		return (Long) get(columnIndex);
+		return column(columnIndex).getLong(rowIndex);
 	}
 
 	@Override
 	public float getFloat(int columnIndex) throws SQLException {
-		return (Float) get(columnIndex);
+		return column(columnIndex).getFloat(rowIndex);
 	}
 
 	@Override
 	public double getDouble(int columnIndex) throws SQLException {
-		return (Double) get(columnIndex);
+		return column(columnIndex).getDouble(rowIndex);
 	}
 
 	@Override
@@ -177,37 +195,37 @@ class CachedResultSet implements ResultSet {
 
 	@Override
 	public boolean getBoolean(String columnLabel) throws SQLException {
-		return (Boolean) get(columnLabel);
+		return column(columnLabel).getBoolean(rowIndex);
 	}
 
 	@Override
 	public byte getByte(String columnLabel) throws SQLException {
-		return (Byte) get(columnLabel);
+		return column(columnLabel).getByte(rowIndex);
 	}
 
 	@Override
 	public short getShort(String columnLabel) throws SQLException {
-		return (Short) get(columnLabel);
+		return column(columnLabel).getShort(rowIndex);
 	}
 
 	@Override
 	public int getInt(String columnLabel) throws SQLException {
-		return (Integer) get(columnLabel);
+		return column(columnLabel).getInt(rowIndex);
 	}
 
 	@Override
 	public long getLong(String columnLabel) throws SQLException {
-		return (Long) get(columnLabel);
+		return column(columnLabel).getLong(rowIndex);
 	}
 
 	@Override
 	public float getFloat(String columnLabel) throws SQLException {
-		return (Float) get(columnLabel);
+		return column(columnLabel).getFloat(rowIndex);
 	}
 
 	@Override
 	public double getDouble(String columnLabel) throws SQLException {
-		return (Double) get(columnLabel);
+		return column(columnLabel).getDouble(rowIndex);
 	}
 
 	@Override
@@ -284,12 +302,12 @@ class CachedResultSet implements ResultSet {
 	
 	@Override
 	public NClob getNClob(int columnIndex) throws SQLException {
-		return (NClob) get(columnIndex);
+		return LobUtils.toNClob((String) get(columnIndex));
 	}
 
 	@Override
 	public NClob getNClob(String columnLabel) throws SQLException {
-		return (NClob) get(columnLabel);
+		return LobUtils.toNClob((String) get(columnLabel));
 	}
 
 	@Override
@@ -329,12 +347,12 @@ class CachedResultSet implements ResultSet {
 
 	@Override
 	public Blob getBlob(int columnIndex) throws SQLException {
-		return (Blob) get(columnIndex);
+		return LobUtils.toBlob((byte[]) get(columnIndex));
 	}
 
 	@Override
 	public Clob getClob(int columnIndex) throws SQLException {
-		return (Clob) get(columnIndex);
+		return LobUtils.toClob((String) get(columnIndex));
 	}
 
 	@Override
@@ -349,12 +367,12 @@ class CachedResultSet implements ResultSet {
 
 	@Override
 	public Blob getBlob(String columnLabel) throws SQLException {
-		return (Blob) get(columnLabel);
+		return LobUtils.toBlob((byte[]) get(columnLabel));
 	}
 
 	@Override
 	public Clob getClob(String columnLabel) throws SQLException {
-		return (Clob) get(columnLabel);
+		return LobUtils.toClob((String) get(columnLabel));
 	}
 
 	@Override
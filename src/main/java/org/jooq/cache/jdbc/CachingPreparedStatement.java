@@ -23,8 +23,8 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.Calendar;
 
+import org.jooq.cache.CacheLoad;
 import org.jooq.impl.CacheQueryInformation;
-import org.jooq.tools.JooqLogger;
 
 /**
  * A PreparedStatement that will either provide a CachingResultSet or a CachedResultSet 
@@ -33,52 +33,85 @@ import org.jooq.tools.JooqLogger;
  */
 class CachingPreparedStatement implements PreparedStatement {
 
-	private static final JooqLogger log   = JooqLogger.getLogger(CachingPreparedStatement.class);
-	
 	private final PreparedStatement delegate;
 	private final CacheQueryInformation queryInformation;
-	private CachedData cachedData;
+	private final CacheLoad load;
+	private long tablesVersion;
+	private boolean autoCommitChecked;
+	private boolean caching;
 
-	CachingPreparedStatement(PreparedStatement delegate, CacheQueryInformation queryInformation) throws SQLException {
+	/**
+	 * @param delegate the statement prepared by the database connection
+	 * @param queryInformation the query
+	 * @param load the load of the query result, owned by the current thread or timed out, see {@link CachedConnection}; null if the query result is not loaded
+	 */
+	CachingPreparedStatement(PreparedStatement delegate, CacheQueryInformation queryInformation, CacheLoad load) throws SQLException {
 		this.delegate = delegate;
 		this.queryInformation = queryInformation;
-		this.cachedData = null;
+		this.load = load;
+		this.tablesVersion = 0;
+		this.autoCommitChecked = false;
+		this.caching = false;
 	}
 	
 	/**
-	 * Fetch and store in the cachedPrepareStatement the cached data corresponding to the query that is being executed
-	 * @return The cached data corresponding to the query that is being executed if it exists, else null
+	 * The cache has already been looked up and the load has already been waited for before the connection has been acquired,
+	 * see {@link org.jooq.impl.CachedConnectionProvider}
+	 * @return true if the query result is cached while it is read
 	 * @throws SQLException
 	 */
-	private CachedData cachedData() throws SQLException {
-		// [#8] Do not cache a query result when a connection is set to autocommit = false
-		if(getConnection().getAutoCommit()) {
-			cachedData = queryInformation.getCacheManager().getCachedDataIfPresent(queryInformation.getQuery(), queryInformation.getQueryParameters());
-			
-			if(cachedData != null && log.isDebugEnabled()) {
-				log.debug("Cache is used for this query");
+	private boolean caching() throws SQLException {
+		if(!autoCommitChecked) {
+			autoCommitChecked = true;
+			// [#8] Do not cache a query result when a connection is set to autocommit = false
+			caching = getConnection().getAutoCommit();
+			if(!caching) {
+				abortLoad();
 			}
 		}
-		
-		return cachedData;
+		return caching;
 	}
 
 	@Override
 	public boolean execute() throws SQLException {
-		return cachedData() != null ? true : delegate.execute();
+		caching();
+		// captured before the execution so a table invalidated during the read prevents the result from being cached
+		tablesVersion = queryInformation.getCacheManager().tablesVersion(queryInformation.getReferencedTables());
+		try {
+			long start = System.nanoTime();
+			boolean result = delegate.execute();
+			if(caching && !queryInformation.getCacheManager().admit(queryInformation.getQueryTemplate(), queryInformation.getQueryParameters(), System.nanoTime() - start)) {
+				// the query result is not worth caching: it is streamed and the waiting threads execute the query themselves
+				caching = false;
+				abortLoad();
+			}
+			return result;
+		} catch (SQLException e) {
+			abortLoad();
+			throw e;
+		} catch (RuntimeException e) {
+			abortLoad();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Release the threads waiting for the query result if it will not be read
+	 */
+	private void abortLoad() {
+		if(load != null) {
+			load.abort();
+		}
 	}
 
 	/**
-	 * This method should not be called, but if it is the case :<br />
-	 * - maybe the SQL query result in already cached : great the cached result is returned,
-	 * - the SQL query result is not cached : it is weird that a custom SQL query is run on a CachingPreparedStatement<br />
+	 * This method should not be called, but if it is the case :
+	 * it is weird that a custom SQL query is run on a CachingPreparedStatement<br />
 	 * 	 => the query is executed and its result is not cached 
 	 */
 	@Override
 	public ResultSet executeQuery(String sql) throws SQLException {
-		if(cachedData() != null) {
-			return getResultSet();
-		}
+		abortLoad();
 		return delegate.executeQuery(sql);
 	}
 
@@ -90,7 +123,7 @@ class CachingPreparedStatement implements PreparedStatement {
 	
 	@Override
 	public ResultSet getResultSet() throws SQLException {
-		return cachedData != null ? cachedData.newResultSet() : new CachingResultSet(delegate.getResultSet(), queryInformation);
+		return caching ? new CachingResultSet(delegate.getResultSet(), queryInformation, load, tablesVersion) : delegate.getResultSet();
 	}
 	
 	// delegate calls
@@ -117,6 +150,8 @@ class CachingPreparedStatement implements PreparedStatement {
 
 	@Override
 	public void close() throws SQLException {
+		// the load has already been released if the result set has been closed
+		abortLoad();
 		delegate.close();
 	}
 
@@ -22,18 +22,19 @@ import java.sql.SQLXML;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+import org.jooq.cache.CacheLoad;
+import org.jooq.cache.CaptureLimits;
+import org.jooq.cache.QueryTemplate;
 import org.jooq.impl.CacheQueryInformation;
 
 /**
  * A ResultSet that caches all the data the pass trough.<br/>
- * The cached data are written to the query cache once the ResultSet is closed.
+ * The cached data are written to the query cache once the ResultSet is closed.<br/>
+ * If the data read exceed the capture limits of the query, the data are not cached and the remaining rows are not copied, see {@link CaptureLimits}.
  * 
  * @author Aurélien Manteaux
  * 
@@ -42,47 +43,136 @@ class CachingResultSet implements ResultSet {
 
 	private final ResultSet delegate;
 	private final CacheQueryInformation queryInformation;
+	private final CacheLoad load;
+	private final long tablesVersion;
+	private final CaptureLimits captureLimits;
 
-	private final List<Object[]> rows;
+	private final ColumnBuilder[] columns;
+	private final CachedMetaData metaData;
 	private final Map<String, Integer> fields;
-	private final List<ColumnInfo> colsInfo;
-	private Object[] row;
-	
-	private final int cols;
+	private int rowCount;
+	private int row;
+	private int lastRead;
+	// false once the capture limits have been exceeded: the rows are not copied anymore
+	private boolean capturing;
 
-	CachingResultSet(ResultSet delegate, CacheQueryInformation queryInformation) throws SQLException {
+	/**
+	 * @param load the load owned by the statement, it is released with the cached data once the ResultSet is closed; may be null
+	 * @param tablesVersion the version of the tables referenced by the query before it has been executed
+	 */
+	CachingResultSet(ResultSet delegate, CacheQueryInformation queryInformation, CacheLoad load, long tablesVersion) throws SQLException {
 		this.delegate = delegate;
 		this.queryInformation = queryInformation;
+		this.load = load;
+		this.tablesVersion = tablesVersion;
+		this.captureLimits = queryInformation.getCacheManager().captureLimits(queryInformation.getQueryTemplate());
 
-		// fetch the columns meta-data
-		ResultSetMetaData metaData = delegate.getMetaData();
+		// the columns meta-data are read from the driver only the first time a result of the query is cached
+		this.metaData = metaData(delegate, queryInformation.getQueryTemplate());
+		this.fields = metaData.getFields();
 		int columnCount = metaData.getColumnCount();
-		List<ColumnInfo> columnInfos = new ArrayList<ColumnInfo>(columnCount);
-		Map<String, Integer> fields = new HashMap<String, Integer>(columnCount);
-		for (int i = 1; i < columnCount + 1; i++ ) {
-			fields.put(metaData.getColumnName(i), i);
-			columnInfos.add(new ColumnInfo(metaData.getPrecision(i), metaData.getScale(i), metaData.getColumnLabel(i), metaData.getColumnTypeName(i)));
-		}
-		this.fields = Collections.unmodifiableMap(fields);
-		this.colsInfo = Collections.unmodifiableList(columnInfos);
-		this.cols = fields.size();
 		
-		this.rows = new ArrayList<Object[]>();
-		this.row = null;
+		this.columns = new ColumnBuilder[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			columns[i] = new ColumnBuilder();
+		}
+		this.rowCount = 0;
+		this.row = -1;
+		this.lastRead = 0;
+		this.capturing = true;
 	}
 	
 	// utils
 	
+	/**
+	 * The meta-data of the query template are reused only if the driver still describes the same column labels and types:
+	 * the columns of a query may have changed, for example after a schema update.
+	 * The driver meta-data are still read on each capture: the column count, and the label and the type name of each column, are compared.
+	 * @return The meta-data shared by the results of the query
+	 */
+	private static CachedMetaData metaData(ResultSet delegate, QueryTemplate queryTemplate) throws SQLException {
+		ResultSetMetaData resultSetMetaData = delegate.getMetaData();
+		CachedMetaData metaData = queryTemplate.getMetaData();
+		if(metaData == null || !metaData.describes(resultSetMetaData)) {
+			metaData = CachedMetaData.read(resultSetMetaData);
+			queryTemplate.setMetaData(metaData);
+		}
+		return metaData;
+	}
+	
+	private ColumnBuilder column(int columnIndex) {
+		lastRead = columnIndex;
+		return columns[columnIndex - 1];
+	}
+	
+	private int columnIndex(String columnLabel) {
+		return fields.get(columnLabel);
+	}
+	
 	private<T> T cache(T value, int columnIndex) {
-		row[columnIndex -1] = value;
+		if(capturing) {
+			column(columnIndex).setObject(row, value);
+		}
 		return value;
 	}
 	
 	private<T> T cache(T value, String columnLabel) {
-		return cache(value, fields.get(columnLabel));
+		return cache(value, columnIndex(columnLabel));
+	}
+	
+	private boolean cacheBoolean(boolean value, int columnIndex) {
+		if(capturing) {
+			column(columnIndex).setBoolean(row, value);
+		}
+		return value;
+	}
+	
+	private byte cacheByte(byte value, int columnIndex) {
+		if(capturing) {
+			column(columnIndex).setByte(row, value);
+		}
+		return value;
+	}
+	
+	private short cacheShort(short value, int columnIndex) {
+		if(capturing) {
+			column(columnIndex).setShort(row, value);
+		}
+		return value;
+	}
+	
+	private int cacheInt(int value, int columnIndex) {
+		if(capturing) {
+			column(columnIndex).setInt(row, value);
+		}
+		return value;
+	}
+	
+	private long cacheLong(long value, int columnIndex) {
+		if(capturing) {
+			column(columnIndex).setLong(row, value);
+		}
+		return value;
+	}
+	
+	private float cacheFloat(float value, int columnIndex) {
+		if(capturing) {
+			column(columnIndex).setFloat(row, value);
+		}
+		return value;
+	}
+	
+	private double cacheDouble(double value, int columnIndex) {
+		if(capturing) {
+			column(columnIndex).setDouble(row, value);
+		}
+		return value;
 	}
 	
 	private InputStream cacheAndStream(InputStream toCache, int columnIndex) throws SQLException {
+		if(!capturing) {
+			return toCache;
+		}
 		try {
 			return new ByteArrayInputStream(cache(IOUtils.toByteArray(toCache), columnIndex));
 		} catch (IOException e) {
@@ -91,10 +181,13 @@ class CachingResultSet implements ResultSet {
 	}
 	
 	private InputStream cacheAndStream(InputStream toCache, String columnLabel) throws SQLException {
-		return cacheAndStream(toCache, fields.get(columnLabel));
+		return cacheAndStream(toCache, columnIndex(columnLabel));
 	}
 	
 	private Reader cacheAndStream(Reader toCache, int columnIndex) throws SQLException {
+		if(!capturing) {
+			return toCache;
+		}
 		try {
 			return new InputStreamReader(new ByteArrayInputStream(cache(IOUtils.toByteArray(toCache), columnIndex)));
 		} catch (IOException e) {
@@ -103,45 +196,125 @@ class CachingResultSet implements ResultSet {
 	}
 	
 	private Reader cacheAndStream(Reader toCache, String columnLabel) throws SQLException {
-		return cacheAndStream(toCache, fields.get(columnLabel));
+		return cacheAndStream(toCache, columnIndex(columnLabel));
 	}
-
+	
+	private Blob cacheBlob(Blob toCache, int columnIndex) throws SQLException {
+		if(!capturing || toCache == null) {
+			return cache(toCache, columnIndex);
+		}
+		return LobUtils.toBlob(cache(LobUtils.toBytes(toCache), columnIndex));
+	}
+	
+	private Blob cacheBlob(Blob toCache, String columnLabel) throws SQLException {
+		return cacheBlob(toCache, columnIndex(columnLabel));
+	}
+	
+	private Clob cacheClob(Clob toCache, int columnIndex) throws SQLException {
+		if(!capturing || toCache == null) {
+			return cache(toCache, columnIndex);
+		}
+		return LobUtils.toClob(cache(LobUtils.toString(toCache), columnIndex));
+	}
+	
+	private Clob cacheClob(Clob toCache, String columnLabel) throws SQLException {
+		return cacheClob(toCache, columnIndex(columnLabel));
+	}
+	
+	private NClob cacheNClob(NClob toCache, int columnIndex) throws SQLException {
+		if(!capturing || toCache == null) {
+			return cache(toCache, columnIndex);
+		}
+		return LobUtils.toNClob(cache(LobUtils.toString(toCache), columnIndex));
+	}
+	
+	private NClob cacheNClob(NClob toCache, String columnLabel) throws SQLException {
+		return cacheNClob(toCache, columnIndex(columnLabel));
+	}
+	
+	/**
+	 * The size is checked every 64 rows, and when the ResultSet is closed
+	 * @return true if the rows read exceed the capture limits
+	 */
+	private boolean exceedsLimits(boolean checkSize) {
+		if(rowCount > captureLimits.getMaxRows()) {
+			return true;
+		}
+		if(!checkSize || !captureLimits.isSizeLimited()) {
+			return false;
+		}
+		long size = 0;
+		for (ColumnBuilder column : columns) {
+			size += column.estimateSize();
+		}
+		return size > captureLimits.getMaxBytes();
+	}
+	
+	/**
+	 * Stop to copy the rows, the rows already copied are released
+	 */
+	private void abortCapture() {
+		capturing = false;
+		Arrays.fill(columns, null);
+		queryInformation.getCacheManager().captureAborted(queryInformation.getQueryTemplate());
+		if(load != null) {
+			// the waiting threads execute the query themselves
+			load.abort();
+		}
+	}
+	
 	/**
-	 * If the current row is not null, add it to the result rows 
+	 * @return The data read, stored by column
 	 */
-	private void addRowIfNecessary() {
-		if(row != null) {
-			rows.add(row);
+	private CachedData cachedData() {
+		Column[] cachedColumns = new Column[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			cachedColumns[i] = columns[i].build(rowCount);
 		}
+		return new CachedData(rowCount, cachedColumns, metaData);
 	}
 	
 	// impl
 	
 	@Override
 	public boolean next() throws SQLException {
-		addRowIfNecessary();
 		if(!delegate.next()) {
-			row = null;
 			return false;
 		}
-		row = new Object[cols];
+		row = rowCount++;
+		if(capturing && exceedsLimits((rowCount & 63) == 0)) {
+			abortCapture();
+		}
 		return true;
 	}
 
 	@Override
 	public void close() throws SQLException {
 		delegate.close();
-		
-		addRowIfNecessary();
 
-		queryInformation.getCacheManager().cacheQueryResult(queryInformation.getReferencedTables(), queryInformation.getQuery(), queryInformation.getQueryParameters(), new CachedData(Collections.unmodifiableList(rows), fields, colsInfo));
+		if(capturing && exceedsLimits(true)) {
+			abortCapture();
+		}
+		if(!capturing) {
+			queryInformation.setCachedData(null);
+			return;
+		}
+		CachedData cachedData = cachedData();
+		if(!queryInformation.getCacheManager().cacheQueryResult(queryInformation.getReferencedTables(), queryInformation.getQueryTemplate(), queryInformation.getQueryParameters(), cachedData, tablesVersion, queryInformation.getPrimaryKeyColumn())) {
+			// a referenced table has been updated while the query was read: the result may be stale, so it is not shared
+			cachedData = null;
+		}
+		queryInformation.setCachedData(cachedData);
+		if(load != null) {
+			load.release(cachedData);
+		}
 	}
 
 	@Override
 	public boolean wasNull() throws SQLException {
 		boolean wasNull = delegate.wasNull();
-		if(wasNull) {
-			rows.set(rows.size()-1, null);
+		if(wasNull && lastRead > 0 && capturing) {
+			columns[lastRead - 1].setNull(row);
 		}
 		
 		return wasNull;
@@ -156,37 +329,37 @@ class CachingResultSet implements ResultSet {
 
 	@Override
 	public boolean getBoolean(int columnIndex) throws SQLException {
-		return cache(delegate.getBoolean(columnIndex), columnIndex);
+		return cacheBoolean(delegate.getBoolean(columnIndex), columnIndex);
 	}
 
 	@Override
 	public byte getByte(int columnIndex) throws SQLException {
-		return cache(delegate.getByte(columnIndex), columnIndex);
+		return cacheByte(delegate.getByte(columnIndex), columnIndex);
 	}
 
 	@Override
 	public short getShort(int columnIndex) throws SQLException {
-		return cache(delegate.getShort(columnIndex), columnIndex);
+		return cacheShort(delegate.getShort(columnIndex), columnIndex);
 	}
 
 	@Override
 	public int getInt(int columnIndex) throws SQLException {
-		return cache(delegate.getInt(columnIndex), columnIndex);
+		return cacheInt(delegate.getInt(columnIndex), columnIndex);
 	}
 
 	@Override
 	public long getLong(int columnIndex) throws SQLException {
-		return cache(delegate.getLong(columnIndex), columnIndex);
+		return cacheLong(delegate.getLong(columnIndex), columnIndex);
 	}
 
 	@Override
 	public float getFloat(int columnIndex) throws SQLException {
-		return cache(delegate.getFloat(columnIndex), columnIndex);
+		return cacheFloat(delegate.getFloat(columnIndex), columnIndex);
 	}
 
 	@Override
 	public double getDouble(int columnIndex) throws SQLException {
-		return cache(delegate.getDouble(columnIndex), columnIndex);
+		return cacheDouble(delegate.getDouble(columnIndex), columnIndex);
 	}
 
 	@Override
@@ -239,37 +412,37 @@ class CachingResultSet implements ResultSet {
 
 	@Override
 	public boolean getBoolean(String columnLabel) throws SQLException {
-		return cache(delegate.getBoolean(columnLabel), columnLabel);
+		return cacheBoolean(delegate.getBoolean(columnLabel), columnIndex(columnLabel));
 	}
 
 	@Override
 	public byte getByte(String columnLabel) throws SQLException {
-		return cache(delegate.getByte(columnLabel), columnLabel);
+		return cacheByte(delegate.getByte(columnLabel), columnIndex(columnLabel));
 	}
 
 	@Override
 	public short getShort(String columnLabel) throws SQLException {
-		return cache(delegate.getShort(columnLabel), columnLabel);
+		return cacheShort(delegate.getShort(columnLabel), columnIndex(columnLabel));
 	}
 
 	@Override
 	public int getInt(String columnLabel) throws SQLException {
-		return cache(delegate.getInt(columnLabel), columnLabel);
+		return cacheInt(delegate.getInt(columnLabel), columnIndex(columnLabel));
 	}
 
 	@Override
 	public long getLong(String columnLabel) throws SQLException {
-		return cache(delegate.getLong(columnLabel), columnLabel);
+		return cacheLong(delegate.getLong(columnLabel), columnIndex(columnLabel));
 	}
 
 	@Override
 	public float getFloat(String columnLabel) throws SQLException {
-		return cache(delegate.getFloat(columnLabel), columnLabel);
+		return cacheFloat(delegate.getFloat(columnLabel), columnIndex(columnLabel));
 	}
 
 	@Override
 	public double getDouble(String columnLabel) throws SQLException {
-		return cache(delegate.getDouble(columnLabel), columnLabel);
+		return cacheDouble(delegate.getDouble(columnLabel), columnIndex(columnLabel));
 	}
 
 	@Override
@@ -346,12 +519,12 @@ class CachingResultSet implements ResultSet {
 	
 	@Override
 	public NClob getNClob(int columnIndex) throws SQLException {
-		return cache(delegate.getNClob(columnIndex), columnIndex);
+		return cacheNClob(delegate.getNClob(columnIndex), columnIndex);
 	}
 
 	@Override
 	public NClob getNClob(String columnLabel) throws SQLException {
-		return cache(delegate.getNClob(columnLabel), columnLabel);
+		return cacheNClob(delegate.getNClob(columnLabel), columnLabel);
 	}
 
 	@Override
@@ -391,12 +564,12 @@ class CachingResultSet implements ResultSet {
 
 	@Override
 	public Blob getBlob(int columnIndex) throws SQLException {
-		return cache(delegate.getBlob(columnIndex), columnIndex);
+		return cacheBlob(delegate.getBlob(columnIndex), columnIndex);
 	}
 
 	@Override
 	public Clob getClob(int columnIndex) throws SQLException {
-		return cache(delegate.getClob(columnIndex), columnIndex);
+		return cacheClob(delegate.getClob(columnIndex), columnIndex);
 	}
 
 	@Override
@@ -412,12 +585,12 @@ class CachingResultSet implements ResultSet {
 
 	@Override
 	public Blob getBlob(String columnLabel) throws SQLException {
-		return cache(delegate.getBlob(columnLabel), columnLabel);
+		return cacheBlob(delegate.getBlob(columnLabel), columnLabel);
 	}
 
 	@Override
 	public Clob getClob(String columnLabel) throws SQLException {
-		return cache(delegate.getClob(columnLabel), columnLabel);
+		return cacheClob(delegate.getClob(columnLabel), columnLabel);
 	}
 
 	@Override
@@ -0,0 +1,526 @@
+package org.jooq.cache.jdbc;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The values of a column of a cached query result.<br/>
+ * Numeric and boolean values are stored in primitive arrays, the null values are tracked with a bitmap.
+ * @author Aurélien Manteaux
+ *
+ */
+abstract class Column implements Serializable {
+
+	private static final long serialVersionUID = -4006640519893778407L;
+
+	private final ColumnType type;
+	/**
+	 * The bitmap of the null values, null if the column does not contain any null value
+	 */
+	private final long[] nulls;
+
+	Column(ColumnType type, long[] nulls) {
+		this.type = type;
+		this.nulls = nulls;
+	}
+
+	/**
+	 * Create columns from rows of values
+	 * @param rows the rows, all the rows must have the same length
+	 * @param columnCount the number of columns
+	 * @return The columns
+	 */
+	static Column[] of(List<Object[]> rows, int columnCount) {
+		Column[] columns = new Column[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			Object[] values = new Object[rows.size()];
+			for (int row = 0; row < values.length; row++) {
+				values[row] = rows.get(row)[i];
+			}
+			columns[i] = new ObjectColumn(values);
+		}
+		return columns;
+	}
+
+	ColumnType getType() {
+		return type;
+	}
+
+	long[] getNulls() {
+		return nulls;
+	}
+
+	boolean isNull(int row) {
+		return nulls != null && (nulls[row >>> 6] & (1L << row)) != 0;
+	}
+
+	// content
+
+	/**
+	 * @return A hash of the type, the null values and the values of the column
+	 */
+	int contentHash() {
+		return 31 * (31 * type.ordinal() + Arrays.hashCode(nulls)) + valuesHash();
+	}
+
+	/**
+	 * @return true if the other column is stored the same way and contains the same values
+	 */
+	boolean hasSameContent(Column other) {
+		return getClass() == other.getClass()
+				&& type == other.type
+				&& Arrays.equals(nulls, other.nulls)
+				&& hasSameValues(other);
+	}
+
+	abstract int valuesHash();
+
+	/**
+	 * @param other a column of the same class
+	 */
+	abstract boolean hasSameValues(Column other);
+
+	// size
+
+	/**
+	 * @return An estimation of the heap size of the column in bytes
+	 */
+	long estimateSize() {
+		return OBJECT_HEADER + REFERENCE * 2 + (nulls == null ? 0 : ARRAY_HEADER + 8L * nulls.length) + estimateValuesSize();
+	}
+
+	/**
+	 * @return An estimation of the heap size of the values array in bytes, including the values referenced
+	 */
+	abstract long estimateValuesSize();
+
+	/**
+	 * @param value a value read from a {@link java.sql.ResultSet}
+	 * @return An estimation of the heap size of the value in bytes, excluding the reference to the value
+	 */
+	static long estimateSize(Object value) {
+		if (value == null || value instanceof Boolean) {
+			// Boolean instances are shared
+			return 0;
+		}
+		if (value instanceof String) {
+			return OBJECT_HEADER + 16 + ARRAY_HEADER + 2L * ((String) value).length();
+		}
+		if (value instanceof byte[]) {
+			return ARRAY_HEADER + ((byte[]) value).length;
+		}
+		if (value instanceof BigDecimal) {
+			// a BigDecimal with more than 18 digits references a BigInteger
+			int precision = ((BigDecimal) value).precision();
+			return OBJECT_HEADER + 24 + (precision > 18 ? OBJECT_HEADER + 24 + ARRAY_HEADER + precision / 2 : 0);
+		}
+		if (value instanceof java.util.Date) {
+			// Date, Time and Timestamp
+			return OBJECT_HEADER + 16;
+		}
+		// boxed numbers and other small objects
+		return OBJECT_HEADER + 8;
+	}
+
+	private static final int OBJECT_HEADER = 16;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 8;
+
+	// values
+
+	/**
+	 * @return The boxed value, or null if the value is null
+	 */
+	abstract Object getObject(int row);
+
+	abstract long getLong(int row);
+
+	abstract double getDouble(int row);
+
+	boolean getBoolean(int row) {
+		return getLong(row) != 0;
+	}
+
+	byte getByte(int row) {
+		return (byte) getLong(row);
+	}
+
+	short getShort(int row) {
+		return (short) getLong(row);
+	}
+
+	int getInt(int row) {
+		return (int) getLong(row);
+	}
+
+	float getFloat(int row) {
+		return (float) getDouble(row);
+	}
+
+	// implementations
+
+	/**
+	 * Store boolean and byte values
+	 */
+	static final class ByteColumn extends Column {
+
+		private static final long serialVersionUID = 4307384016722709582L;
+
+		private final byte[] values;
+
+		ByteColumn(ColumnType type, byte[] values, long[] nulls) {
+			super(type, nulls);
+			this.values = values;
+		}
+
+		byte[] getValues() {
+			return values;
+		}
+
+		@Override
+		int valuesHash() {
+			return Arrays.hashCode(values);
+		}
+
+		@Override
+		boolean hasSameValues(Column other) {
+			return Arrays.equals(values, ((ByteColumn) other).values);
+		}
+
+		@Override
+		long estimateValuesSize() {
+			return ARRAY_HEADER + values.length;
+		}
+
+		@Override
+		Object getObject(int row) {
+			if (isNull(row)) {
+				return null;
+			}
+			return getType() == ColumnType.BOOLEAN ? Boolean.valueOf(values[row] != 0) : Byte.valueOf(values[row]);
+		}
+
+		@Override
+		boolean getBoolean(int row) {
+			return values[row] != 0;
+		}
+
+		@Override
+		byte getByte(int row) {
+			return values[row];
+		}
+
+		@Override
+		long getLong(int row) {
+			return values[row];
+		}
+
+		@Override
+		double getDouble(int row) {
+			return values[row];
+		}
+
+	}
+
+	/**
+	 * Store short and int values
+	 */
+	static final class IntColumn extends Column {
+
+		private static final long serialVersionUID = -1887216281617467906L;
+
+		private final int[] values;
+
+		IntColumn(ColumnType type, int[] values, long[] nulls) {
+			super(type, nulls);
+			this.values = values;
+		}
+
+		int[] getValues() {
+			return values;
+		}
+
+		@Override
+		int valuesHash() {
+			return Arrays.hashCode(values);
+		}
+
+		@Override
+		boolean hasSameValues(Column other) {
+			return Arrays.equals(values, ((IntColumn) other).values);
+		}
+
+		@Override
+		long estimateValuesSize() {
+			return ARRAY_HEADER + 4L * values.length;
+		}
+
+		@Override
+		Object getObject(int row) {
+			if (isNull(row)) {
+				return null;
+			}
+			return getType() == ColumnType.SHORT ? Short.valueOf((short) values[row]) : Integer.valueOf(values[row]);
+		}
+
+		@Override
+		int getInt(int row) {
+			return values[row];
+		}
+
+		@Override
+		long getLong(int row) {
+			return values[row];
+		}
+
+		@Override
+		double getDouble(int row) {
+			return values[row];
+		}
+
+	}
+
+	/**
+	 * Store long values
+	 */
+	static final class LongColumn extends Column {
+
+		private static final long serialVersionUID = 8167009441622165767L;
+
+		private final long[] values;
+
+		LongColumn(long[] values, long[] nulls) {
+			super(ColumnType.LONG, nulls);
+			this.values = values;
+		}
+
+		long[] getValues() {
+			return values;
+		}
+
+		@Override
+		int valuesHash() {
+			return Arrays.hashCode(values);
+		}
+
+		@Override
+		boolean hasSameValues(Column other) {
+			return Arrays.equals(values, ((LongColumn) other).values);
+		}
+
+		@Override
+		long estimateValuesSize() {
+			return ARRAY_HEADER + 8L * values.length;
+		}
+
+		@Override
+		Object getObject(int row) {
+			return isNull(row) ? null : Long.valueOf(values[row]);
+		}
+
+		@Override
+		long getLong(int row) {
+			return values[row];
+		}
+
+		@Override
+		double getDouble(int row) {
+			return values[row];
+		}
+
+	}
+
+	/**
+	 * Store float and double values
+	 */
+	static final class DoubleColumn extends Column {
+
+		private static final long serialVersionUID = 1586468066617565787L;
+
+		private final double[] values;
+
+		DoubleColumn(ColumnType type, double[] values, long[] nulls) {
+			super(type, nulls);
+			this.values = values;
+		}
+
+		double[] getValues() {
+			return values;
+		}
+
+		@Override
+		int valuesHash() {
+			return Arrays.hashCode(values);
+		}
+
+		@Override
+		boolean hasSameValues(Column other) {
+			return Arrays.equals(values, ((DoubleColumn) other).values);
+		}
+
+		@Override
+		long estimateValuesSize() {
+			return ARRAY_HEADER + 8L * values.length;
+		}
+
+		@Override
+		Object getObject(int row) {
+			if (isNull(row)) {
+				return null;
+			}
+			return getType() == ColumnType.FLOAT ? Float.valueOf((float) values[row]) : Double.valueOf(values[row]);
+		}
+
+		@Override
+		long getLong(int row) {
+			return (long) values[row];
+		}
+
+		@Override
+		double getDouble(int row) {
+			return values[row];
+		}
+
+	}
+
+	/**
+	 * Store any other values
+	 */
+	static final class ObjectColumn extends Column {
+
+		private static final long serialVersionUID = 2796749426102282990L;
+
+		private final Object[] values;
+
+		ObjectColumn(Object[] values) {
+			super(ColumnType.OBJECT, null);
+			this.values = values;
+		}
+
+		Object[] getValues() {
+			return values;
+		}
+
+		@Override
+		int valuesHash() {
+			return Arrays.deepHashCode(values);
+		}
+
+		@Override
+		boolean hasSameValues(Column other) {
+			return Arrays.deepEquals(values, ((ObjectColumn) other).values);
+		}
+
+		@Override
+		long estimateValuesSize() {
+			long size = ARRAY_HEADER + (long) REFERENCE * values.length;
+			for (Object value : values) {
+				size += estimateSize(value);
+			}
+			return size;
+		}
+
+		@Override
+		boolean isNull(int row) {
+			return values[row] == null;
+		}
+
+		@Override
+		Object getObject(int row) {
+			return values[row];
+		}
+
+		@Override
+		boolean getBoolean(int row) {
+			Object value = values[row];
+			if (value instanceof Boolean) {
+				return (Boolean) value;
+			}
+			return value != null && ((Number) value).longValue() != 0;
+		}
+
+		@Override
+		long getLong(int row) {
+			Object value = values[row];
+			return value == null ? 0 : ((Number) value).longValue();
+		}
+
+		@Override
+		double getDouble(int row) {
+			Object value = values[row];
+			return value == null ? 0 : ((Number) value).doubleValue();
+		}
+
+	}
+
+	/**
+	 * Store strings with a dictionary: each distinct value is stored once, and each row references its value with a code
+	 */
+	static final class DictionaryColumn extends Column {
+
+		private static final long serialVersionUID = -6031722218563315745L;
+
+		private final String[] dictionary;
+		private final int[] codes;
+
+		DictionaryColumn(String[] dictionary, int[] codes, long[] nulls) {
+			super(ColumnType.OBJECT, nulls);
+			this.dictionary = dictionary;
+			this.codes = codes;
+		}
+
+		String[] getDictionary() {
+			return dictionary;
+		}
+
+		int[] getCodes() {
+			return codes;
+		}
+
+		@Override
+		int valuesHash() {
+			return 31 * Arrays.hashCode(dictionary) + Arrays.hashCode(codes);
+		}
+
+		@Override
+		boolean hasSameValues(Column other) {
+			return Arrays.equals(dictionary, ((DictionaryColumn) other).dictionary) && Arrays.equals(codes, ((DictionaryColumn) other).codes);
+		}
+
+		@Override
+		long estimateValuesSize() {
+			long size = ARRAY_HEADER + 4L * codes.length + ARRAY_HEADER + (long) REFERENCE * dictionary.length;
+			for (String value : dictionary) {
+				size += estimateSize(value);
+			}
+			return size;
+		}
+
+		@Override
+		Object getObject(int row) {
+			return isNull(row) ? null : dictionary[codes[row]];
+		}
+
+		@Override
+		boolean getBoolean(int row) {
+			String value = (String) getObject(row);
+			return value != null && ("1".equals(value) || Boolean.parseBoolean(value.trim()));
+		}
+
+		@Override
+		long getLong(int row) {
+			String value = (String) getObject(row);
+			return value == null ? 0 : Long.parseLong(value.trim());
+		}
+
+		@Override
+		double getDouble(int row) {
+			String value = (String) getObject(row);
+			return value == null ? 0 : Double.parseDouble(value.trim());
+		}
+
+	}
+
+}
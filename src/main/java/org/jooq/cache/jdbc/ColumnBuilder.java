@@ -0,0 +1,372 @@
+package org.jooq.cache.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build a {@link Column} while a {@link java.sql.ResultSet} is read.<br/>
+ * The storage is chosen with the first value read: if the column is then read with another type,
+ * the values already stored are boxed and the column is stored as objects.<br/>
+ * A value that is never read for a row is considered as null.<br/>
+ * The strings are stored with a dictionary while their cardinality is low, see {@link Column.DictionaryColumn}:
+ * the dictionary is dropped when the column contains too many distinct values or values that are not strings.
+ * @author Aurélien Manteaux
+ *
+ */
+final class ColumnBuilder {
+
+	private static final int INITIAL_CAPACITY = 16;
+	/**
+	 * The maximum number of distinct strings of a dictionary column
+	 */
+	static final int MAX_DICTIONARY_SIZE = 4096;
+
+	private ColumnType type;
+	private byte[] bytes;
+	private int[] ints;
+	private long[] longs;
+	private double[] doubles;
+	private Object[] objects;
+	/**
+	 * The bitmap of the values that have been read and are not null
+	 */
+	private long[] present;
+	private int capacity;
+	// the estimated heap size of the values stored in the objects array
+	private long objectsSize;
+	// false once the column cannot be a dictionary column
+	private boolean dictionaryAllowed;
+	// the code of each distinct string, created with the first string read, null if the column is not a dictionary column
+	private Map<String, Integer> dictionary;
+	private List<String> dictionaryValues;
+
+	ColumnBuilder() {
+		this.type = null;
+		this.present = new long[1];
+		this.capacity = 0;
+		this.objectsSize = 0;
+		this.dictionaryAllowed = true;
+	}
+
+	// values
+
+	void setBoolean(int row, boolean value) {
+		if (prepare(row, ColumnType.BOOLEAN)) {
+			bytes[row] = value ? (byte) 1 : (byte) 0;
+		} else {
+			objects[row] = value;
+		}
+	}
+
+	void setByte(int row, byte value) {
+		if (prepare(row, ColumnType.BYTE)) {
+			bytes[row] = value;
+		} else {
+			objects[row] = value;
+		}
+	}
+
+	void setShort(int row, short value) {
+		if (prepare(row, ColumnType.SHORT)) {
+			ints[row] = value;
+		} else {
+			objects[row] = value;
+		}
+	}
+
+	void setInt(int row, int value) {
+		if (prepare(row, ColumnType.INT)) {
+			ints[row] = value;
+		} else {
+			objects[row] = value;
+		}
+	}
+
+	void setLong(int row, long value) {
+		if (prepare(row, ColumnType.LONG)) {
+			longs[row] = value;
+		} else {
+			objects[row] = value;
+		}
+	}
+
+	void setFloat(int row, float value) {
+		if (prepare(row, ColumnType.FLOAT)) {
+			doubles[row] = value;
+		} else {
+			objects[row] = value;
+		}
+	}
+
+	void setDouble(int row, double value) {
+		if (prepare(row, ColumnType.DOUBLE)) {
+			doubles[row] = value;
+		} else {
+			objects[row] = value;
+		}
+	}
+
+	void setObject(int row, Object value) {
+		if (value == null) {
+			// a null value does not change the storage type
+			setNull(row);
+			return;
+		}
+		prepare(row, ColumnType.OBJECT);
+		if (value instanceof String && dictionaryAllowed) {
+			objects[row] = dictionaryValue((String) value);
+			return;
+		}
+		dropDictionary();
+		release(row);
+		objects[row] = value;
+		objectsSize += Column.estimateSize(value);
+	}
+
+	/**
+	 * Mark the value of a row as null, for example when {@link java.sql.ResultSet#wasNull()} returns true
+	 */
+	void setNull(int row) {
+		if (row < capacity) {
+			present[row >>> 6] &= ~(1L << row);
+			if (objects != null) {
+				if (!dictionaryAllowed) {
+					release(row);
+				}
+				objects[row] = null;
+			}
+		}
+	}
+
+	// size
+
+	/**
+	 * The estimation is cheap, it can be called while the values are read
+	 * @return An estimation of the heap size of the values stored, in bytes
+	 */
+	long estimateSize() {
+		if (type == null) {
+			return 0;
+		}
+		switch (type) {
+		case BOOLEAN:
+		case BYTE:
+			return capacity;
+		case SHORT:
+		case INT:
+			return 4L * capacity;
+		case LONG:
+		case FLOAT:
+		case DOUBLE:
+			return 8L * capacity;
+		default:
+			return 8L * capacity + objectsSize;
+		}
+	}
+
+	// build
+
+	/**
+	 * @param rowCount the number of rows read
+	 * @return The column containing the values read
+	 */
+	Column build(int rowCount) {
+		if (type == null) {
+			// the column has never been read
+			return new Column.ObjectColumn(new Object[rowCount]);
+		}
+		ensureCapacity(rowCount);
+		switch (type) {
+		case BOOLEAN:
+		case BYTE:
+			return new Column.ByteColumn(type, Arrays.copyOf(bytes, rowCount), nulls(rowCount));
+		case SHORT:
+		case INT:
+			return new Column.IntColumn(type, Arrays.copyOf(ints, rowCount), nulls(rowCount));
+		case LONG:
+			return new Column.LongColumn(Arrays.copyOf(longs, rowCount), nulls(rowCount));
+		case FLOAT:
+		case DOUBLE:
+			return new Column.DoubleColumn(type, Arrays.copyOf(doubles, rowCount), nulls(rowCount));
+		default:
+			if (dictionary != null && !dictionary.isEmpty() && dictionary.size() <= rowCount / 2) {
+				return buildDictionaryColumn(rowCount);
+			}
+			return new Column.ObjectColumn(Arrays.copyOf(objects, rowCount));
+		}
+	}
+
+	// utils
+
+	/**
+	 * Prepare the storage to receive a value
+	 * @return true if the value must be stored in a primitive array, false if it must be stored in the objects array
+	 */
+	private boolean prepare(int row, ColumnType valueType) {
+		if (type == null) {
+			type = valueType;
+			allocate(Math.max(INITIAL_CAPACITY, row + 1));
+		} else if (type != valueType && type != ColumnType.OBJECT) {
+			box();
+		}
+		if (valueType != ColumnType.OBJECT) {
+			// a primitive value is stored in the column
+			dropDictionary();
+		}
+		ensureCapacity(row + 1);
+		present[row >>> 6] |= 1L << row;
+		return type != ColumnType.OBJECT;
+	}
+
+	private void allocate(int newCapacity) {
+		switch (type) {
+		case BOOLEAN:
+		case BYTE:
+			bytes = new byte[newCapacity];
+			break;
+		case SHORT:
+		case INT:
+			ints = new int[newCapacity];
+			break;
+		case LONG:
+			longs = new long[newCapacity];
+			break;
+		case FLOAT:
+		case DOUBLE:
+			doubles = new double[newCapacity];
+			break;
+		default:
+			objects = new Object[newCapacity];
+			break;
+		}
+		capacity = newCapacity;
+		present = Arrays.copyOf(present, Math.max(present.length, words(newCapacity)));
+	}
+
+	private void ensureCapacity(int minCapacity) {
+		if (minCapacity <= capacity) {
+			return;
+		}
+		int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));
+		if (bytes != null) {
+			bytes = Arrays.copyOf(bytes, newCapacity);
+		} else if (ints != null) {
+			ints = Arrays.copyOf(ints, newCapacity);
+		} else if (longs != null) {
+			longs = Arrays.copyOf(longs, newCapacity);
+		} else if (doubles != null) {
+			doubles = Arrays.copyOf(doubles, newCapacity);
+		} else {
+			objects = Arrays.copyOf(objects, newCapacity);
+		}
+		capacity = newCapacity;
+		present = Arrays.copyOf(present, Math.max(present.length, words(newCapacity)));
+	}
+
+	/**
+	 * Move the values stored in a primitive array to the objects array
+	 */
+	private void box() {
+		Column column = build(capacity);
+		objects = new Object[capacity];
+		for (int row = 0; row < capacity; row++) {
+			objects[row] = column.getObject(row);
+			objectsSize += Column.estimateSize(objects[row]);
+		}
+		bytes = null;
+		ints = null;
+		longs = null;
+		doubles = null;
+		type = ColumnType.OBJECT;
+	}
+
+	/**
+	 * @return The instance of the string stored in the dictionary, the string is added to the dictionary if it is new
+	 */
+	private String dictionaryValue(String value) {
+		if (dictionary == null) {
+			dictionary = new HashMap<String, Integer>();
+			dictionaryValues = new ArrayList<String>();
+		}
+		Integer code = dictionary.get(value);
+		if (code != null) {
+			return dictionaryValues.get(code);
+		}
+		if (dictionary.size() >= MAX_DICTIONARY_SIZE) {
+			// the cardinality is too high
+			dropDictionary();
+		} else {
+			dictionary.put(value, dictionaryValues.size());
+			dictionaryValues.add(value);
+		}
+		objectsSize += Column.estimateSize(value);
+		return value;
+	}
+
+	private void dropDictionary() {
+		dictionaryAllowed = false;
+		dictionary = null;
+		dictionaryValues = null;
+	}
+
+	/**
+	 * Remove the size of the value of a row before it is replaced, for example when a value is read again;
+	 * the strings of a dictionary are counted once for all the rows, they are not released
+	 */
+	private void release(int row) {
+		if (objects[row] != null) {
+			objectsSize -= Column.estimateSize(objects[row]);
+		}
+	}
+
+	private Column buildDictionaryColumn(int rowCount) {
+		int[] codes = new int[rowCount];
+		for (int row = 0; row < rowCount; row++) {
+			if (objects[row] != null) {
+				codes[row] = dictionary.get(objects[row]);
+			}
+		}
+		return new Column.DictionaryColumn(dictionaryValues.toArray(new String[dictionaryValues.size()]), codes, objectNulls(rowCount));
+	}
+
+	/**
+	 * @return The bitmap of the null values of the objects array, or null if there is no null value
+	 */
+	private long[] objectNulls(int rowCount) {
+		long[] nulls = null;
+		for (int row = 0; row < rowCount; row++) {
+			if (objects[row] == null) {
+				if (nulls == null) {
+					nulls = new long[words(rowCount)];
+				}
+				nulls[row >>> 6] |= 1L << row;
+			}
+		}
+		return nulls;
+	}
+
+	/**
+	 * @return The bitmap of the null values, or null if there is no null value
+	 */
+	private long[] nulls(int rowCount) {
+		long[] nulls = new long[words(rowCount)];
+		boolean hasNull = false;
+		for (int i = 0; i < nulls.length; i++) {
+			nulls[i] = ~present[i];
+			if (i == nulls.length - 1 && (rowCount & 63) != 0) {
+				// ignore the bits after the last row
+				nulls[i] &= (1L << rowCount) - 1;
+			}
+			hasNull |= nulls[i] != 0;
+		}
+		return hasNull ? nulls : null;
+	}
+
+	private static int words(int bits) {
+		return (bits + 63) >>> 6;
+	}
+
+}
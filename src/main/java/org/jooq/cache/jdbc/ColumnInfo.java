@@ -1,11 +1,15 @@
 package org.jooq.cache.jdbc;
 
+import java.io.Serializable;
+
 /**
  * For the {@link CachedResultSetMetaData} 
  * @author Aurélien Manteaux
  *
  */
-public class ColumnInfo {
+public class ColumnInfo implements Serializable {
+
+	private static final long serialVersionUID = 6342893569105784012L;
 
 	private final int precision;
 	private final int scale;
@@ -0,0 +1,19 @@
+package org.jooq.cache.jdbc;
+
+/**
+ * The way the values of a column have been read from the {@link java.sql.ResultSet}, it defines how a {@link Column} stores the values
+ * @author Aurélien Manteaux
+ *
+ */
+enum ColumnType {
+
+	BOOLEAN,
+	BYTE,
+	SHORT,
+	INT,
+	LONG,
+	FLOAT,
+	DOUBLE,
+	OBJECT
+
+}
@@ -0,0 +1,69 @@
+package org.jooq.cache.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.jooq.BindContext;
+import org.jooq.ConnectionProvider;
+import org.jooq.Param;
+import org.jooq.RefreshCachedConfiguration;
+import org.jooq.cache.CacheRefresher;
+import org.jooq.cache.CaptureLimits;
+import org.jooq.cache.QueryTemplate;
+import org.jooq.impl.DSL;
+
+/**
+ * Refresh a cached query result: the SQL of the query template is prepared as it has been rendered by jOOQ, it is not parsed again,
+ * and the bind values of the query are bound by jOOQ, so they are bound with their data type and their converter;
+ * the result is read the same way the stale result has been read, within the capture limits of the query, see {@link CachedDataReader}.<br/>
+ * A refresher is shared by all the queries of a configuration.
+ * @author Aurélien Manteaux
+ *
+ */
+public final class JdbcCacheRefresher implements CacheRefresher {
+
+	private final RefreshCachedConfiguration configuration;
+
+	/**
+	 * @param configuration the configuration of the queries, it provides the connections dedicated to the refreshes, see {@link RefreshCachedConfiguration#refreshConnectionProvider()}
+	 */
+	public JdbcCacheRefresher(RefreshCachedConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
+	/**
+	 * @param bindValues the bind values of the query, in the order of the rendered SQL: the {@link Param} are bound with their data type,
+	 * the other values with the data type of their class
+	 */
+	@Override
+	public CachedData refresh(QueryTemplate template, List<?> bindValues, CachedData staleData, CaptureLimits captureLimits) throws SQLException {
+		ConnectionProvider connectionProvider = configuration.refreshConnectionProvider();
+		if (connectionProvider == null) {
+			throw new SQLException("No connection provider is dedicated to the refreshes");
+		}
+		Connection connection = connectionProvider.acquire();
+		try {
+			PreparedStatement statement = connection.prepareStatement(template.getQuery());
+			try {
+				BindContext bindContext = DSL.using(configuration).bindContext(statement);
+				for (Object bindValue : bindValues) {
+					bindContext.visit(bindValue instanceof Param ? (Param<?>) bindValue : DSL.val(bindValue));
+				}
+				ResultSet resultSet = statement.executeQuery();
+				try {
+					return CachedDataReader.read(resultSet, staleData, captureLimits);
+				} finally {
+					resultSet.close();
+				}
+			} finally {
+				statement.close();
+			}
+		} finally {
+			connectionProvider.release(connection);
+		}
+	}
+
+}
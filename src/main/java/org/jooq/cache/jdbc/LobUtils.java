@@ -0,0 +1,62 @@
+package org.jooq.cache.jdbc;
+
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.NClob;
+import java.sql.SQLException;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
+/**
+ * The LOBs are cached as bytes and strings: a LOB of the driver cannot be read once its connection is released,
+ * and it cannot be stored outside of the heap, see {@link CachedDataCodec}.
+ * @author Aurélien Manteaux
+ *
+ */
+class LobUtils {
+
+	// read the LOBs
+
+	static byte[] toBytes(Blob blob) throws SQLException {
+		return blob.getBytes(1, checkLength(blob.length()));
+	}
+
+	static String toString(Clob clob) throws SQLException {
+		return clob.getSubString(1, checkLength(clob.length()));
+	}
+
+	// create the LOBs
+
+	static Blob toBlob(byte[] bytes) throws SQLException {
+		return bytes == null ? null : new SerialBlob(bytes);
+	}
+
+	static Clob toClob(String value) throws SQLException {
+		return value == null ? null : new SerialClob(value.toCharArray());
+	}
+
+	static NClob toNClob(String value) throws SQLException {
+		return value == null ? null : new SerialNClob(value.toCharArray());
+	}
+
+	// utils
+
+	private static int checkLength(long length) throws SQLException {
+		if(length > Integer.MAX_VALUE) {
+			throw new SQLException("A LOB of " + length + " bytes cannot be cached");
+		}
+		return (int) length;
+	}
+
+	private static final class SerialNClob extends SerialClob implements NClob {
+
+		private static final long serialVersionUID = 1L;
+
+		SerialNClob(char[] value) throws SQLException {
+			super(value);
+		}
+
+	}
+
+}
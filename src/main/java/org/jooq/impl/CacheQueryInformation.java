@@ -1,36 +1,108 @@
 package org.jooq.impl;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.jooq.Configuration;
+import org.jooq.Param;
+import org.jooq.Query;
 import org.jooq.VisitListener;
+import org.jooq.VisitListenerProvider;
 import org.jooq.cache.CacheManager;
+import org.jooq.cache.QueryTemplate;
+import org.jooq.cache.jdbc.CachedData;
+import org.jooq.conf.ParamType;
 
 public class CacheQueryInformation {
  
-	private final String query;
+	private final QueryTemplate queryTemplate;
 	private final List<Object> queryParameters;
-	private final VisitListener visitListener;
+	// the bind values with their data type, null if the query has not been rendered
+	private final List<Param<?>> bindValues;
+	// null if the referenced tables are known by the query template
+	private final CachedVisitListener visitListener;
 	private final Set<String> referencedTables;
 	private final CacheManager cacheManager; 
+	private volatile CachedData cachedData;
 
+	/**
+	 * The referenced tables are collected when the query is built during its execution
+	 */
 	public CacheQueryInformation(String query, List<Object> queryParameters, CacheManager cacheManager) {
-		this.query = query;
+		this.queryTemplate = cacheManager.template(query);
 		this.queryParameters = queryParameters;
+		this.bindValues = null;
 		this.referencedTables = new HashSet<String>();
 		this.cacheManager = cacheManager;
 		this.visitListener = new CachedVisitListener(referencedTables);
 	}
 
+	private CacheQueryInformation(QueryTemplate queryTemplate, List<Param<?>> bindValues, CacheManager cacheManager) {
+		this.queryTemplate = queryTemplate;
+		this.queryParameters = new ArrayList<Object>(bindValues.size());
+		for (Param<?> bindValue : bindValues) {
+			this.queryParameters.add(bindValue.getValue());
+		}
+		this.bindValues = bindValues;
+		this.referencedTables = queryTemplate.getReferencedTables();
+		this.cacheManager = cacheManager;
+		this.visitListener = null;
+	}
+
+	/**
+	 * Render the query once to read its SQL and its bind values.<br/>
+	 * The referenced tables are collected only the first time a query template is rendered, they are then read from the {@link QueryTemplate}:
+	 * the query does not need to be built again to find the referenced tables during its execution
+	 * @param query the query to render
+	 * @param configuration the configuration used to render the query
+	 * @param cacheManager the cache manager
+	 * @return The information of the rendered query
+	 */
+	public static CacheQueryInformation render(Query query, Configuration configuration, CacheManager cacheManager) {
+		List<Param<?>> bindValues = new ArrayList<Param<?>>();
+		QueryTemplate queryTemplate = cacheManager.template(render(query, configuration, new CachedVisitListener(null, bindValues)));
+		if (!queryTemplate.hasReferencedTables()) {
+			Set<String> referencedTables = new HashSet<String>();
+			CachedVisitListener tablesVisitListener = new CachedVisitListener(referencedTables, null);
+			render(query, configuration, tablesVisitListener);
+			queryTemplate.setReferencedTables(referencedTables, tablesVisitListener.primaryKeyColumn());
+		}
+		return new CacheQueryInformation(queryTemplate, bindValues, cacheManager);
+	}
+
+	private static String render(Query query, Configuration configuration, final VisitListener visitListener) {
+		Configuration renderConfiguration = configuration.derive(Utils.combine(configuration.visitListenerProviders(), new VisitListenerProvider() {
+			@Override
+			public VisitListener provide() {
+				return visitListener;
+			}
+		}));
+		return DSL.using(renderConfiguration).renderContext().paramType(ParamType.INDEXED).render(query);
+	}
+
 	public String getQuery() {
-		return query;
+		return queryTemplate.getQuery();
+	}
+
+	public QueryTemplate getQueryTemplate() {
+		return queryTemplate;
 	}
 
 	public List<Object> getQueryParameters() {
 		return queryParameters;
 	}
 
+	/**
+	 * Available only when the query has been rendered, see {@link #render(Query, Configuration, CacheManager)}
+	 * 
+	 * @return The bind values of the query with their data type, in the order of the rendered SQL; null if the query has not been rendered
+	 */
+	public List<Param<?>> getBindValues() {
+		return bindValues;
+	}
+
 	public CacheManager getCacheManager() {
 		return cacheManager;
 	}
@@ -44,6 +116,31 @@ public class CacheQueryInformation {
 		return referencedTables;
 	}
 
+	/**
+	 * Available only when the query has been built
+	 * 
+	 * @return The primary key column if the query result can be invalidated by rows, else null
+	 */
+	public String getPrimaryKeyColumn() {
+		return visitListener == null ? queryTemplate.getPrimaryKeyColumn() : visitListener.primaryKeyColumn();
+	}
+
+	/**
+	 * Available only when the query has been executed
+	 * 
+	 * @return The query result read from the cache or cached during the execution, null if the result has not been cached
+	 */
+	public CachedData getCachedData() {
+		return cachedData;
+	}
+
+	public void setCachedData(CachedData cachedData) {
+		this.cachedData = cachedData;
+	}
+
+	/**
+	 * @return The listener collecting the referenced tables during the query execution, null if the referenced tables are already known
+	 */
 	public VisitListener getVisitListener() {
 		return visitListener;
 	}
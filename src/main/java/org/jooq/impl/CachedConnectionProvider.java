@@ -3,27 +3,73 @@ package org.jooq.impl;
 import java.sql.Connection;
 
 import org.jooq.ConnectionProvider;
+import org.jooq.cache.CacheLoad;
+import org.jooq.cache.CacheManager;
+import org.jooq.cache.CacheRefresher;
 import org.jooq.cache.jdbc.CachedConnection;
+import org.jooq.cache.jdbc.CachedData;
 import org.jooq.exception.DataAccessException;
+import org.jooq.tools.JooqLogger;
 
 public class CachedConnectionProvider implements ConnectionProvider {
 	
+	private static final JooqLogger log   = JooqLogger.getLogger(CachedConnectionProvider.class);
+	
 	private final ConnectionProvider delegate;
 	private final CacheQueryInformation queryInformation;
+	private final CacheRefresher refresher;
+	private final boolean autoCommitIgnored;
 
 	public CachedConnectionProvider(ConnectionProvider connectionProvider, CacheQueryInformation queryInformation) {
+		this(connectionProvider, queryInformation, false, null);
+	}
+
+	/**
+	 * @param connectionProvider the provider of the database connections
+	 * @param queryInformation the query
+	 * @param autoCommitIgnored true to serve a query result in the cache without acquiring a connection, see {@link org.jooq.AutoCommitCachedConfiguration#isAutoCommitIgnored()}
+	 * @param refresher the refresher of the stale query result, null if it is not refreshed in the background
+	 */
+	public CachedConnectionProvider(ConnectionProvider connectionProvider, CacheQueryInformation queryInformation, boolean autoCommitIgnored, CacheRefresher refresher) {
 		this.delegate = connectionProvider;
 		this.queryInformation = queryInformation;
+		this.refresher = refresher;
+		this.autoCommitIgnored = autoCommitIgnored;
 	}
 
+	/**
+	 * The cache is looked up before a database connection is acquired:
+	 * if the query result is in the cache and if the autocommit is ignored, no database connection is acquired;
+	 * else the connection is acquired to check that it is set to autocommit before the query result is served, see {@link CachedConnection}.<br/>
+	 * A stale query result is refreshed in the background with the refresher, see {@link org.jooq.cache.RefreshPolicy}.<br/>
+	 * When the query result is being read by another thread, it is waited for before a database connection is acquired:
+	 * the waiting threads do not hold a database connection, see {@link CacheManager#load}
+	 */
 	@Override
 	public Connection acquire() throws DataAccessException {
-		return new CachedConnection(delegate.acquire(), queryInformation);
+		CacheManager cacheManager = queryInformation.getCacheManager();
+		CachedData cachedData = cacheManager.getCachedDataIfPresent(queryInformation.getQueryTemplate(), queryInformation.getQueryParameters(), queryInformation.getBindValues(), refresher);
+		CacheLoad load = null;
+		if(cachedData == null) {
+			// only one thread executes the query when concurrent threads miss the same query result
+			load = cacheManager.load(queryInformation.getQueryTemplate(), queryInformation.getQueryParameters());
+			cachedData = load.getCachedData();
+			if(cachedData != null && log.isDebugEnabled()) {
+				log.debug("Cache is used for this query, it has been read by another thread");
+			}
+		}
+		return new CachedConnection(delegate, queryInformation, cachedData, load, autoCommitIgnored);
 	}
 
 	@Override
 	public void release(Connection connection) throws DataAccessException {
-		delegate.release(connection);
+		if(connection instanceof CachedConnection) {
+			// the load is released when the result set is closed, so it is aborted only if the query result has not been read
+			((CachedConnection) connection).abortLoad();
+		}
+		if(!(connection instanceof CachedConnection) || ((CachedConnection) connection).isAcquired()) {
+			delegate.release(connection);
+		}
 	}
 
 }
@@ -3,11 +3,16 @@ package org.jooq.impl;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.jooq.CachedConfiguration;
 import org.jooq.CachedDAO;
+import org.jooq.ConnectionProvider;
 import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.RecordMapper;
@@ -15,12 +20,16 @@ import org.jooq.Result;
 import org.jooq.ResultQuery;
 import org.jooq.Table;
 import org.jooq.UpdatableRecord;
-import org.jooq.conf.ParamType;
+import org.jooq.cache.CacheManager;
+import org.jooq.cache.CacheRefresher;
+import org.jooq.exception.DataAccessException;
 
 public abstract class CachedDAOImpl<R extends UpdatableRecord<R>, P, T> implements CachedDAO<R, P, T> {
 	
 	private final ExtendedDAOImpl<R, P, T> delegate;
 	private CachedConfiguration cachedConfiguration;
+	// shared by all the queries of the DAO
+	private CacheRefresher refresher;
 
 	public CachedDAOImpl(final Table<R> table, final Class<P> type) {
 		this(table, type, null);
@@ -41,6 +50,7 @@ public abstract class CachedDAOImpl<R extends UpdatableRecord<R>, P, T> implemen
 			
 		};
 		this.cachedConfiguration = cachedConfiguration;
+		this.refresher = CachedQueryConfiguration.refresher(cachedConfiguration);
 	}
 	
 	public CachedConfiguration configuration() {
@@ -49,6 +59,7 @@ public abstract class CachedDAOImpl<R extends UpdatableRecord<R>, P, T> implemen
 	
 	public final void setConfiguration(CachedConfiguration configuration) {
 		this.cachedConfiguration = configuration;
+		this.refresher = CachedQueryConfiguration.refresher(configuration);
 		delegate.setConfiguration(configuration);
 	}
 	
@@ -57,21 +68,60 @@ public abstract class CachedDAOImpl<R extends UpdatableRecord<R>, P, T> implemen
     // -------------------------------------------------------------------------
 
 	protected<M extends Record> Result<M> fetchCached(ResultQuery<M> query) {
-		//@formatter:off
-		query.attach(
-			new CachedQueryConfiguration(
-				configuration(),
-				new CacheQueryInformation(
-					query.getSQL(ParamType.INDEXED),
-					query.getBindValues(),
-					configuration().cacheManager()
-				)
-			)
-		);
-		//@formatter:on
+		query.attach(new CachedQueryConfiguration(configuration(), CacheQueryInformation.render(query, configuration(), configuration().cacheManager()), refresher));
 		return query.fetch();
 	}
 	
+	/**
+	 * Same as {@link #fetchCached(ResultQuery)}, but the records are cached with the query result:
+	 * when the query result is in the cache, the records are returned without reading the result again,
+	 * and without using a connection if the autocommit is ignored, see {@link org.jooq.AutoCommitCachedConfiguration#isAutoCommitIgnored()}.<br/>
+	 * The records returned are shared between all the callers: the list cannot be modified, and the records are detached from the configuration
+	 * so they cannot be stored nor refreshed; they must not be modified either.<br/>
+	 * The records are kept only while the query result stays on the heap: once the result is evicted from the results decoded on the heap
+	 * by the {@link org.jooq.cache.impl.OffHeapCacheProvider}, or written to the disk by the {@link org.jooq.cache.impl.TieredCacheProvider},
+	 * the query result is decoded again when it is read, and the records are materialized again.
+	 */
+	@SuppressWarnings("unchecked")
+	protected<M extends Record> List<M> fetchCachedReadOnly(ResultQuery<M> query) {
+		CacheManager cacheManager = configuration().cacheManager();
+		CacheQueryInformation queryInformation = CacheQueryInformation.render(query, configuration(), cacheManager);
+		
+		List<M> records = (List<M>) cacheManager.getCachedRecordsIfPresent(queryInformation.getQueryTemplate(), queryInformation.getQueryParameters(), query.getRecordType());
+		if(records != null && isCacheReadable()) {
+			return records;
+		}
+		
+		query.attach(new CachedQueryConfiguration(configuration(), queryInformation, refresher));
+		Result<M> result = query.fetch();
+		if(queryInformation.getCachedData() == null) {
+			return result;
+		}
+		// the records shared between the callers must not keep a reference to the query configuration
+		result.attach(null);
+		records = Collections.unmodifiableList(result);
+		cacheManager.cacheRecords(queryInformation.getQueryTemplate(), queryInformation.getQueryParameters(), queryInformation.getCachedData(), query.getRecordType(), records);
+		return records;
+	}
+	
+	/**
+	 * [#8] A query result is read from the cache only when the connection is set to autocommit, unless the autocommit is ignored
+	 */
+	private boolean isCacheReadable() {
+		if(CachedQueryConfiguration.isAutoCommitIgnored(configuration())) {
+			return true;
+		}
+		ConnectionProvider connectionProvider = configuration().connectionProvider();
+		Connection connection = connectionProvider.acquire();
+		try {
+			return connection.getAutoCommit();
+		} catch (SQLException e) {
+			throw new DataAccessException("Error while reading the autocommit of the connection", e);
+		} finally {
+			connectionProvider.release(connection);
+		}
+	}
+	
 	/**
 	 * Clear all queries cached which have a reference to the table used in the DAO.<br/>
 	 * For example, if the clearCache() method is called on a DAO for the table TableA :<br/>
@@ -83,6 +133,29 @@ public abstract class CachedDAOImpl<R extends UpdatableRecord<R>, P, T> implemen
 		configuration().cacheManager().clearByTable(getTable().getName());
 	}
 	
+	/**
+	 * Clear the queries cached which contain the rows of the ids if row level invalidation is enabled, see {@link #rowLevelInvalidation()},
+	 * else clear all queries cached which have a reference to the table used in the DAO, see {@link #clearCache()}
+	 */
+	public final void clearCache(Collection<T> ids) {
+		if(rowLevelInvalidation()) {
+			configuration().cacheManager().clearByRows(getTable().getName(), ids);
+		} else {
+			clearCache();
+		}
+	}
+	
+	/**
+	 * Enable to clear only the cached queries containing the updated or deleted rows, instead of all the queries referencing the table.<br/>
+	 * It applies to the queries that reference only the table of the DAO, that are filtered and ordered only by its primary key,
+	 * and whose results contain the primary key column; for example : SELECT a,b,c FROM TableA WHERE id = ?<br/>
+	 * The other queries referencing the table are still cleared. The inserts always clear all the queries referencing the table.
+	 * @return true to enable row level invalidation, false by default
+	 */
+	protected boolean rowLevelInvalidation() {
+		return false;
+	}
+	
     // ------------------------------------------------------------------------
     // XXX: ExtendedDAOImpl override
     // ------------------------------------------------------------------------
@@ -111,7 +184,7 @@ public abstract class CachedDAOImpl<R extends UpdatableRecord<R>, P, T> implemen
 	
 	public final void update(Collection<P> objects) {
 		delegate.update(objects);
-		clearCache();
+		clearCache(ids(objects));
 	}
 
 	public final void delete(P... objects) {
@@ -120,7 +193,7 @@ public abstract class CachedDAOImpl<R extends UpdatableRecord<R>, P, T> implemen
 
 	public final void delete(Collection<P> objects) {
 		delegate.delete(objects);
-		clearCache();
+		clearCache(ids(objects));
 	}
 	
 	public final void deleteById(T... ids) {
@@ -129,7 +202,7 @@ public abstract class CachedDAOImpl<R extends UpdatableRecord<R>, P, T> implemen
 
 	public final void deleteById(Collection<T> ids) {
 		delegate.deleteById(ids);
-		clearCache();
+		clearCache(ids);
 	}
 	
     // ------------------------------------------------------------------------
@@ -176,6 +249,14 @@ public abstract class CachedDAOImpl<R extends UpdatableRecord<R>, P, T> implemen
 		return delegate.getType();
 	}
 
+	private List<T> ids(Collection<P> objects) {
+		List<T> ids = new ArrayList<T>(objects.size());
+		for(P object : objects) {
+			ids.add(getId(object));
+		}
+		return ids;
+	}
+	
     // ------------------------------------------------------------------------
     // XXX: Template methods for generated subclasses
     // ------------------------------------------------------------------------
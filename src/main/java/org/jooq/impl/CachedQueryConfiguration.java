@@ -2,6 +2,8 @@ package org.jooq.impl;
 
 import java.util.Map;
 
+import org.jooq.AutoCommitCachedConfiguration;
+import org.jooq.CachedConfiguration;
 import org.jooq.Configuration;
 import org.jooq.ConfigurationExtended;
 import org.jooq.ConnectionProvider;
@@ -9,10 +11,13 @@ import org.jooq.ExecuteListenerProvider;
 import org.jooq.IdGenerator;
 import org.jooq.RecordListenerProvider;
 import org.jooq.RecordMapperProvider;
+import org.jooq.RefreshCachedConfiguration;
 import org.jooq.SQLDialect;
 import org.jooq.SchemaMapping;
 import org.jooq.VisitListener;
 import org.jooq.VisitListenerProvider;
+import org.jooq.cache.CacheRefresher;
+import org.jooq.cache.jdbc.JdbcCacheRefresher;
 import org.jooq.conf.Settings;
 import org.jooq.conf.SettingsExtended;
 
@@ -21,16 +26,44 @@ class CachedQueryConfiguration implements ConfigurationExtended {
 
 	private static final long serialVersionUID = 8568789914321518861L;
 
-	private final ConfigurationExtended delegate;
+	private final CachedConfiguration delegate;
 	private final CachedConnectionProvider cachedConnectionProvider;
 	private final VisitListener visitListener;
 
-	CachedQueryConfiguration(ConfigurationExtended delegate, CacheQueryInformation queryInformation) {
+	/**
+	 * @param refresher the refresher shared by the queries of the configuration, see {@link #refresher(CachedConfiguration)}
+	 */
+	CachedQueryConfiguration(CachedConfiguration delegate, CacheQueryInformation queryInformation, CacheRefresher refresher) {
 		this.delegate = delegate;
-		this.cachedConnectionProvider = new CachedConnectionProvider(delegate.connectionProvider(), queryInformation);
+		this.cachedConnectionProvider = new CachedConnectionProvider(delegate.connectionProvider(), queryInformation, isAutoCommitIgnored(delegate), refresher(delegate, queryInformation, refresher));
 		this.visitListener = queryInformation.getVisitListener();
 	}
 
+	/**
+	 * @return true if the query results in the cache are served whatever the autocommit of the connection, see {@link AutoCommitCachedConfiguration}
+	 */
+	static boolean isAutoCommitIgnored(CachedConfiguration configuration) {
+		return configuration instanceof AutoCommitCachedConfiguration && ((AutoCommitCachedConfiguration) configuration).isAutoCommitIgnored();
+	}
+
+	/**
+	 * @return The refresher of the queries of a configuration, or null if the configuration does not refresh the query results, see {@link RefreshCachedConfiguration}
+	 */
+	static CacheRefresher refresher(CachedConfiguration configuration) {
+		return configuration instanceof RefreshCachedConfiguration ? new JdbcCacheRefresher((RefreshCachedConfiguration) configuration) : null;
+	}
+
+	/**
+	 * @return The refresher of the query, or null if there is no connection provider dedicated to the refreshes or if the query has not been rendered
+	 */
+	private static CacheRefresher refresher(CachedConfiguration configuration, CacheQueryInformation queryInformation, CacheRefresher refresher) {
+		if (refresher == null || queryInformation.getBindValues() == null
+				|| !(configuration instanceof RefreshCachedConfiguration) || ((RefreshCachedConfiguration) configuration).refreshConnectionProvider() == null) {
+			return null;
+		}
+		return refresher;
+	}
+
 	// the cache flavor works here !
 
 	@Override
@@ -40,6 +73,9 @@ class CachedQueryConfiguration implements ConfigurationExtended {
 
 	@Override
 	public VisitListenerProvider[] visitListenerProviders() {
+		if (visitListener == null) {
+			return delegate.visitListenerProviders();
+		}
 		return Utils.combine(delegate.visitListenerProviders(), new VisitListenerProvider() {
 			@Override
 			public VisitListener provide() {
@@ -1,38 +1,134 @@
 package org.jooq.impl;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jooq.Clause;
+import org.jooq.Field;
+import org.jooq.Param;
+import org.jooq.QueryPart;
 import org.jooq.Table;
+import org.jooq.TableField;
+import org.jooq.UniqueKey;
 import org.jooq.VisitContext;
 import org.jooq.VisitListener;
 
 public class CachedVisitListener implements VisitListener {
 
 	private final Set<String> referencedTables;
+	// the bind values collected while the query is rendered, null if they are not collected
+	private final List<Param<?>> bindValues;
+	// the single column primary keys of the referenced tables
+	private final Map<String, String> primaryKeys;
+	// the fields used to filter or to order the rows
+	private final Set<String> filterFields;
+	private boolean grouped;
+	// true if the rows are not selected only by fields: the query is limited, or it is filtered or ordered by an expression or by plain SQL
+	private boolean selectedByExpression;
 
 	public CachedVisitListener(Set<String> referencedTables) {
+		this(referencedTables, null);
+	}
+
+	/**
+	 * @param referencedTables the set to fill with the tables referenced by the query, null if the tables are not collected
+	 * @param bindValues the list to fill with the bind values of the query, in the order of the rendered SQL, null if they are not collected
+	 */
+	public CachedVisitListener(Set<String> referencedTables, List<Param<?>> bindValues) {
 		this.referencedTables = referencedTables;
+		this.bindValues = bindValues;
+		this.primaryKeys = referencedTables == null ? null : new HashMap<String, String>();
+		this.filterFields = referencedTables == null ? null : new HashSet<String>();
+		this.grouped = false;
+		this.selectedByExpression = false;
 	}
 
 	@Override
 	public void visitStart(VisitContext context) {
+		if (bindValues != null && context.queryPart() instanceof Param<?>) {
+			if (!((Param<?>) context.queryPart()).isInline()) {
+				bindValues.add((Param<?>) context.queryPart());
+			}
+		}
+		else if (referencedTables != null) {
+			visitTables(context);
+		}
+	}
+
+	private void visitTables(VisitContext context) {
 		if (
 			(context.clause() == Clause.TABLE_REFERENCE
 			|| context.clause() == Clause.TEMPLATE
 			|| context.clause() == Clause.CUSTOM)
 			&& context.queryPart() instanceof Table<?>
 		) {
-			referencedTables.add(((Table<?>)context.queryPart()).getName());
+			Table<?> table = (Table<?>) context.queryPart();
+			referencedTables.add(table.getName());
+			UniqueKey<?> primaryKey = table.getPrimaryKey();
+			if (primaryKey != null && primaryKey.getFields().size() == 1) {
+				primaryKeys.put(table.getName(), primaryKey.getFields().get(0).getName());
+			}
+		}
+		else if (context.queryPart() instanceof Limit && ((Limit) context.queryPart()).isApplicable()) {
+			// the rows selected depend on the other rows of the table
+			selectedByExpression = true;
+		}
+		else if (isFiltering(context.clauses())) {
+			QueryPart queryPart = context.queryPart();
+			if (queryPart instanceof TableField<?, ?>) {
+				filterFields.add(((TableField<?, ?>) queryPart).getName());
+			}
+			else if (queryPart instanceof Field<?> && !(queryPart instanceof Param<?>)) {
+				// a function, an arithmetic expression or a plain SQL field
+				selectedByExpression = true;
+			}
 		}
 	}
 
-	// do nothing
-
 	@Override
 	public void clauseStart(VisitContext context) {
+		if (context.clause() == Clause.SELECT_GROUP_BY || context.clause() == Clause.SELECT_HAVING) {
+			grouped = true;
+		}
+		else if ((context.clause() == Clause.TEMPLATE || context.clause() == Clause.CUSTOM) && isFiltering(context.clauses())) {
+			// a plain SQL or a custom condition: the fields it uses are unknown
+			selectedByExpression = true;
+		}
+	}
+
+	/**
+	 * A query can be invalidated by rows if it references a single table, if its rows are not grouped nor limited
+	 * and if it is filtered and ordered only by the primary key of the table.<br/>
+	 * Available only when the query has been built
+	 * @return The primary key column of the table if the query can be invalidated by rows, else null
+	 */
+	String primaryKeyColumn() {
+		if (grouped || selectedByExpression || referencedTables.size() != 1) {
+			return null;
+		}
+		String primaryKey = primaryKeys.get(referencedTables.iterator().next());
+		if (primaryKey == null) {
+			return null;
+		}
+		for (String filterField : filterFields) {
+			if (!filterField.equalsIgnoreCase(primaryKey)) {
+				return null;
+			}
+		}
+		return primaryKey;
+	}
+
+	private static boolean isFiltering(Clause[] clauses) {
+		List<Clause> clauseList = Arrays.asList(clauses);
+		return clauseList.contains(Clause.SELECT_WHERE) || clauseList.contains(Clause.SELECT_ORDER_BY);
 	}
 
+	// do nothing
+
 	@Override
 	public void clauseEnd(VisitContext context) {
 	}
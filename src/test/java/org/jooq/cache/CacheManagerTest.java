@@ -2,13 +2,27 @@ package org.jooq.cache;
 
 import static org.fest.assertions.Assertions.assertThat;
 
-import java.util.Set;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.jooq.cache.impl.DefaultCache;
+import org.jooq.cache.impl.SharedCacheProvider;
 import org.jooq.cache.jdbc.CachedData;
 import org.jooq.cache.jdbc.ColumnInfo;
 import org.junit.Test;
 
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -41,16 +55,273 @@ public class CacheManagerTest {
     // --------------------------------------------------------------------------------
 	
 	@Test
-	public void should_add_a_query_result_to_the_query_cache_and_index_it_in_the_table_index_if_a_query_result_is_cached() {
+	public void should_add_a_query_result_to_the_query_cache_with_the_version_of_the_referenced_tables_if_a_query_result_is_cached() {
 		CacheManager cacheManager = mockCacheManager();
 		CachedData mockCachedData = mockCachedData();
+		cacheManager.clearByTable("table");
 		
 		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT * FROM table", ImmutableList.of(), mockCachedData);
 		
-		assertThat(cacheManager.tableIndex().get("table")).isEqualTo(ImmutableSet.of("SELECT * FROM table"));
-		assertThat(cacheManager.fetchByQuery("SELECT * FROM table").get(cacheManager.joinParameters(ImmutableList.of()))).isSameAs(mockCachedData);
+		CacheEntry entry = (CacheEntry) cacheManager.fetchByQuery("SELECT * FROM table").get(cacheManager.joinParameters(ImmutableList.of()));
+		assertThat(entry.getCachedData()).isSameAs(mockCachedData);
+		assertThat(entry.getTablesVersion()).isEqualTo(1L);
 	}
 	
+	@Test
+	public void should_drop_a_stale_entry_when_it_is_looked_up() {
+		CacheManager cacheManager = mockCacheManager();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT * FROM table", ImmutableList.of(), mockCachedData());
+		
+		cacheManager.clearByTable("table");
+		
+		assertThat(cacheManager.fetchByQuery("SELECT * FROM table").get(cacheManager.joinParameters(ImmutableList.of()))).isNotNull();
+		assertThat(cacheManager.getCachedDataIfPresent("SELECT * FROM table", ImmutableList.of())).isNull();
+		assertThat(cacheManager.fetchByQuery("SELECT * FROM table").get(cacheManager.joinParameters(ImmutableList.of()))).isNull();
+	}
+	
+	
+	@Test
+	public void should_not_cache_a_query_result_if_a_referenced_table_has_been_cleared_during_the_read() {
+		CacheManager cacheManager = mockCacheManager();
+		QueryTemplate template = cacheManager.template("SELECT * FROM table2 t2 JOIN table1 t1 ON t2.a=t1.a");
+		long tablesVersion = cacheManager.tablesVersion(ImmutableSet.of("table1", "table2"));
+		
+		cacheManager.clearByTable("table1");
+		
+		assertThat(cacheManager.cacheQueryResult(ImmutableSet.of("table1", "table2"), template, ImmutableList.of(), mockCachedData(), tablesVersion)).isFalse();
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.of())).isNull();
+	}
+	
+	@Test
+	public void should_cache_a_query_result_if_only_other_tables_have_been_cleared_during_the_read() {
+		CacheManager cacheManager = mockCacheManager();
+		QueryTemplate template = cacheManager.template("SELECT * FROM table1");
+		long tablesVersion = cacheManager.tablesVersion(ImmutableSet.of("table1"));
+		
+		cacheManager.clearByTable("table2");
+		
+		assertThat(cacheManager.cacheQueryResult(ImmutableSet.of("table1"), template, ImmutableList.of(), mockCachedData(), tablesVersion)).isTrue();
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.of())).isNotNull();
+	}
+	
+    // --------------------------------------------------------------------------------
+    // XXX: cacheRecords(...) testing
+    // --------------------------------------------------------------------------------
+	
+	@Test
+	public void should_get_the_records_cached_with_a_query_result() {
+		CacheManager cacheManager = mockCacheManager();
+		QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		CachedData mockCachedData = mockCachedData();
+		Object records = new Object();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.of(), mockCachedData);
+		
+		cacheManager.cacheRecords(template, ImmutableList.of(), mockCachedData, String.class, records);
+		
+		assertThat(cacheManager.getCachedRecordsIfPresent(template, ImmutableList.of(), String.class)).isSameAs(records);
+		assertThat(cacheManager.getCachedRecordsIfPresent(template, ImmutableList.of(), Integer.class)).isNull();
+		cacheManager.clearByTable("table");
+		assertThat(cacheManager.getCachedRecordsIfPresent(template, ImmutableList.of(), String.class)).isNull();
+	}
+	
+	@Test
+	public void should_not_cache_records_materialized_from_another_query_result() {
+		CacheManager cacheManager = mockCacheManager();
+		QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.of(), mockCachedData());
+		
+		cacheManager.cacheRecords(template, ImmutableList.of(), mockCachedData(), String.class, new Object());
+		
+		assertThat(cacheManager.getCachedRecordsIfPresent(template, ImmutableList.of(), String.class)).isNull();
+	}
+	
+    // --------------------------------------------------------------------------------
+    // XXX: load(QueryTemplate template, List<Object> queryParameters) testing
+    // --------------------------------------------------------------------------------
+	
+	@Test
+	public void should_share_the_result_loaded_by_the_owner_of_a_load() throws Exception {
+		final CacheManager cacheManager = mockCacheManager();
+		final QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		CacheLoad load = cacheManager.load(template, ImmutableList.<Object>of(1));
+		final AtomicReference<CacheLoad> waitingLoad = new AtomicReference<CacheLoad>();
+		Thread waitingThread = new Thread() {
+			@Override
+			public void run() {
+				waitingLoad.set(cacheManager.load(template, ImmutableList.<Object>of(1)));
+			}
+		};
+		waitingThread.start();
+		CachedData mockCachedData = mockCachedData();
+		
+		// the waiting thread is blocked on the load of the owner before the result is released
+		while(waitingThread.getState() != Thread.State.WAITING && waitingThread.getState() != Thread.State.TIMED_WAITING) {
+			Thread.yield();
+		}
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of(1), mockCachedData);
+		load.release(mockCachedData);
+		waitingThread.join();
+		
+		assertThat(load.isOwner()).isTrue();
+		assertThat(waitingLoad.get().isOwner()).isFalse();
+		assertThat(waitingLoad.get().getCachedData()).isSameAs(mockCachedData);
+		assertThat(cacheManager.load(template, ImmutableList.<Object>of(1)).getCachedData()).isSameAs(mockCachedData);
+	}
+	
+	@Test
+	public void should_not_coalesce_loads_with_different_parameters() {
+		CacheManager cacheManager = mockCacheManager();
+		QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		
+		assertThat(cacheManager.load(template, ImmutableList.<Object>of(1)).isOwner()).isTrue();
+		assertThat(cacheManager.load(template, ImmutableList.<Object>of(2)).isOwner()).isTrue();
+	}
+	
+	@Test
+	public void should_execute_the_query_if_the_owner_does_not_release_the_result_in_time() {
+		CacheManager cacheManager = new CacheManager(mockCacheProvider(), 10, TimeUnit.MILLISECONDS);
+		QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		CacheLoad load = cacheManager.load(template, ImmutableList.<Object>of());
+		
+		CacheLoad timedOutLoad = cacheManager.load(template, ImmutableList.<Object>of());
+		load.abort();
+		
+		assertThat(timedOutLoad.isOwner()).isFalse();
+		assertThat(timedOutLoad.getCachedData()).isNull();
+		assertThat(cacheManager.load(template, ImmutableList.<Object>of()).isOwner()).isTrue();
+	}
+	
+    // --------------------------------------------------------------------------------
+    // XXX: RefreshPolicy testing
+    // --------------------------------------------------------------------------------
+	
+	@Test
+	public void should_serve_a_stale_query_result_and_refresh_it_in_the_background() {
+		CacheManager cacheManager = new CacheManager(mockCacheProvider(), 10, TimeUnit.SECONDS, sameThreadExecutor());
+		QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		cacheManager.setQueryRefreshPolicy(template, RefreshPolicy.of(0, 1, TimeUnit.DAYS));
+		CachedData staleData = mockCachedData();
+		final CachedData freshData = mockCachedData();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.of(), staleData);
+		
+		final AtomicReference<CachedData> refreshed = new AtomicReference<CachedData>();
+		CachedData served = cacheManager.getCachedDataIfPresent(template, ImmutableList.of(), new CacheRefresher() {
+			@Override
+			public CachedData refresh(QueryTemplate template, List<?> bindValues, CachedData staleData, CaptureLimits captureLimits) {
+				refreshed.set(staleData);
+				return freshData;
+			}
+		});
+		
+		assertThat(served).isSameAs(staleData);
+		assertThat(refreshed.get()).isSameAs(staleData);
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.of())).isSameAs(freshData);
+	}
+	
+	@Test
+	public void should_drop_a_stale_query_result_if_its_refresh_exceeds_the_capture_limits() {
+		CacheManager cacheManager = new CacheManager(mockCacheProvider(), 10, TimeUnit.SECONDS, sameThreadExecutor());
+		QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		cacheManager.setQueryRefreshPolicy(template, RefreshPolicy.of(0, 1, TimeUnit.DAYS));
+		cacheManager.setQueryCaptureLimits(template, CaptureLimits.ofRows(10));
+		CachedData staleData = mockCachedData();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.of(), staleData);
+		
+		final AtomicReference<CaptureLimits> limits = new AtomicReference<CaptureLimits>();
+		CachedData served = cacheManager.getCachedDataIfPresent(template, ImmutableList.of(), new CacheRefresher() {
+			@Override
+			public CachedData refresh(QueryTemplate template, List<?> bindValues, CachedData staleData, CaptureLimits captureLimits) {
+				limits.set(captureLimits);
+				return null;
+			}
+		});
+		
+		assertThat(served).isSameAs(staleData);
+		assertThat(limits.get().getMaxRows()).isEqualTo(10);
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.of())).isNull();
+		assertThat(cacheManager.getStatistics().getAbortedCaptures()).isEqualTo(1L);
+	}
+	
+	@Test
+	public void should_drop_a_stale_query_result_if_its_refresh_is_not_admitted() {
+		CacheManager cacheManager = new CacheManager(mockCacheProvider(), 10, TimeUnit.SECONDS, sameThreadExecutor());
+		QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		cacheManager.setQueryRefreshPolicy(template, RefreshPolicy.of(0, 1, TimeUnit.DAYS));
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.of(), mockCachedData());
+		cacheManager.setAdmissionPolicy(new AdmissionPolicy() {
+			@Override
+			public boolean admit(QueryTemplate template, ParametersKey parameters, long executionNanos) {
+				return false;
+			}
+		});
+		
+		cacheManager.getCachedDataIfPresent(template, ImmutableList.of(), new CountingRefresher());
+		
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.of())).isNull();
+	}
+	
+	@Test
+	public void should_serve_a_stale_query_result_without_refreshing_it_if_there_is_no_refresher() {
+		CacheManager cacheManager = new CacheManager(mockCacheProvider(), 10, TimeUnit.SECONDS, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new IllegalStateException("no refresh should be submitted");
+			}
+		});
+		QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		cacheManager.setQueryRefreshPolicy(template, RefreshPolicy.of(0, 1, TimeUnit.DAYS));
+		CachedData staleData = mockCachedData();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.of(), staleData);
+		
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.of(), null)).isSameAs(staleData);
+	}
+	
+	@Test
+	public void should_drop_a_query_result_after_the_hard_ttl_of_a_referenced_table() {
+		CacheManager cacheManager = mockCacheManager();
+		QueryTemplate template = cacheManager.template("SELECT * FROM table1 WHERE id = ?");
+		template.setReferencedTables(ImmutableSet.of("table1"), "id");
+		cacheManager.cacheQueryResult(ImmutableSet.of("table1"), template, ImmutableList.<Object>of(1), mockCachedData());
+		
+		cacheManager.setTableRefreshPolicy("table2", RefreshPolicy.of(0, 0, TimeUnit.SECONDS));
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.<Object>of(1))).isNotNull();
+		
+		cacheManager.setTableRefreshPolicy("table1", RefreshPolicy.of(0, 0, TimeUnit.SECONDS));
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.<Object>of(1))).isNull();
+	}
+	
+	@Test
+	public void should_refresh_a_query_result_ahead_once_it_is_hot() {
+		CacheManager cacheManager = new CacheManager(mockCacheProvider(), 10, TimeUnit.SECONDS, sameThreadExecutor());
+		QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		cacheManager.setQueryRefreshPolicy(template, RefreshPolicy.of(1, 1, TimeUnit.DAYS).withRefreshAhead(1, TimeUnit.DAYS, 2));
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.of(), mockCachedData());
+		CountingRefresher refresher = new CountingRefresher();
+		
+		cacheManager.getCachedDataIfPresent(template, ImmutableList.of(), refresher);
+		assertThat(refresher.count).isEqualTo(0);
+		
+		cacheManager.getCachedDataIfPresent(template, ImmutableList.of(), refresher);
+		assertThat(refresher.count).isEqualTo(1);
+	}
+	
+	@Test
+	public void should_not_refresh_a_query_result_when_too_many_refreshes_are_running() {
+		CacheManager cacheManager = new CacheManager(mockCacheProvider(), 10, TimeUnit.SECONDS, sameThreadExecutor());
+		cacheManager.setMaxConcurrentRefreshes(0);
+		QueryTemplate template = cacheManager.template("SELECT * FROM table");
+		cacheManager.setQueryRefreshPolicy(template, RefreshPolicy.of(0, 1, TimeUnit.DAYS));
+		CachedData staleData = mockCachedData();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.of(), staleData);
+		CountingRefresher refresher = new CountingRefresher();
+		
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.of(), refresher)).isSameAs(staleData);
+		assertThat(refresher.count).isEqualTo(0);
+		
+		cacheManager.setMaxConcurrentRefreshes(1);
+		cacheManager.getCachedDataIfPresent(template, ImmutableList.of(), refresher);
+		assertThat(refresher.count).isEqualTo(1);
+	}
 	
     // --------------------------------------------------------------------------------
     // XXX: clearByQuery(String query) testing
@@ -98,79 +369,408 @@ public class CacheManagerTest {
 	public void testJoinParameters() {
 		CacheManager cacheManager = mockCacheManager();
 		
-		assertThat(cacheManager.joinParameters(ImmutableList.<Object>of("a", "b"))).isEqualTo("[a, b]");
-		assertThat(cacheManager.joinParameters(ImmutableList.<Object>of())).isEqualTo("[]");
+		assertThat(cacheManager.joinParameters(ImmutableList.<Object>of("a", "b"))).isEqualTo(ParametersKey.of(ImmutableList.<Object>of("a", "b")));
+		assertThat(cacheManager.joinParameters(ImmutableList.<Object>of())).isEqualTo(ParametersKey.of(ImmutableList.<Object>of()));
+		assertThat(cacheManager.joinParameters(ImmutableList.<Object>of(1))).isNotEqualTo(cacheManager.joinParameters(ImmutableList.<Object>of("1")));
+	}
+	
+	@Test
+	public void should_use_string_keys_for_a_cache_that_does_not_implement_query_cache() {
+		final DefaultCache stringKeyedCache = new DefaultCache();
+		CacheManager cacheManager = new CacheManager(new CacheProvider() {
+			@Override
+			public Cache tableIndex() {
+				return new DefaultCache();
+			}
+			
+			@Override
+			public Cache fetchByQuery(String query) {
+				return new Cache() {
+					@Override
+					public Serializable put(String key, Serializable value) {
+						return stringKeyedCache.put(key, value);
+					}
+					
+					@Override
+					public Serializable get(String key) {
+						return stringKeyedCache.get(key);
+					}
+					
+					@Override
+					public void clear() {
+						stringKeyedCache.clear();
+					}
+				};
+			}
+		});
+		CachedData mockCachedData = mockCachedData();
+		
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT * FROM table WHERE a = ?", ImmutableList.<Object>of(1), mockCachedData);
+		
+		assertThat(((CacheEntry) stringKeyedCache.get("[java.lang.Integer:1:1]")).getCachedData()).isSameAs(mockCachedData);
+		assertThat(cacheManager.getCachedDataIfPresent("SELECT * FROM table WHERE a = ?", ImmutableList.<Object>of(1))).isSameAs(mockCachedData);
+		assertThat(cacheManager.getCachedDataIfPresent("SELECT * FROM table WHERE a = ?", ImmutableList.<Object>of("1"))).isNull();
+	}
+	
+    // --------------------------------------------------------------------------------
+    // XXX: template(String query) testing
+    // --------------------------------------------------------------------------------
+	
+	@Test
+	public void check_that_a_template_is_created_only_once_for_a_query() {
+		CacheManager cacheManager = mockCacheManager();
+		
+		assertThat(cacheManager.template("SELECT * FROM table")).isSameAs(cacheManager.template(new String("SELECT * FROM table")));
+		assertThat(cacheManager.template("SELECT * FROM table").getId()).isNotEqualTo(cacheManager.template("SELECT * FROM table2").getId());
+	}
+	
+	@Test
+	public void check_that_the_least_recently_used_templates_are_evicted_unless_they_are_pinned() {
+		QueryTemplateRegistry registry = new QueryTemplateRegistry(2);
+		QueryTemplate pinned = registry.intern("SELECT * FROM table0");
+		registry.pin(pinned);
+		QueryTemplate evicted = registry.intern("SELECT * FROM table1");
+		
+		for (int i = 2; i < 10; i++) {
+			registry.intern("SELECT * FROM table" + i);
+		}
+		
+		assertThat(registry.intern("SELECT * FROM table0")).isSameAs(pinned);
+		assertThat(registry.intern("SELECT * FROM table1")).isNotSameAs(evicted);
+		assertThat(registry.templates().size()).isEqualTo(3);
+	}
+	
+	@Test
+	public void check_that_the_referenced_tables_of_a_template_are_set_only_once() {
+		CacheManager cacheManager = mockCacheManager();
+		QueryTemplate template = cacheManager.template("SELECT * FROM table1 WHERE id = ?");
+		assertThat(template.hasReferencedTables()).isFalse();
+		
+		template.setReferencedTables(ImmutableSet.of("table1"), "id");
+		template.setReferencedTables(ImmutableSet.of("table2"), null);
+		
+		assertThat(cacheManager.template("SELECT * FROM table1 WHERE id = ?").hasReferencedTables()).isTrue();
+		assertThat(template.getReferencedTables()).isEqualTo(ImmutableSet.of("table1"));
+		assertThat(template.getPrimaryKeyColumn()).isEqualTo("id");
 	}
 	
     // --------------------------------------------------------------------------------
-    // XXX: tableIndex() and fetchByQuery(String query) testing
+    // XXX: fetchByQuery(String query) testing
     // --------------------------------------------------------------------------------
 	
 	@Test
 	public void check_that_a_cache_is_created_only_once_for_a_cacheManager() {
 		CacheManager cacheManager = mockCacheManager();
 		assertThat(cacheManager.fetchByQuery("SELECT * FROM table")).isSameAs(cacheManager.fetchByQuery("SELECT * FROM table"));
-		assertThat(cacheManager.tableIndex()).isSameAs(cacheManager.tableIndex());
 	}
 
     // --------------------------------------------------------------------------------
-    // XXX: index(Cache tableIndexes, Set<String> referencedTables, String query) testing
+    // XXX: TableVersions testing
+    // --------------------------------------------------------------------------------
+	
+	@Test
+	public void check_that_the_version_of_tables_changes_when_one_of_the_tables_is_incremented() {
+		TableVersions tableVersions = new TableVersions();
+		TableVersion[] tables = tableVersions.tables(ImmutableSet.of("table1", "table2"));
+		long version = tableVersions.version(ImmutableSet.of("table1", "table2"));
+		
+		tableVersions.table("table2").increment();
+		tableVersions.table("table3").increment();
+		tableVersions.table("table1").incrementRows(ImmutableList.of(1L));
+		
+		assertThat(tableVersions.version(ImmutableSet.of("table1", "table2"))).isEqualTo(version + 2);
+		assertThat(TableVersions.version(tables)).isEqualTo(version + 2);
+		assertThat(tableVersions.version(ImmutableSet.of("table2"))).isEqualTo(version + 1);
+	}
+	
+	@Test
+	public void check_that_concurrent_increments_are_not_lost() throws Exception {
+		final TableVersions tableVersions = new TableVersions();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						tableVersions.table("table").increment();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		assertThat(tableVersions.version(ImmutableSet.of("table"))).isEqualTo(4000L);
+	}
+	
+	@Test
+	public void check_that_integer_primary_keys_are_in_the_same_stripe_whatever_their_type() {
+		assertThat(TableVersion.stripe(42)).isEqualTo(TableVersion.stripe(42L));
+		assertThat(TableVersion.stripe(new BigDecimal(42))).isEqualTo(TableVersion.stripe(42L));
+		assertThat(TableVersion.stripe(BigInteger.valueOf(42))).isEqualTo(TableVersion.stripe((short) 42));
+	}
+	
+    // --------------------------------------------------------------------------------
+    // XXX: clearByRows(String tableName, Collection<?> primaryKeys) testing
     // --------------------------------------------------------------------------------
 	
-	@SuppressWarnings("unchecked")
 	@Test
-	public void testIndex() {
+	public void should_clear_only_the_query_results_containing_the_rows() {
+		CacheManager cacheManager = mockCacheManager();
+		QueryTemplate template = cacheManager.template("SELECT id, name FROM table WHERE id = ?");
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of(1), mockRow(1), 0, "id");
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of(2), mockRow(2), 0, "ID");
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT name FROM table WHERE name = ?", ImmutableList.<Object>of("a"), mockCachedData());
+		
+		cacheManager.clearByRows("table", ImmutableList.of(1L));
+		
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.<Object>of(1))).isNull();
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.<Object>of(2))).isNotNull();
+		assertThat(cacheManager.getCachedDataIfPresent("SELECT name FROM table WHERE name = ?", ImmutableList.<Object>of("a"))).isNull();
+	}
+	
+	@Test
+	public void should_clear_the_query_results_containing_the_rows_if_the_table_is_cleared() {
+		CacheManager cacheManager = mockCacheManager();
+		QueryTemplate template = cacheManager.template("SELECT id, name FROM table WHERE id = ?");
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of(2), mockRow(2), 0, "id");
+		
+		cacheManager.clearByTable("table");
+		
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.<Object>of(2))).isNull();
+	}
+	
+	@Test
+	public void should_not_cache_a_query_result_if_a_row_of_the_table_has_been_cleared_during_the_read() {
 		CacheManager cacheManager = mockCacheManager();
-		DefaultCache cache = new DefaultCache();
+		QueryTemplate template = cacheManager.template("SELECT id, name FROM table WHERE id = ?");
+		long tablesVersion = cacheManager.tablesVersion(ImmutableSet.of("table"));
 		
-		cacheManager.index(cache, ImmutableSet.of("table1", "table2"), "SELECT * FROM table WHERE a = ?");
+		cacheManager.clearByRows("table", ImmutableList.of(3L));
 		
-		assertThat((Set<String>) cache.get("table1")).isEqualTo(ImmutableSet.of("SELECT * FROM table WHERE a = ?"));
-		assertThat((Set<String>) cache.get("table2")).isEqualTo(ImmutableSet.of("SELECT * FROM table WHERE a = ?"));
+		assertThat(cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of(2), mockRow(2), tablesVersion, "id")).isFalse();
+	}
+	
+	@Test
+	public void should_not_cache_a_query_result_read_before_a_concurrent_row_invalidation() {
+		final CacheManager cacheManager = mockCacheManager();
+		final QueryTemplate template = cacheManager.template("SELECT id, name FROM table WHERE id = ?");
+		final AtomicReference<Boolean> cached = new AtomicReference<Boolean>();
+		// the result is read before the row is updated, and stored while the invalidation of the row is in progress
+		Collection<Object> primaryKeys = new AbstractCollection<Object>() {
+			@Override
+			public int size() {
+				return 1;
+			}
+			
+			@Override
+			public Iterator<Object> iterator() {
+				return new AbstractIterator<Object>() {
+					private int next = 0;
+					
+					@Override
+					protected Object computeNext() {
+						if (next == 1) {
+							cached.set(cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of(1), mockRow(1), 0, "id"));
+						}
+						return next++ == 0 ? Integer.valueOf(1) : endOfData();
+					}
+				};
+			}
+		};
+		
+		cacheManager.clearByRows("table", primaryKeys);
+		
+		assertThat(cached.get()).isFalse();
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.<Object>of(1))).isNull();
 	}
 	
     // --------------------------------------------------------------------------------
-    // XXX: index(Cache tableIndexes, String tableReferenceName, String query) testing
+    // XXX: setResultDeduplication(boolean deduplication) testing
     // --------------------------------------------------------------------------------
 	
 	@Test
-	public void check_that_index_values_are_actually_sets() {
+	public void should_share_the_identical_query_results() {
 		CacheManager cacheManager = mockCacheManager();
-		DefaultCache cache = new DefaultCache();
+		cacheManager.setResultDeduplication(true);
+		QueryTemplate template = cacheManager.template("SELECT id, name FROM table WHERE name = ?");
+		CachedData first = mockRow(1);
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of("a"), first);
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of("b"), mockRow(1));
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of("c"), mockRow(2));
+		
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.<Object>of("b"))).isSameAs(first);
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.<Object>of("c"))).isNotSameAs(first);
+		assertThat(cacheManager.getStatistics().getDeduplicatedResults()).isEqualTo(1L);
+		assertThat(cacheManager.getStatistics().getDeduplicatedBytes()).isEqualTo(first.estimateSize());
+	}
+	
+	@Test
+	public void should_cache_the_records_of_a_query_result_replaced_by_an_identical_result() {
+		CacheManager cacheManager = mockCacheManager();
+		cacheManager.setResultDeduplication(true);
+		QueryTemplate template = cacheManager.template("SELECT id, name FROM table WHERE name = ?");
+		CachedData read = mockRow(1);
+		Object records = new Object();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of("a"), mockRow(1));
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of("b"), read);
+		
+		cacheManager.cacheRecords(template, ImmutableList.<Object>of("b"), read, String.class, records);
 		
-		cacheManager.index(cache, "table", "SELECT * FROM table");
+		assertThat(cacheManager.getCachedRecordsIfPresent(template, ImmutableList.<Object>of("b"), String.class)).isSameAs(records);
+	}
+	
+	@Test
+	public void should_not_share_the_query_results_without_deduplication() {
+		CacheManager cacheManager = mockCacheManager();
+		QueryTemplate template = cacheManager.template("SELECT id, name FROM table WHERE name = ?");
+		CachedData first = mockRow(1);
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of("a"), first);
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of("b"), mockRow(1));
 		
-		assertThat(cache.get("table")).isInstanceOf(Set.class);
+		assertThat(cacheManager.getCachedDataIfPresent(template, ImmutableList.<Object>of("b"))).isNotSameAs(first);
+		assertThat(cacheManager.getStatistics().getDeduplicatedResults()).isEqualTo(0L);
 	}
 	
-	@SuppressWarnings("unchecked")
+    // --------------------------------------------------------------------------------
+    // XXX: saveSnapshot(File file) and loadSnapshot(File file, long maxAge, TimeUnit unit) testing
+    // --------------------------------------------------------------------------------
+	
 	@Test
-	public void check_that_index_add_both_an_entry_in_the_query_cache_and_in_the_table_index() {
+	public void should_restore_the_query_results_of_a_snapshot() throws Exception {
 		CacheManager cacheManager = mockCacheManager();
-		DefaultCache cache = new DefaultCache();
+		QueryTemplate template = cacheManager.template("SELECT id, name FROM table WHERE id = ?");
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of(1), mockRow(1), 0, "id");
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), template, ImmutableList.<Object>of(2), mockRow(2), 0, "id");
+		cacheManager.cacheQueryResult(ImmutableSet.of("other"), "SELECT * FROM other", ImmutableList.of(), mockCachedData());
+		cacheManager.clearByTable("other");
+		File file = snapshotFile();
 		
-		cacheManager.index(cache, "table", "SELECT * FROM table");
+		assertThat(cacheManager.saveSnapshot(file)).isEqualTo(2);
+		CacheManager restartedCacheManager = mockCacheManager();
+		assertThat(restartedCacheManager.loadSnapshot(file, 1, TimeUnit.HOURS)).isEqualTo(2);
 		
-		assertThat(cache.get("table")).isNotNull();
-		assertThat((Set<String>) cache.get("table")).isEqualTo(ImmutableSet.of("SELECT * FROM table"));
+		QueryTemplate restoredTemplate = restartedCacheManager.template("SELECT id, name FROM table WHERE id = ?");
+		assertThat(restartedCacheManager.getCachedDataIfPresent(restoredTemplate, ImmutableList.<Object>of(2)).getValue(0, 2)).isEqualTo("name2");
+		assertThat(restartedCacheManager.getCachedDataIfPresent("SELECT * FROM other", ImmutableList.of())).isNull();
+		restartedCacheManager.clearByRows("table", ImmutableList.of(1));
+		assertThat(restartedCacheManager.getCachedDataIfPresent(restoredTemplate, ImmutableList.<Object>of(1))).isNull();
+		assertThat(restartedCacheManager.getCachedDataIfPresent(restoredTemplate, ImmutableList.<Object>of(2))).isNotNull();
 	}
 	
-	@SuppressWarnings("unchecked")
 	@Test
-	public void check_that_index_use_the_existing_index_if_it_exists() {
+	public void should_save_a_snapshot_of_query_caches_sharing_a_store() throws Exception {
+		CacheManager cacheManager = new CacheManager(new SharedCacheProvider());
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT id, name FROM table WHERE id = ?", ImmutableList.<Object>of(1), mockRow(1));
+		cacheManager.cacheQueryResult(ImmutableSet.of("other"), "SELECT id, name FROM other WHERE id = ?", ImmutableList.<Object>of(2), mockRow(2));
+		cacheManager.cacheQueryResult(ImmutableSet.of("cleared"), "SELECT * FROM cleared", ImmutableList.of(), mockCachedData());
+		cacheManager.clearByTable("cleared");
+		File file = snapshotFile();
+		
+		assertThat(cacheManager.saveSnapshot(file)).isEqualTo(2);
+		CacheManager restartedCacheManager = mockCacheManager();
+		assertThat(restartedCacheManager.loadSnapshot(file, 1, TimeUnit.HOURS)).isEqualTo(2);
+		
+		assertThat(restartedCacheManager.getCachedDataIfPresent("SELECT id, name FROM table WHERE id = ?", ImmutableList.<Object>of(1)).getValue(0, 2)).isEqualTo("name1");
+		assertThat(restartedCacheManager.getCachedDataIfPresent("SELECT id, name FROM other WHERE id = ?", ImmutableList.<Object>of(2)).getValue(0, 2)).isEqualTo("name2");
+	}
+	
+	@Test
+	public void should_not_restore_the_expired_query_results_of_a_snapshot() throws Exception {
 		CacheManager cacheManager = mockCacheManager();
-		DefaultCache cache = new DefaultCache();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT * FROM table", ImmutableList.of(), mockRow(1));
+		File file = snapshotFile();
+		cacheManager.saveSnapshot(file);
+		Thread.sleep(5);
 		
-		cacheManager.index(cache, "table", "SELECT * FROM table WHERE a = ?");
-		cacheManager.index(cache, "table", "SELECT * FROM table WHERE b = ?");
+		CacheManager restartedCacheManager = mockCacheManager();
+		restartedCacheManager.setTableRefreshPolicy("table", RefreshPolicy.of(1, 1, TimeUnit.MILLISECONDS));
 		
-		assertThat((Set<String>) cache.get("table")).isEqualTo(ImmutableSet.of("SELECT * FROM table WHERE a = ?", "SELECT * FROM table WHERE b = ?"));
+		assertThat(restartedCacheManager.loadSnapshot(file, 1, TimeUnit.HOURS)).isEqualTo(0);
+		assertThat(mockCacheManager().loadSnapshot(file, 1, TimeUnit.MILLISECONDS)).isEqualTo(0);
+		assertThat(mockCacheManager().loadSnapshot(file, 1, TimeUnit.HOURS)).isEqualTo(1);
+	}
+	
+	@Test
+	public void should_not_restore_a_corrupted_snapshot() throws Exception {
+		CacheManager cacheManager = mockCacheManager();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT * FROM table", ImmutableList.of(), mockRow(1));
+		File file = snapshotFile();
+		cacheManager.saveSnapshot(file);
+		RandomAccessFile corruptedFile = new RandomAccessFile(file, "rw");
+		corruptedFile.seek(file.length() - 6);
+		corruptedFile.write(0x7F);
+		corruptedFile.close();
+		
+		CacheManager restartedCacheManager = mockCacheManager();
+		try {
+			restartedCacheManager.loadSnapshot(file, 1, TimeUnit.HOURS);
+			assertThat(false).isTrue();
+		} catch (IOException e) {
+			// expected
+		}
+		assertThat(restartedCacheManager.getCachedDataIfPresent("SELECT * FROM table", ImmutableList.of())).isNull();
+	}
+	
+	@Test
+	public void should_reject_a_snapshot_with_a_corrupted_length_before_parsing_it() throws Exception {
+		CacheManager cacheManager = mockCacheManager();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT * FROM table", ImmutableList.of(), mockRow(1));
+		File file = snapshotFile();
+		cacheManager.saveSnapshot(file);
+		RandomAccessFile corruptedFile = new RandomAccessFile(file, "rw");
+		// the length of the first query: magic, version, timestamp and record type come first
+		corruptedFile.seek(14);
+		corruptedFile.write(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F });
+		corruptedFile.close();
+		
+		try {
+			mockCacheManager().loadSnapshot(file, 1, TimeUnit.HOURS);
+			assertThat(false).isTrue();
+		} catch (IOException e) {
+			assertThat(e.getMessage().contains("corrupted")).isTrue();
+		}
+	}
+	
+	@Test
+	public void should_delete_the_temporary_file_if_a_snapshot_cannot_be_saved() throws Exception {
+		CacheManager cacheManager = mockCacheManager();
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT * FROM table", ImmutableList.of(), mockRow(1));
+		// a directory that is not empty cannot be replaced by the snapshot
+		File directory = snapshotFile();
+		directory.delete();
+		directory.mkdir();
+		File child = new File(directory, "child");
+		child.createNewFile();
+		
+		try {
+			cacheManager.saveSnapshot(directory);
+			assertThat(false).isTrue();
+		} catch (IOException e) {
+			// expected
+		} finally {
+			child.delete();
+			directory.delete();
+		}
+		assertThat(new File(directory.getPath() + ".tmp").exists()).isFalse();
 	}
 	
 	// utils
 	
+	private File snapshotFile() throws IOException {
+		File file = File.createTempFile("jooq-cache", ".snapshot");
+		file.deleteOnExit();
+		return file;
+	}
+	
 	private CacheManager mockCacheManager() {
-		CacheProvider cacheProvider = new CacheProvider() {
+		return new CacheManager(mockCacheProvider());
+	}
+	
+	private CacheProvider mockCacheProvider() {
+		return new CacheProvider() {
 			@Override
 			public Cache tableIndex() {
 				return new DefaultCache();
@@ -181,7 +781,29 @@ public class CacheManagerTest {
 				return new DefaultCache();
 			}
 		};
-		return new CacheManager(cacheProvider);
+	}
+	
+	private Executor sameThreadExecutor() {
+		return new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		};
+	}
+	
+	private static class CountingRefresher implements CacheRefresher {
+		private int count = 0;
+		
+		@Override
+		public CachedData refresh(QueryTemplate template, List<?> bindValues, CachedData staleData, CaptureLimits captureLimits) {
+			count++;
+			return staleData;
+		}
+	}
+	
+	private CachedData mockRow(int id) {
+		return new CachedData(ImmutableList.<Object[]>of(new Object[] { id, "name" + id }), ImmutableMap.of("ID", 1, "NAME", 2), ImmutableList.<ColumnInfo>of());
 	}
 	
 	private CachedData mockCachedData() {
@@ -2,8 +2,13 @@ package org.jooq.cache;
 
 import static org.fest.assertions.Assertions.assertThat;
 
+import java.io.Serializable;
+import java.util.Map;
+
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
 public abstract class CacheTester {
 	
 	@Test
@@ -46,6 +51,26 @@ public abstract class CacheTester {
 		assertThat(cache.get("key_bis")).isNull();
 	}
 	
+	@Test
+	public void should_list_the_entries_of_the_current_query_results() {
+		Cache cache = cacheImplementation();
+		if (!(cache instanceof EnumerableQueryCache)) {
+			return;
+		}
+		EnumerableQueryCache queryCache = (EnumerableQueryCache) cache;
+		ParametersKey key = ParametersKey.of(ImmutableList.<Object>of(1));
+		ParametersKey keyBis = ParametersKey.of(ImmutableList.<Object>of(2));
+		
+		queryCache.put(key, "content");
+		queryCache.clear();
+		queryCache.put(keyBis, "content_bis");
+		cache.put("key", "content");
+		Map<ParametersKey, Serializable> entries = queryCache.entries();
+		
+		assertThat(entries.size()).isEqualTo(1);
+		assertThat(entries.get(keyBis)).isEqualTo("content_bis");
+	}
+	
 	abstract protected Cache cacheImplementation();
 
 }
@@ -0,0 +1,59 @@
+package org.jooq.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jooq.cache.impl.DefaultCache;
+import org.jooq.cache.impl.FrequencyAdmissionPolicy;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class FrequencyAdmissionPolicyTest {
+
+	@Test
+	public void should_admit_a_query_result_once_it_has_been_requested_twice() {
+		CacheManager cacheManager = mockCacheManager();
+		cacheManager.setAdmissionPolicy(new FrequencyAdmissionPolicy());
+		QueryTemplate template = cacheManager.template("SELECT * FROM table WHERE id = ?");
+		
+		assertThat(cacheManager.admit(template, ImmutableList.<Object>of(1), 0)).isFalse();
+		assertThat(cacheManager.admit(template, ImmutableList.<Object>of(2), 0)).isFalse();
+		assertThat(cacheManager.admit(template, ImmutableList.<Object>of(1), 0)).isTrue();
+	}
+	
+	@Test
+	public void should_admit_an_expensive_query_result_whatever_its_frequency() {
+		CacheManager cacheManager = mockCacheManager();
+		cacheManager.setAdmissionPolicy(new FrequencyAdmissionPolicy(3, 100, TimeUnit.MILLISECONDS, 1024));
+		QueryTemplate template = cacheManager.template("SELECT * FROM table WHERE id = ?");
+		
+		assertThat(cacheManager.admit(template, ImmutableList.<Object>of(1), TimeUnit.MILLISECONDS.toNanos(10))).isFalse();
+		assertThat(cacheManager.admit(template, ImmutableList.<Object>of(2), TimeUnit.MILLISECONDS.toNanos(200))).isTrue();
+	}
+	
+	@Test
+	public void should_admit_all_query_results_without_admission_policy() {
+		CacheManager cacheManager = mockCacheManager();
+		
+		assertThat(cacheManager.admit(cacheManager.template("SELECT * FROM table"), ImmutableList.of(), 0)).isTrue();
+	}
+	
+	// utils
+	
+	private CacheManager mockCacheManager() {
+		return new CacheManager(new CacheProvider() {
+			@Override
+			public Cache tableIndex() {
+				return new DefaultCache();
+			}
+			
+			@Override
+			public Cache fetchByQuery(String query) {
+				return new DefaultCache();
+			}
+		});
+	}
+
+}
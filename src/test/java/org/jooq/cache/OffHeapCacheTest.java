@@ -0,0 +1,134 @@
+package org.jooq.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.jooq.cache.impl.OffHeapCacheProvider;
+import org.jooq.cache.jdbc.CachedData;
+import org.jooq.cache.jdbc.ColumnInfo;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class OffHeapCacheTest extends CacheTester {
+
+	@Override
+	protected Cache cacheImplementation() {
+		return new OffHeapCacheProvider(1024, 4).fetchByQuery("SELECT * FROM table");
+	}
+	
+	@Test
+	public void should_read_a_copy_of_a_cached_query_result() {
+		QueryCache cache = (QueryCache) new OffHeapCacheProvider(64 * 1024, 2, 0).fetchByQuery("SELECT * FROM table");
+		CachedData cachedData = new CachedData(
+			ImmutableList.<Object[]>of(new Object[] { 1, "name" }),
+			ImmutableMap.of("ID", 1, "NAME", 2),
+			ImmutableList.of(new ColumnInfo(10, 0, "ID", "INTEGER"), new ColumnInfo(50, 0, "NAME", "VARCHAR"))
+		);
+		ParametersKey key = ParametersKey.of(ImmutableList.<Object>of(1));
+		
+		cache.put(key, cachedData);
+		CachedData read = (CachedData) cache.get(key);
+		
+		assertThat(read).isNotSameAs(cachedData);
+		assertThat(read.getRowCount()).isEqualTo(1);
+		assertThat(read.getValue(0, 2)).isEqualTo("name");
+		assertThat(read.findColumn("id")).isEqualTo(1);
+	}
+	
+	@Test
+	public void should_keep_the_versions_of_a_cache_entry() {
+		QueryCache cache = (QueryCache) new OffHeapCacheProvider(64 * 1024, 2, 0).fetchByQuery("SELECT * FROM table");
+		CachedData cachedData = new CachedData(
+			ImmutableList.<Object[]>of(new Object[] { 1L }),
+			ImmutableMap.of("ID", 1),
+			ImmutableList.of(new ColumnInfo(19, 0, "ID", "BIGINT"))
+		);
+		CacheEntry entry = new CacheEntry(cachedData, 3, new int[] { 5, 1023 }, 7);
+		ParametersKey key = ParametersKey.of(ImmutableList.<Object>of(1));
+		
+		cache.put(key, entry);
+		CacheEntry read = (CacheEntry) cache.get(key);
+		
+		assertThat(read.getCachedAt()).isEqualTo(entry.getCachedAt());
+		assertThat(read.getTablesVersion()).isEqualTo(3L);
+		assertThat(Arrays.equals(read.getRowStripes(), new int[] { 5, 1023 })).isTrue();
+		assertThat(read.getRowsVersion()).isEqualTo(7L);
+		assertThat(read.getCachedData().getValue(0, 1)).isEqualTo(1L);
+	}
+	
+	@Test
+	public void should_list_the_entries_of_all_queries_grouped_by_query() {
+		OffHeapCacheProvider cacheProvider = new OffHeapCacheProvider(64 * 1024, 2);
+		QueryCache cache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table1");
+		QueryCache otherCache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table2");
+		ParametersKey key = ParametersKey.of(ImmutableList.<Object>of(1));
+		ParametersKey keyBis = ParametersKey.of(ImmutableList.<Object>of(2));
+		
+		cache.put(key, "content");
+		cache.clear();
+		cache.put(keyBis, "content_bis");
+		otherCache.put(key, "other_content");
+		Map<QueryCache, Map<ParametersKey, Serializable>> entries = cacheProvider.entries();
+		
+		assertThat(entries.size()).isEqualTo(2);
+		assertThat(entries.get(cache)).isEqualTo(ImmutableMap.of(keyBis, "content_bis"));
+		assertThat(entries.get(otherCache)).isEqualTo(ImmutableMap.of(key, "other_content"));
+	}
+	
+	@Test
+	public void should_keep_the_query_results_read_recently_decoded_on_the_heap() {
+		OffHeapCacheProvider cacheProvider = new OffHeapCacheProvider(64 * 1024, 2);
+		QueryCache cache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table");
+		CacheEntry entry = new CacheEntry(new CachedData(ImmutableList.<Object[]>of(new Object[] { 1L }), ImmutableMap.of("ID", 1), ImmutableList.of(new ColumnInfo(19, 0, "ID", "BIGINT"))), 0);
+		ParametersKey key = ParametersKey.of(ImmutableList.<Object>of(1));
+		
+		cache.put(key, entry);
+		entry.hit();
+		CacheEntry read = (CacheEntry) cache.get(key);
+		
+		assertThat(read).isSameAs(entry);
+		assertThat(read.hit()).isEqualTo(2);
+	}
+	
+	@Test
+	public void should_list_the_query_results_decoded_on_the_heap_without_decoding_them_again() {
+		OffHeapCacheProvider cacheProvider = new OffHeapCacheProvider(64 * 1024, 2);
+		QueryCache cache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table");
+		CacheEntry entry = new CacheEntry(new CachedData(ImmutableList.<Object[]>of(new Object[] { 1L }), ImmutableMap.of("ID", 1), ImmutableList.of(new ColumnInfo(19, 0, "ID", "BIGINT"))), 0);
+		ParametersKey key = ParametersKey.of(ImmutableList.<Object>of(1));
+		
+		cache.put(key, entry);
+		
+		assertThat(cacheProvider.entries().get(cache).get(key)).isSameAs(entry);
+		assertThat(((EnumerableQueryCache) cache).entries().get(key)).isSameAs(entry);
+	}
+	
+	@Test
+	public void should_evict_the_oldest_slab_when_the_store_is_full() {
+		OffHeapCacheProvider cacheProvider = new OffHeapCacheProvider(1024, 2);
+		Cache cache = cacheProvider.fetchByQuery("SELECT * FROM table");
+		
+		for (int i = 0; i < 1000; i++) {
+			cache.put("key" + i, "content" + i);
+		}
+		
+		assertThat(cache.get("key0")).isNull();
+		assertThat(cache.get("key999")).isEqualTo("content999");
+		assertThat(cacheProvider.size()).isLessThan(1000);
+	}
+	
+	@Test
+	public void should_not_cache_a_value_larger_than_a_slab() {
+		Cache cache = new OffHeapCacheProvider(64, 2).fetchByQuery("SELECT * FROM table");
+		
+		cache.put("key", "a content that is larger than a slab once it is serialized");
+		
+		assertThat(cache.get("key")).isNull();
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.jooq.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class ParametersKeyTest {
+
+	@Test
+	public void should_be_equal_if_parameters_have_the_same_types_and_values() {
+		ParametersKey key = ParametersKey.of(ImmutableList.<Object>of("a", 1, 2L));
+		ParametersKey sameKey = ParametersKey.of(ImmutableList.<Object>of("a", 1, 2L));
+		
+		assertThat(key).isEqualTo(sameKey);
+		assertThat(key.hashCode()).isEqualTo(sameKey.hashCode());
+	}
+	
+	@Test
+	public void should_not_be_equal_if_parameters_have_different_types() {
+		assertThat(ParametersKey.of(ImmutableList.<Object>of(1))).isNotEqualTo(ParametersKey.of(ImmutableList.<Object>of("1")));
+		assertThat(ParametersKey.of(ImmutableList.<Object>of(1))).isNotEqualTo(ParametersKey.of(ImmutableList.<Object>of(1L)));
+	}
+	
+	@Test
+	public void should_not_be_equal_if_parameters_are_in_a_different_order() {
+		assertThat(ParametersKey.of(ImmutableList.<Object>of("a", "b"))).isNotEqualTo(ParametersKey.of(ImmutableList.<Object>of("b", "a")));
+	}
+	
+	@Test
+	public void should_compare_null_and_array_parameters_by_value() {
+		ParametersKey key = ParametersKey.of(Arrays.<Object>asList(null, new byte[] { 1, 2 }));
+		ParametersKey sameKey = ParametersKey.of(Arrays.<Object>asList(null, new byte[] { 1, 2 }));
+		
+		assertThat(key).isEqualTo(sameKey);
+		assertThat(key.hashCode()).isEqualTo(sameKey.hashCode());
+		assertThat(key).isNotEqualTo(ParametersKey.of(Arrays.<Object>asList(null, new byte[] { 1, 3 })));
+	}
+	
+	@Test
+	public void should_represent_parameters_with_their_types() {
+		assertThat(ParametersKey.of(ImmutableList.<Object>of()).toString()).isEqualTo("[]");
+		assertThat(ParametersKey.of(Arrays.<Object>asList(1, "1", null)).toString()).isEqualTo("[java.lang.Integer:1, java.lang.String:1, null]");
+	}
+	
+	@Test
+	public void should_build_distinct_cache_keys_for_values_containing_the_separators() {
+		ParametersKey oneValue = ParametersKey.of(ImmutableList.<Object>of("a, java.lang.String:b"));
+		ParametersKey twoValues = ParametersKey.of(ImmutableList.<Object>of("a", "b"));
+		
+		assertThat(oneValue.toString()).isEqualTo(twoValues.toString());
+		assertThat(oneValue.toCacheKey()).isNotEqualTo(twoValues.toCacheKey());
+		assertThat(twoValues.toCacheKey()).isEqualTo("[java.lang.String:1:a, java.lang.String:1:b]");
+	}
+	
+	@Test
+	public void should_be_equal_after_serialization() throws Exception {
+		ParametersKey key = ParametersKey.of(ImmutableList.<Object>of("a", 1));
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(key);
+		out.close();
+		Object deserialized = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		
+		assertThat(deserialized).isEqualTo(key);
+		assertThat(deserialized.hashCode()).isEqualTo(key.hashCode());
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.jooq.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jooq.cache.impl.SharedCacheProvider;
+import org.jooq.cache.jdbc.CachedData;
+import org.jooq.cache.jdbc.ColumnInfo;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class SharedCacheTest extends CacheTester {
+
+	@Override
+	protected Cache cacheImplementation() {
+		return new SharedCacheProvider().fetchByQuery("SELECT * FROM table");
+	}
+	
+	@Test
+	public void should_not_share_entries_between_queries() {
+		SharedCacheProvider cacheProvider = new SharedCacheProvider();
+		Cache cache = cacheProvider.fetchByQuery("SELECT * FROM table1");
+		Cache otherCache = cacheProvider.fetchByQuery("SELECT * FROM table2");
+		
+		cache.put("key", "content");
+		otherCache.put("key", "other_content");
+		cache.clear();
+		
+		assertThat(cache.get("key")).isNull();
+		assertThat(otherCache.get("key")).isEqualTo("other_content");
+	}
+	
+	@Test
+	public void should_list_the_entries_of_all_queries_grouped_by_query() {
+		SharedCacheProvider cacheProvider = new SharedCacheProvider();
+		QueryCache cache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table1");
+		QueryCache otherCache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table2");
+		QueryCache clearedCache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table3");
+		ParametersKey key = ParametersKey.of(ImmutableList.<Object>of(1));
+		
+		cache.put(key, "content");
+		otherCache.put(key, "other_content");
+		clearedCache.put(key, "cleared_content");
+		clearedCache.clear();
+		((Cache) cache).put("key", "content");
+		Map<QueryCache, Map<ParametersKey, Serializable>> entries = cacheProvider.entries();
+		
+		assertThat(entries.size()).isEqualTo(2);
+		assertThat(entries.get(cache)).isEqualTo(ImmutableMap.of(key, "content"));
+		assertThat(entries.get(otherCache)).isEqualTo(ImmutableMap.of(key, "other_content"));
+	}
+	
+	@Test
+	public void should_bound_the_number_of_entries_for_all_queries() {
+		SharedCacheProvider cacheProvider = new SharedCacheProvider(10);
+		
+		for (int i = 0; i < 100; i++) {
+			cacheProvider.fetchByQuery("SELECT * FROM table" + i).put("key", "content");
+		}
+		
+		assertThat(cacheProvider.size()).isLessThanOrEqualTo(10);
+	}
+
+	@Test
+	public void should_bound_the_estimated_size_of_the_results_for_all_queries() {
+		SharedCacheProvider cacheProvider = SharedCacheProvider.withMemoryBudget(1000000);
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (int i = 0; i < 1000; i++) {
+			rows.add(new Object[] { "a string value " + i });
+		}
+		CachedData cachedData = new CachedData(rows, ImmutableMap.of("name", 1), Collections.<ColumnInfo>emptyList());
+		
+		for (int i = 0; i < 100; i++) {
+			cacheProvider.fetchByQuery("SELECT * FROM table" + i).put("key", cachedData);
+		}
+		
+		assertThat(cacheProvider.size()).isGreaterThan(0);
+		assertThat(cacheProvider.size() * cachedData.estimateSize()).isLessThanOrEqualTo(1000000);
+	}
+
+}
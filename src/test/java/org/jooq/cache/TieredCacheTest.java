@@ -0,0 +1,136 @@
+package org.jooq.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+
+import org.jooq.cache.impl.TieredCacheProvider;
+import org.jooq.cache.jdbc.CachedData;
+import org.jooq.cache.jdbc.ColumnInfo;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class TieredCacheTest extends CacheTester {
+
+	@Override
+	protected Cache cacheImplementation() {
+		return new TieredCacheProvider(temporaryDirectory(), 10, 4096, 4).fetchByQuery("SELECT * FROM table");
+	}
+	
+	@Test
+	public void should_read_the_entries_evicted_from_the_heap_on_the_disk() {
+		TieredCacheProvider cacheProvider = new TieredCacheProvider(temporaryDirectory(), 2, 64 * 1024, 4);
+		QueryCache cache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table WHERE id = ?");
+		
+		for (int i = 0; i < 10; i++) {
+			cache.put(key(i), new CacheEntry(row(i), 0));
+		}
+		
+		assertThat(cacheProvider.diskSize()).isGreaterThan(0);
+		for (int i = 0; i < 10; i++) {
+			assertThat(((CacheEntry) cache.get(key(i))).getCachedData().getValue(0, 2)).isEqualTo("name" + i);
+		}
+		cacheProvider.close();
+	}
+	
+	@Test
+	public void should_not_read_the_entries_of_a_cleared_cache_on_the_disk() {
+		TieredCacheProvider cacheProvider = new TieredCacheProvider(temporaryDirectory(), 1, 64 * 1024, 4);
+		QueryCache cache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table WHERE id = ?");
+		cache.put(key(1), new CacheEntry(row(1), 0));
+		cache.put(key(2), new CacheEntry(row(2), 0));
+		
+		cache.clear();
+		
+		assertThat(cache.get(key(1))).isNull();
+		assertThat(cache.get(key(2))).isNull();
+		cacheProvider.close();
+	}
+	
+	@Test
+	public void should_list_the_entries_of_the_heap_and_the_disk_grouped_by_query() {
+		TieredCacheProvider cacheProvider = new TieredCacheProvider(temporaryDirectory(), 1, 64 * 1024, 4);
+		QueryCache cache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table1 WHERE id = ?");
+		QueryCache otherCache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table2 WHERE id = ?");
+		cache.put(key(1), new CacheEntry(row(1), 0));
+		// the first entry is evicted to the disk
+		cache.put(key(2), new CacheEntry(row(2), 0));
+		otherCache.put(key(3), new CacheEntry(row(3), 0));
+		
+		Map<QueryCache, Map<ParametersKey, Serializable>> entries = cacheProvider.entries();
+		
+		assertThat(entries.size()).isEqualTo(2);
+		assertThat(entries.get(cache).keySet()).isEqualTo(ImmutableSet.of(key(1), key(2)));
+		assertThat(((CacheEntry) entries.get(cache).get(key(1))).getCachedData().getValue(0, 2)).isEqualTo("name1");
+		assertThat(entries.get(otherCache).keySet()).isEqualTo(ImmutableSet.of(key(3)));
+		cacheProvider.close();
+	}
+	
+	@Test
+	public void should_keep_only_the_entries_read_when_a_segment_is_compacted() {
+		TieredCacheProvider cacheProvider = new TieredCacheProvider(temporaryDirectory(), 1, 2048, 2);
+		Cache cache = cacheProvider.fetchByQuery("SELECT * FROM table");
+		cache.put("read", "content read");
+		cache.put("unread", "content never read");
+		cache.put("key0", "content");
+		// "read" is read from the disk then written again to the disk once it is evicted
+		assertThat(cache.get("read")).isEqualTo("content read");
+		
+		for (int i = 1; i < 1000; i++) {
+			cache.put("key" + i, "content");
+		}
+		
+		assertThat(cache.get("unread")).isNull();
+		assertThat(cache.get("key0")).isNull();
+		assertThat(cache.get("key998")).isEqualTo("content");
+		cacheProvider.close();
+	}
+	
+	@Test
+	public void should_keep_the_entries_looked_up_but_not_the_entries_listed_when_a_segment_is_compacted() {
+		TieredCacheProvider cacheProvider = new TieredCacheProvider(temporaryDirectory(), 1, 2048, 2);
+		QueryCache cache = (QueryCache) cacheProvider.fetchByQuery("SELECT * FROM table WHERE id = ?");
+		cache.put(key(1), "content read");
+		cache.put(key(2), "content listed");
+		cache.put(key(3), "content");
+		assertThat(cache.get(key(1))).isEqualTo("content read");
+		
+		int next = 4;
+		// the listing must not keep the entry when its segment is compacted
+		while (cacheProvider.entries().get(cache).containsKey(key(2)) && next < 10000) {
+			cache.put(key(next++), "content");
+		}
+		
+		assertThat(next).isLessThan(10000);
+		assertThat(cache.get(key(1))).isEqualTo("content read");
+		cacheProvider.close();
+	}
+	
+	// utils
+	
+	private static ParametersKey key(int id) {
+		return ParametersKey.of(ImmutableList.<Object>of(id));
+	}
+	
+	private static CachedData row(int id) {
+		return new CachedData(ImmutableList.<Object[]>of(new Object[] { id, "name" + id }), ImmutableMap.of("ID", 1, "NAME", 2), ImmutableList.of(new ColumnInfo(10, 0, "ID", "INTEGER"), new ColumnInfo(50, 0, "NAME", "VARCHAR")));
+	}
+	
+	private static File temporaryDirectory() {
+		try {
+			File directory = File.createTempFile("jooq-cache", "");
+			directory.delete();
+			directory.deleteOnExit();
+			return directory;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package org.jooq.cache.jdbc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jooq.ConnectionProvider;
+import org.jooq.cache.CacheLoad;
+import org.jooq.cache.CacheManager;
+import org.jooq.cache.impl.DefaultCacheProvider;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.CacheQueryInformation;
+import org.jooq.impl.CachedConnectionProvider;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class CachedConnectionTest {
+
+	@Test
+	public void should_not_acquire_a_connection_if_the_query_result_is_cached_and_the_autocommit_is_ignored() throws Exception {
+		CacheManager cacheManager = new CacheManager(new DefaultCacheProvider());
+		CachedData cachedData = new CachedData(ImmutableList.<Object[]>of(new Object[] { 1 }), ImmutableMap.of("id", 1), ImmutableList.<ColumnInfo>of());
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT id FROM table WHERE id = ?", ImmutableList.<Object>of(1), cachedData);
+		CacheQueryInformation queryInformation = new CacheQueryInformation("SELECT id FROM table WHERE id = ?", ImmutableList.<Object>of(1), cacheManager);
+		CachedConnectionProvider connectionProvider = new CachedConnectionProvider(new ConnectionProvider() {
+			@Override
+			public Connection acquire() throws DataAccessException {
+				throw new DataAccessException("no connection should be acquired");
+			}
+			
+			@Override
+			public void release(Connection connection) throws DataAccessException {
+				throw new DataAccessException("no connection should be released");
+			}
+		}, queryInformation, true, null);
+		
+		Connection connection = connectionProvider.acquire();
+		PreparedStatement statement = connection.prepareStatement("SELECT id FROM table WHERE id = ?");
+		statement.setInt(1, 1);
+		ResultSet resultSet = statement.executeQuery();
+		
+		assertThat(resultSet.next()).isTrue();
+		assertThat(resultSet.getInt(1)).isEqualTo(1);
+		assertThat(resultSet.next()).isFalse();
+		statement.close();
+		connectionProvider.release(connection);
+		assertThat(((CachedConnection) connection).isAcquired()).isFalse();
+		assertThat(queryInformation.getCachedData()).isSameAs(cachedData);
+	}
+
+	@Test
+	public void should_not_acquire_a_connection_while_waiting_for_a_query_result_read_by_another_thread() throws Exception {
+		CacheManager cacheManager = new CacheManager(new DefaultCacheProvider());
+		CachedData cachedData = new CachedData(ImmutableList.<Object[]>of(new Object[] { 1 }), ImmutableMap.of("id", 1), ImmutableList.<ColumnInfo>of());
+		CacheQueryInformation queryInformation = new CacheQueryInformation("SELECT id FROM table WHERE id = ?", ImmutableList.<Object>of(1), cacheManager);
+		CacheLoad load = cacheManager.load(queryInformation.getQueryTemplate(), ImmutableList.<Object>of(1));
+		final AtomicInteger acquired = new AtomicInteger();
+		final CachedConnectionProvider connectionProvider = new CachedConnectionProvider(new ConnectionProvider() {
+			@Override
+			public Connection acquire() throws DataAccessException {
+				acquired.incrementAndGet();
+				throw new DataAccessException("no connection should be acquired");
+			}
+			
+			@Override
+			public void release(Connection connection) throws DataAccessException {
+				throw new DataAccessException("no connection should be released");
+			}
+		}, queryInformation, true, null);
+		final AtomicReference<Connection> connection = new AtomicReference<Connection>();
+		Thread waitingThread = new Thread() {
+			@Override
+			public void run() {
+				connection.set(connectionProvider.acquire());
+			}
+		};
+		waitingThread.start();
+		while(waitingThread.getState() != Thread.State.WAITING && waitingThread.getState() != Thread.State.TIMED_WAITING) {
+			Thread.yield();
+		}
+		
+		assertThat(acquired.get()).isEqualTo(0);
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT id FROM table WHERE id = ?", ImmutableList.<Object>of(1), cachedData);
+		load.release(cachedData);
+		waitingThread.join();
+		
+		ResultSet resultSet = connection.get().prepareStatement("SELECT id FROM table WHERE id = ?").executeQuery();
+		assertThat(resultSet.next()).isTrue();
+		assertThat(resultSet.getInt(1)).isEqualTo(1);
+		connectionProvider.release(connection.get());
+		assertThat(acquired.get()).isEqualTo(0);
+	}
+
+	@Test
+	public void should_not_serve_a_cached_query_result_to_a_connection_that_is_not_set_to_autocommit() throws Exception {
+		CacheManager cacheManager = new CacheManager(new DefaultCacheProvider());
+		CachedData cachedData = new CachedData(ImmutableList.<Object[]>of(new Object[] { 1 }), ImmutableMap.of("id", 1), ImmutableList.<ColumnInfo>of());
+		cacheManager.cacheQueryResult(ImmutableSet.of("table"), "SELECT id FROM table WHERE id = ?", ImmutableList.<Object>of(1), cachedData);
+		CacheQueryInformation queryInformation = new CacheQueryInformation("SELECT id FROM table WHERE id = ?", ImmutableList.<Object>of(1), cacheManager);
+		ResultSet databaseResultSet = proxy(ResultSet.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				return null;
+			}
+		});
+		final Connection transactionConnection = mockConnection(false, databaseResultSet);
+		CachedConnectionProvider connectionProvider = new CachedConnectionProvider(new ConnectionProvider() {
+			@Override
+			public Connection acquire() throws DataAccessException {
+				return transactionConnection;
+			}
+			
+			@Override
+			public void release(Connection connection) throws DataAccessException {
+			}
+		}, queryInformation);
+		
+		Connection connection = connectionProvider.acquire();
+		ResultSet resultSet = connection.prepareStatement("SELECT id FROM table WHERE id = ?").executeQuery();
+		
+		assertThat(resultSet).isSameAs(databaseResultSet);
+		assertThat(((CachedConnection) connection).isAcquired()).isTrue();
+		assertThat(queryInformation.getCachedData()).isNull();
+	}
+	
+	// utils
+	
+	private static Connection mockConnection(final boolean autoCommit, final ResultSet resultSet) {
+		return proxy(Connection.class, new InvocationHandler() {
+			@Override
+			public Object invoke(final Object connection, Method method, Object[] args) throws Throwable {
+				if("getAutoCommit".equals(method.getName())) {
+					return autoCommit;
+				}
+				if("prepareStatement".equals(method.getName())) {
+					return proxy(PreparedStatement.class, new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							if("execute".equals(method.getName())) {
+								return true;
+							}
+							if("getConnection".equals(method.getName())) {
+								return connection;
+							}
+							return "getResultSet".equals(method.getName()) ? resultSet : null;
+						}
+					});
+				}
+				return null;
+			}
+		});
+	}
+	
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(CachedConnectionTest.class.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+
+}
@@ -0,0 +1,146 @@
+package org.jooq.cache.jdbc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class CachedDataCodecTest {
+
+	@Test
+	public void should_decode_the_columns_and_the_metadata_encoded() throws Exception {
+		ColumnBuilder ids = new ColumnBuilder();
+		ColumnBuilder amounts = new ColumnBuilder();
+		ColumnBuilder names = new ColumnBuilder();
+		for (int row = 0; row < 100; row++) {
+			ids.setLong(row, row - 50);
+			if (row % 7 == 0) {
+				ids.setNull(row);
+			}
+			amounts.setDouble(row, row / 4.0);
+			names.setObject(row, row % 5 == 0 ? null : "name" + row);
+		}
+		CachedData cachedData = new CachedData(
+			100,
+			new Column[] { ids.build(100), amounts.build(100), names.build(100) },
+			ImmutableMap.of("ID", 1, "AMOUNT", 2, "NAME", 3),
+			ImmutableList.of(new ColumnInfo(19, 0, "ID", "BIGINT"), new ColumnInfo(10, 2, "AMOUNT", "DOUBLE"), new ColumnInfo(50, 0, "NAME", null))
+		);
+		
+		CachedData decoded = CachedDataCodec.decode(CachedDataCodec.encode(cachedData));
+		
+		assertThat(decoded.getRowCount()).isEqualTo(100);
+		assertThat(decoded.getColumns()[0]).isInstanceOf(Column.LongColumn.class);
+		for (int row = 0; row < 100; row++) {
+			for (int column = 1; column <= 3; column++) {
+				assertThat(decoded.getValue(row, column)).isEqualTo(cachedData.getValue(row, column));
+			}
+		}
+		assertThat(decoded.findColumn("amount")).isEqualTo(2);
+		assertThat(decoded.getColumnInfos().get(1).getScale()).isEqualTo(2);
+		assertThat(decoded.getColumnInfos().get(2).getTypeName()).isNull();
+	}
+	
+	@Test
+	public void should_reject_a_corrupted_length_instead_of_allocating_it() throws Exception {
+		byte version = (byte) CachedDataCodec.VERSION;
+		// a negative row count, then a field count larger than the bytes left
+		for (byte[] corrupted : new byte[][] {
+			{ version, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 0 },
+			{ version, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0 }
+		}) {
+			try {
+				CachedDataCodec.decode(corrupted);
+				assertThat(false).isTrue();
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+	
+	@Test
+	public void should_decode_the_jdbc_objects_encoded() throws Exception {
+		Timestamp timestamp = new Timestamp(1234567890123L);
+		timestamp.setNanos(123456789);
+		Object[] row = new Object[] {
+			new BigDecimal("-12345678901234567890.123"), timestamp, new java.sql.Date(86400000L), new byte[] { 1, 2 },
+			Integer.MIN_VALUE, Long.MAX_VALUE, (short) -1, 1.5f, true, UUID.randomUUID()
+		};
+		CachedData cachedData = new CachedData(ImmutableList.of(row), ImmutableMap.<String, Integer>of(), null);
+		
+		CachedData decoded = CachedDataCodec.decode(CachedDataCodec.encode(cachedData));
+		
+		for (int column = 1; column <= row.length; column++) {
+			if (column != 4) {
+				assertThat(decoded.getValue(0, column)).isEqualTo(row[column - 1]);
+			}
+		}
+		assertThat(Arrays.equals((byte[]) decoded.getValue(0, 4), new byte[] { 1, 2 })).isTrue();
+		assertThat(decoded.getColumnInfos()).isNull();
+	}
+	
+	@Test
+	public void should_decode_a_dictionary_column() throws Exception {
+		ColumnBuilder builder = new ColumnBuilder();
+		for (int row = 0; row < 200; row++) {
+			builder.setObject(row, row % 9 == 0 ? null : "country" + row % 4);
+		}
+		CachedData cachedData = new CachedData(200, new Column[] { builder.build(200) }, ImmutableMap.of("COUNTRY", 1), null);
+		
+		CachedData decoded = CachedDataCodec.decode(CachedDataCodec.encode(cachedData));
+		
+		assertThat(decoded.getColumns()[0]).isInstanceOf(Column.DictionaryColumn.class);
+		for (int row = 0; row < 200; row++) {
+			assertThat(decoded.getValue(row, 1)).isEqualTo(cachedData.getValue(row, 1));
+		}
+	}
+	
+	@Test
+	public void should_encode_small_numbers_on_a_single_byte() throws Exception {
+		ColumnBuilder builder = new ColumnBuilder();
+		for (int row = 0; row < 1000; row++) {
+			builder.setInt(row, row % 60 - 30);
+		}
+		CachedData cachedData = new CachedData(1000, new Column[] { builder.build(1000) }, ImmutableMap.of("ID", 1), null);
+		
+		assertThat(CachedDataCodec.encode(cachedData).length).isLessThan(1100);
+	}
+	
+	@Test(expected = IOException.class)
+	public void should_reject_a_value_that_is_not_a_jdbc_object() throws Exception {
+		CachedData cachedData = new CachedData(ImmutableList.of(new Object[] { new StringBuilder("value") }), ImmutableMap.of("VALUE", 1), null);
+		
+		CachedDataCodec.encode(cachedData);
+	}
+	
+	@Test
+	public void should_serve_the_lobs_cached_as_bytes_and_strings() throws Exception {
+		CachedData cachedData = new CachedData(ImmutableList.of(new Object[] { new byte[] { 1, 2 }, "text" }), ImmutableMap.of("DATA", 1, "TEXT", 2), null);
+		
+		ResultSet resultSet = CachedDataCodec.decode(CachedDataCodec.encode(cachedData)).newResultSet();
+		resultSet.next();
+		
+		assertThat(Arrays.equals(resultSet.getBlob(1).getBytes(1, 2), new byte[] { 1, 2 })).isTrue();
+		assertThat(resultSet.getClob(2).getSubString(1, 4)).isEqualTo("text");
+		assertThat(resultSet.getNClob("TEXT").length()).isEqualTo(4L);
+	}
+	
+	@Test(expected = IOException.class)
+	public void should_reject_another_version_of_the_format() throws Exception {
+		CachedData cachedData = new CachedData(ImmutableList.<Object[]>of(), ImmutableMap.<String, Integer>of(), ImmutableList.<ColumnInfo>of());
+		byte[] bytes = CachedDataCodec.encode(cachedData);
+		bytes[0] = (byte) (CachedDataCodec.VERSION + 1);
+		
+		CachedDataCodec.decode(bytes);
+	}
+
+}
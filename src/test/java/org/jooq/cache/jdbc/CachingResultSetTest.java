@@ -0,0 +1,154 @@
+package org.jooq.cache.jdbc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import org.jooq.cache.CacheManager;
+import org.jooq.cache.CaptureLimits;
+import org.jooq.cache.impl.DefaultCacheProvider;
+import org.jooq.impl.CacheQueryInformation;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class CachingResultSetTest {
+
+	@Test
+	public void should_cache_a_query_result_within_the_capture_limits() throws Exception {
+		CacheManager cacheManager = new CacheManager(new DefaultCacheProvider());
+		cacheManager.setCaptureLimits(CaptureLimits.ofRows(3));
+		CacheQueryInformation queryInformation = queryInformation(cacheManager);
+		
+		readAll(new CachingResultSet(mockResultSet(1, 2, 3), queryInformation, null, cacheManager.tablesVersion(ImmutableSet.of("table"))));
+		
+		assertThat(queryInformation.getCachedData().getRowCount()).isEqualTo(3);
+		assertThat(cacheManager.getStatistics().getAbortedCaptures()).isEqualTo(0L);
+	}
+	
+	@Test
+	public void should_stream_a_query_result_that_exceeds_the_row_limit() throws Exception {
+		CacheManager cacheManager = new CacheManager(new DefaultCacheProvider());
+		cacheManager.setCaptureLimits(CaptureLimits.ofRows(2));
+		CacheQueryInformation queryInformation = queryInformation(cacheManager);
+		
+		int sum = readAll(new CachingResultSet(mockResultSet(1, 2, 3), queryInformation, null, cacheManager.tablesVersion(ImmutableSet.of("table"))));
+		
+		assertThat(sum).isEqualTo(6);
+		assertThat(queryInformation.getCachedData()).isNull();
+		assertThat(cacheManager.getCachedDataIfPresent(queryInformation.getQueryTemplate(), queryInformation.getQueryParameters())).isNull();
+		assertThat(cacheManager.getStatistics().getAbortedCaptures()).isEqualTo(1L);
+	}
+	
+	@Test
+	public void should_stream_a_query_result_that_exceeds_the_size_limit() throws Exception {
+		CacheManager cacheManager = new CacheManager(new DefaultCacheProvider());
+		cacheManager.setQueryCaptureLimits(cacheManager.template("SELECT id FROM table"), CaptureLimits.ofBytes(8));
+		CacheQueryInformation queryInformation = queryInformation(cacheManager);
+		
+		readAll(new CachingResultSet(mockResultSet(1, 2, 3), queryInformation, null, cacheManager.tablesVersion(ImmutableSet.of("table"))));
+		
+		assertThat(queryInformation.getCachedData()).isNull();
+		assertThat(cacheManager.getStatistics().getAbortedCaptures()).isEqualTo(1L);
+	}
+	
+	@Test
+	public void should_share_the_metadata_between_the_results_of_a_query() throws Exception {
+		CacheManager cacheManager = new CacheManager(new DefaultCacheProvider());
+		CacheQueryInformation first = queryInformation(cacheManager, 1);
+		CacheQueryInformation second = queryInformation(cacheManager, 2);
+		
+		readAll(new CachingResultSet(mockResultSet(1, 2), first, null, cacheManager.tablesVersion(ImmutableSet.of("table"))));
+		readAll(new CachingResultSet(mockResultSet(3), second, null, cacheManager.tablesVersion(ImmutableSet.of("table"))));
+		
+		assertThat(second.getCachedData().getMetaData()).isSameAs(first.getCachedData().getMetaData());
+		assertThat(second.getCachedData().findColumn("id")).isEqualTo(1);
+		// the second result only checks the label and the type of the column
+		assertThat(columnMetaDataReads).isEqualTo(7);
+		ResultSet cachedResultSet = second.getCachedData().newResultSet();
+		assertThat(cachedResultSet.getMetaData()).isSameAs(cachedResultSet.getMetaData());
+	}
+	
+	@Test
+	public void should_read_the_metadata_again_if_a_column_has_been_renamed() throws Exception {
+		CacheManager cacheManager = new CacheManager(new DefaultCacheProvider());
+		CacheQueryInformation first = queryInformation(cacheManager, 1);
+		CacheQueryInformation second = queryInformation(cacheManager, 2);
+		
+		readAll(new CachingResultSet(mockResultSet("id", 1), first, null, cacheManager.tablesVersion(ImmutableSet.of("table"))));
+		readAll(new CachingResultSet(mockResultSet("key", 2), second, null, cacheManager.tablesVersion(ImmutableSet.of("table"))));
+		
+		assertThat(second.getCachedData().getMetaData()).isNotSameAs(first.getCachedData().getMetaData());
+		assertThat(second.getCachedData().findColumn("key")).isEqualTo(1);
+	}
+	
+	// utils
+	
+	private int columnMetaDataReads = 0;
+	
+	private CacheQueryInformation queryInformation(CacheManager cacheManager, Object... parameters) {
+		CacheQueryInformation queryInformation = new CacheQueryInformation("SELECT id FROM table", ImmutableList.copyOf(parameters), cacheManager);
+		queryInformation.getReferencedTables().add("table");
+		return queryInformation;
+	}
+	
+	private int readAll(ResultSet resultSet) throws Exception {
+		int sum = 0;
+		while (resultSet.next()) {
+			sum += resultSet.getInt(1);
+		}
+		resultSet.close();
+		return sum;
+	}
+	
+	/**
+	 * @return A result set with a single int column "id"
+	 */
+	private ResultSet mockResultSet(int... ids) {
+		return mockResultSet("id", ids);
+	}
+	
+	/**
+	 * @return A result set with a single int column
+	 */
+	private ResultSet mockResultSet(final String column, final int... ids) {
+		final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (!method.getName().equals("getColumnCount")) {
+					columnMetaDataReads++;
+				}
+				if (method.getName().equals("getColumnCount") || method.getName().equals("getPrecision") || method.getName().equals("getScale")) {
+					return method.getName().equals("getColumnCount") ? 1 : 0;
+				}
+				return method.getName().equals("getColumnTypeName") ? "INTEGER" : column;
+			}
+		});
+		return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+			private int row = -1;
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("next")) {
+					return ++row < ids.length;
+				}
+				if (method.getName().equals("getInt")) {
+					return ids[row];
+				}
+				if (method.getName().equals("getMetaData")) {
+					return metaData;
+				}
+				if (method.getName().equals("wasNull")) {
+					return false;
+				}
+				return null;
+			}
+		});
+	}
+
+}
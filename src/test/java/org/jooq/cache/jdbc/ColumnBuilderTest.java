@@ -0,0 +1,179 @@
+package org.jooq.cache.jdbc;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class ColumnBuilderTest {
+
+	@Test
+	public void should_store_int_values_in_a_primitive_column() throws Exception {
+		ColumnBuilder builder = new ColumnBuilder();
+		builder.setInt(0, 1);
+		builder.setInt(1, 2);
+		
+		Column column = builder.build(2);
+		
+		assertThat(column).isInstanceOf(Column.IntColumn.class);
+		assertThat(column.getInt(0)).isEqualTo(1);
+		assertThat(column.getInt(1)).isEqualTo(2);
+		assertThat(column.getObject(1)).isEqualTo(Integer.valueOf(2));
+		assertThat(column.getNulls()).isNull();
+	}
+	
+	@Test
+	public void should_track_null_values() throws Exception {
+		ColumnBuilder builder = new ColumnBuilder();
+		for (int row = 0; row < 100; row++) {
+			builder.setLong(row, row);
+			if (row % 3 == 0) {
+				builder.setNull(row);
+			}
+		}
+		
+		Column column = builder.build(100);
+		
+		for (int row = 0; row < 100; row++) {
+			assertThat(column.isNull(row)).isEqualTo(row % 3 == 0);
+			assertThat(column.getObject(row)).isEqualTo(row % 3 == 0 ? null : Long.valueOf(row));
+		}
+	}
+	
+	@Test
+	public void should_consider_values_that_have_not_been_read_as_null() throws Exception {
+		ColumnBuilder builder = new ColumnBuilder();
+		builder.setDouble(1, 2.5);
+		
+		Column column = builder.build(3);
+		
+		assertThat(column.isNull(0)).isTrue();
+		assertThat(column.getDouble(1)).isEqualTo(2.5);
+		assertThat(column.isNull(2)).isTrue();
+		assertThat(new ColumnBuilder().build(2).isNull(1)).isTrue();
+	}
+	
+	@Test
+	public void should_box_the_values_if_a_column_is_read_with_different_types() throws Exception {
+		ColumnBuilder builder = new ColumnBuilder();
+		builder.setBoolean(0, true);
+		builder.setObject(1, "a");
+		
+		Column column = builder.build(2);
+		
+		assertThat(column).isInstanceOf(Column.ObjectColumn.class);
+		assertThat(column.getObject(0)).isEqualTo(Boolean.TRUE);
+		assertThat(column.getObject(1)).isEqualTo("a");
+	}
+	
+	@Test
+	public void should_read_the_values_through_a_cached_result_set() throws Exception {
+		ColumnBuilder id = new ColumnBuilder();
+		ColumnBuilder name = new ColumnBuilder();
+		id.setInt(0, 1);
+		name.setObject(0, "a");
+		id.setInt(1, 0);
+		id.setNull(1);
+		name.setObject(1, "b");
+		CachedData cachedData = new CachedData(2, new Column[] { id.build(2), name.build(2) }, ImmutableMap.of("id", 1, "name", 2), Collections.<ColumnInfo>emptyList());
+		
+		ResultSet resultSet = cachedData.newResultSet();
+		
+		assertThat(resultSet.next()).isTrue();
+		assertThat(resultSet.getInt(1)).isEqualTo(1);
+		assertThat(resultSet.wasNull()).isFalse();
+		assertThat(resultSet.getString("name")).isEqualTo("a");
+		assertThat(resultSet.next()).isTrue();
+		assertThat(resultSet.getInt("id")).isEqualTo(0);
+		assertThat(resultSet.wasNull()).isTrue();
+		assertThat(resultSet.getString(2)).isEqualTo("b");
+		assertThat(resultSet.next()).isFalse();
+	}
+
+	@Test
+	public void should_estimate_the_size_of_the_columns() throws Exception {
+		ColumnBuilder ints = new ColumnBuilder();
+		ColumnBuilder strings = new ColumnBuilder();
+		for (int row = 0; row < 1000; row++) {
+			ints.setInt(row, row);
+			strings.setObject(row, "a string value " + row);
+		}
+		
+		long intsSize = ints.build(1000).estimateSize();
+		long stringsSize = strings.build(1000).estimateSize();
+		
+		assertThat(intsSize).isGreaterThanOrEqualTo(4000);
+		assertThat(intsSize).isLessThan(5000);
+		assertThat(stringsSize).isGreaterThan(1000 * 2 * "a string value ".length());
+		assertThat(new CachedData(1000, new Column[] { ints.build(1000), strings.build(1000) }, ImmutableMap.of("id", 1, "name", 2), Collections.<ColumnInfo>emptyList()).estimateSize())
+			.isGreaterThan(intsSize + stringsSize);
+	}
+	
+	@Test
+	public void should_not_count_a_value_read_again_twice_in_the_estimated_size() throws Exception {
+		ColumnBuilder readOnce = new ColumnBuilder();
+		ColumnBuilder readTwice = new ColumnBuilder();
+		for (int row = 0; row < 1000; row++) {
+			readOnce.setObject(row, new BigDecimal(row));
+			readTwice.setObject(row, new BigDecimal(row));
+			readTwice.setObject(row, new BigDecimal(row));
+		}
+		
+		assertThat(readTwice.estimateSize()).isEqualTo(readOnce.estimateSize());
+	}
+	
+	@Test
+	public void should_store_low_cardinality_strings_with_a_dictionary() throws Exception {
+		ColumnBuilder builder = new ColumnBuilder();
+		ColumnBuilder distinct = new ColumnBuilder();
+		for (int row = 0; row < 1000; row++) {
+			builder.setObject(row, row % 10 == 0 ? null : new String("status" + row % 3));
+			distinct.setObject(row, new String("status" + row));
+		}
+		
+		assertThat(builder.estimateSize()).isLessThan(distinct.estimateSize() / 4);
+		Column column = builder.build(1000);
+		
+		assertThat(column).isInstanceOf(Column.DictionaryColumn.class);
+		assertThat(((Column.DictionaryColumn) column).getDictionary().length).isEqualTo(3);
+		assertThat(column.getObject(0)).isNull();
+		assertThat(column.getObject(4)).isEqualTo("status1");
+		assertThat(column.getObject(4)).isSameAs(column.getObject(7));
+		assertThat(column.estimateSize()).isLessThan(distinct.build(1000).estimateSize());
+	}
+	
+	@Test
+	public void should_drop_the_dictionary_of_high_cardinality_strings() throws Exception {
+		ColumnBuilder builder = new ColumnBuilder();
+		int rowCount = ColumnBuilder.MAX_DICTIONARY_SIZE * 4;
+		for (int row = 0; row < rowCount; row++) {
+			builder.setObject(row, "name" + row % (ColumnBuilder.MAX_DICTIONARY_SIZE + 1));
+		}
+		
+		Column column = builder.build(rowCount);
+		
+		assertThat(column).isInstanceOf(Column.ObjectColumn.class);
+		assertThat(column.getObject(rowCount - 1)).isEqualTo("name" + (rowCount - 1) % (ColumnBuilder.MAX_DICTIONARY_SIZE + 1));
+	}
+	
+	@Test
+	public void should_drop_the_dictionary_of_a_column_containing_other_values() throws Exception {
+		ColumnBuilder builder = new ColumnBuilder();
+		for (int row = 0; row < 100; row++) {
+			builder.setObject(row, "value");
+		}
+		builder.setInt(100, 1);
+		
+		Column column = builder.build(101);
+		
+		assertThat(column).isInstanceOf(Column.ObjectColumn.class);
+		assertThat(column.getObject(0)).isEqualTo("value");
+		assertThat(column.getObject(100)).isEqualTo(Integer.valueOf(1));
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.jooq.impl;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.jooq.Query;
+import org.jooq.Record;
+import org.jooq.TableField;
+import org.jooq.UniqueKey;
+import org.jooq.cache.impl.DefaultCachedConfiguration;
+import org.junit.Test;
+
+public class CachedVisitListenerTest {
+	
+	private static final TestTable TEST = new TestTable();
+	
+	private final DefaultCachedConfiguration configuration = new DefaultCachedConfiguration();
+
+	@Test
+	public void should_invalidate_by_rows_a_query_filtered_by_the_primary_key() {
+		assertThat(primaryKeyColumn(DSL.using(configuration).selectFrom(TEST).where(TEST.ID.eq(1)))).isEqualTo("id");
+	}
+	
+	@Test
+	public void should_not_invalidate_by_rows_a_limited_query() {
+		assertThat(primaryKeyColumn(DSL.using(configuration).selectFrom(TEST).where(TEST.ID.gt(1)).orderBy(TEST.ID).limit(10))).isNull();
+	}
+	
+	@Test
+	public void should_not_invalidate_by_rows_a_query_with_an_offset() {
+		assertThat(primaryKeyColumn(DSL.using(configuration).selectFrom(TEST).where(TEST.ID.gt(1)).orderBy(TEST.ID).limit(5, 10))).isNull();
+	}
+	
+	@Test
+	public void should_not_invalidate_by_rows_a_query_filtered_by_a_plain_sql_condition() {
+		assertThat(primaryKeyColumn(DSL.using(configuration).selectFrom(TEST).where(TEST.ID.eq(1)).and(DSL.condition("name = ?", "name")))).isNull();
+	}
+	
+	@Test
+	public void should_not_invalidate_by_rows_a_query_filtered_by_a_plain_sql_field() {
+		assertThat(primaryKeyColumn(DSL.using(configuration).selectFrom(TEST).where(TEST.ID.eq(1)).and(DSL.field("name").eq("name")))).isNull();
+	}
+	
+	// utils
+	
+	private String primaryKeyColumn(Query query) {
+		return CacheQueryInformation.render(query, configuration, configuration.cacheManager()).getPrimaryKeyColumn();
+	}
+	
+	private static class TestTable extends TableImpl<Record> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		final TableField<Record, Integer> ID = createField("id", SQLDataType.INTEGER, this);
+
+		TestTable() {
+			super("test");
+		}
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		public UniqueKey<Record> getPrimaryKey() {
+			return AbstractKeys.createUniqueKey(this, ID);
+		}
+		
+	}
+
+}